@@ -0,0 +1,258 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.MarcRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Index from alias ids (field 002) to the id of the record which owns the alias.
+ * <p>
+ * A central alias (002 *a) is indexed with the agency id of the owning record, and a decentral alias is indexed
+ * with 002 *c as record id and 002 *b as agency id, paired as by {@link MarcRecordReader#getDecentralAliasIds()}.
+ * </p>
+ * <p>
+ * The index is an open addressing hash table in a single buffer, so a saved index can be memory mapped with
+ * {@link #load(Path)} and used without reading it into the heap first. The layout is
+ * </p>
+ * <pre>
+ * header  = magic version slotCount entryCount (ints)
+ * slots   = slotCount ints (entry number + 1, 0 for an empty slot)
+ * entries = entryCount * (aliasAgencyId aliasIdOffset agencyId recordIdOffset) (ints)
+ * strings = (unsigned short length, utf-8 bytes)*
+ * </pre>
+ */
+public class AliasIndex {
+    private static final int MAGIC = 0x414C4958; // "ALIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 16;
+
+    private final ByteBuffer buffer;
+    private final int slotCount;
+    private final int entryCount;
+    private final int entriesOffset;
+
+    private AliasIndex(ByteBuffer buffer) {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("The content is not an alias index");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported alias index version " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.slotCount = buffer.getInt(8);
+        this.entryCount = buffer.getInt(12);
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1 || entryCount < 0 || entryCount >= slotCount) {
+            throw new IllegalArgumentException("Invalid slot count " + slotCount + " for " + entryCount + " entries");
+        }
+        if (buffer.limit() < HEADER_SIZE + slotCount * 4L + (long) entryCount * ENTRY_SIZE) {
+            throw new IllegalArgumentException("The content is too short for " + slotCount + " slots and " + entryCount + " entries");
+        }
+        this.entriesOffset = HEADER_SIZE + slotCount * 4;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Memory maps a saved index
+     *
+     * @param file The index file
+     * @return The index
+     * @throws IOException If the file can't be read or isn't an alias index
+     */
+    public static AliasIndex load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid alias index " + file + ": The file is larger than 2 GB");
+            }
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return new AliasIndex(mapped);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid alias index " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the index to a file which can be loaded with {@link #load(Path)}
+     *
+     * @param file The file to write
+     * @throws IOException If the file can't be written
+     */
+    public void save(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer content = buffer.duplicate();
+            content.clear();
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Finds the record which owns an alias
+     *
+     * @param aliasId  The alias id
+     * @param agencyId The agency id of the alias
+     * @return The id of the owning record or <code>null</code> if the alias isn't in the index
+     */
+    public RecordId getRecordId(String aliasId, int agencyId) {
+        final byte[] aliasBytes = aliasId.getBytes(StandardCharsets.UTF_8);
+        final int mask = slotCount - 1;
+        int slot = hash(aliasId, agencyId) & mask;
+        for (int probe = 0; probe < slotCount; probe++, slot = slot + 1 & mask) {
+            final int entry = buffer.getInt(HEADER_SIZE + slot * 4) - 1;
+            if (entry < 0) {
+                return null;
+            }
+            if (entry >= entryCount) {
+                throw new IllegalStateException("Invalid entry " + entry + " in slot " + slot);
+            }
+            final int entryOffset = entriesOffset + entry * ENTRY_SIZE;
+            if (buffer.getInt(entryOffset) == agencyId && stringEquals(buffer.getInt(entryOffset + 4), aliasBytes)) {
+                return new RecordId(readString(buffer.getInt(entryOffset + 12)), buffer.getInt(entryOffset + 8));
+            }
+        }
+
+        return null;
+    }
+
+    public boolean contains(String aliasId, int agencyId) {
+        return getRecordId(aliasId, agencyId) != null;
+    }
+
+    private boolean stringEquals(int offset, byte[] value) {
+        if ((buffer.getShort(offset) & 0xFFFF) != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (buffer.get(offset + 2 + i) != value[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String readString(int offset) {
+        final int length = buffer.getShort(offset) & 0xFFFF;
+        return StandardCharsets.UTF_8.decode(buffer.slice(offset + 2, length)).toString();
+    }
+
+    private static int hash(String aliasId, int agencyId) {
+        final int hash = 31 * aliasId.hashCode() + agencyId;
+        return hash ^ hash >>> 16;
+    }
+
+    /**
+     * Collects the aliases of a stream of records. If an alias is added more than once the last owner wins.
+     */
+    public static class Builder {
+        private final Map<RecordId, RecordId> aliases = new LinkedHashMap<>();
+
+        private Builder() {
+
+        }
+
+        /**
+         * Adds the central and decentral aliases of the record
+         *
+         * @param marcRecord The record
+         * @return this
+         */
+        public Builder add(MarcRecord marcRecord) {
+            final MarcRecordReader reader = new MarcRecordReader(marcRecord);
+            final String recordId = reader.getRecordId();
+            if (recordId == null) {
+                throw new IllegalArgumentException("The record has no 001 *a");
+            }
+            final RecordId owner = new RecordId(recordId, reader.getAgencyIdAsInt());
+            for (RecordId alias : reader.getCentralAliases()) {
+                aliases.put(alias, owner);
+            }
+            for (RecordId alias : reader.getDecentralAliases()) {
+                aliases.put(alias, owner);
+            }
+
+            return this;
+        }
+
+        public Builder add(String aliasId, int aliasAgencyId, String recordId, int agencyId) {
+            aliases.put(new RecordId(aliasId, aliasAgencyId), new RecordId(recordId, agencyId));
+            return this;
+        }
+
+        public AliasIndex build() {
+            final int entryCount = aliases.size();
+            final int slotCount = Integer.highestOneBit(Math.max(entryCount, 4) * 2 - 1) * 2;
+            final Map<String, Integer> stringOffsets = new LinkedHashMap<>();
+            final int stringsOffset = HEADER_SIZE + slotCount * 4 + entryCount * ENTRY_SIZE;
+            int stringsSize = 0;
+            for (Map.Entry<RecordId, RecordId> alias : aliases.entrySet()) {
+                stringsSize += addString(stringOffsets, alias.getKey().getRecordId(), stringsOffset + stringsSize);
+                stringsSize += addString(stringOffsets, alias.getValue().getRecordId(), stringsOffset + stringsSize);
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate(stringsOffset + stringsSize);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, slotCount);
+            buffer.putInt(12, entryCount);
+            int entry = 0;
+            final int mask = slotCount - 1;
+            for (Map.Entry<RecordId, RecordId> alias : aliases.entrySet()) {
+                final RecordId aliasId = alias.getKey();
+                final RecordId owner = alias.getValue();
+                final int entryOffset = HEADER_SIZE + slotCount * 4 + entry * ENTRY_SIZE;
+                buffer.putInt(entryOffset, aliasId.getAgencyId());
+                buffer.putInt(entryOffset + 4, stringOffsets.get(aliasId.getRecordId()));
+                buffer.putInt(entryOffset + 8, owner.getAgencyId());
+                buffer.putInt(entryOffset + 12, stringOffsets.get(owner.getRecordId()));
+                int slot = hash(aliasId.getRecordId(), aliasId.getAgencyId()) & mask;
+                while (buffer.getInt(HEADER_SIZE + slot * 4) != 0) {
+                    slot = slot + 1 & mask;
+                }
+                buffer.putInt(HEADER_SIZE + slot * 4, ++entry);
+            }
+            buffer.position(stringsOffset);
+            for (String value : stringOffsets.keySet()) {
+                final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                buffer.putShort((short) bytes.length);
+                buffer.put(bytes);
+            }
+            buffer.clear();
+
+            return new AliasIndex(buffer);
+        }
+
+        private static int addString(Map<String, Integer> stringOffsets, String value, int offset) {
+            if (stringOffsets.containsKey(value)) {
+                return 0;
+            }
+            final int length = value.getBytes(StandardCharsets.UTF_8).length;
+            if (length > 0xFFFF) {
+                throw new IllegalArgumentException("The id is too long: " + value);
+            }
+            stringOffsets.put(value, offset);
+
+            return 2 + length;
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.SubField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of an authority record which the authority expansion splices into a common record.
+ * <p>
+ * A fragment holds the main fields (100, 110, 133 and 134) and, per see/see also field of the authority record
+ * (400, 500, 410, 510, 433 and 434), the ready built 900, 910 or 945 fields. Only *z, which depends on the
+ * referencing field, is added during the expansion. Fragments are created from an {@link AuthorityRecord} or read
+ * from an {@link AuthorityFragmentStore}. A fragment has its own copies of the fields and subfields of the authority
+ * record, and they must not be changed.
+ * </p>
+ */
+public class AuthorityFragment {
+    static final List<String> MAIN_FIELD_TAGS = Arrays.asList("100", "110", "133", "134");
+    static final List<String> ADDITIONAL_FIELD_TAGS = Arrays.asList("400", "500", "410", "510", "433", "434");
+
+    private final Map<String, DataField> mainFields;
+    private final Map<String, List<DataField>> additionalFields;
+
+    AuthorityFragment(Map<String, DataField> mainFields, Map<String, List<DataField>> additionalFields) {
+        this.mainFields = mainFields;
+        this.additionalFields = additionalFields;
+    }
+
+    /**
+     * Builds the fragment of an authority record
+     *
+     * @param authorityRecord The authority record
+     * @return The fragment
+     */
+    public static AuthorityFragment of(AuthorityRecord authorityRecord) {
+        final Map<String, DataField> mainFields = new LinkedHashMap<>();
+        for (String tag : MAIN_FIELD_TAGS) {
+            final DataField mainField = authorityRecord.getField(tag);
+            if (mainField != null) {
+                mainFields.put(tag, new DataField(mainField));
+            }
+        }
+
+        final Map<String, List<DataField>> additionalFields = new LinkedHashMap<>();
+        for (String tag : ADDITIONAL_FIELD_TAGS) {
+            final List<DataField> authFields = authorityRecord.getFields(tag);
+            if (authFields.isEmpty()) {
+                continue;
+            }
+            final List<DataField> fields = new ArrayList<>(authFields.size());
+            for (DataField authDataField : authFields) {
+                fields.add(createAdditionalField(authDataField, authorityRecord));
+            }
+            additionalFields.put(tag, Collections.unmodifiableList(fields));
+        }
+
+        return new AuthorityFragment(mainFields, additionalFields);
+    }
+
+    /*
+     * x00 and 770 puts 400 and 500 in 900 fields with the 100 heading in *w, x10 and 780 puts 410 and 510 in 910
+     * fields with the 110 heading in *w, and universe/series puts *a and *ø of 433 and 434 in 945 fields
+     */
+    private static DataField createAdditionalField(DataField authDataField, AuthorityRecord authorityRecord) {
+        final String tag = authDataField.getTag();
+        final boolean universeFields = tag.startsWith("43");
+        final DataField additionalField = new DataField(universeFields ? "945" : tag.endsWith("10") ? "910" : "900", "00");
+        String subfieldwValue = null;
+        for (SubField authSubfield : authDataField.getSubFields()) {
+            final char code = authSubfield.getCode();
+            if (universeFields) {
+                // there will at least be a subfield 8 which isn't wanted - only subfield a and ø should be copied
+                if ('a' == code || 'ø' == code) {
+                    additionalField.getSubFields().add(new SubField(authSubfield));
+                }
+            } else if ('w' == code) {
+                subfieldwValue = authSubfield.getData();
+            } else {
+                additionalField.getSubFields().add(new SubField(authSubfield));
+            }
+        }
+        if (!universeFields) {
+            additionalField.getSubFields().add(new SubField('x', lookContent(subfieldwValue, tag)));
+            // The fields are only used when the record has the main field, see ExpandCommonMarcRecord
+            final String heading = authorityRecord.getHeading(tag.endsWith("10") ? "110" : "100");
+            if (heading != null) {
+                additionalField.getSubFields().add(new SubField('w', heading));
+            }
+        }
+
+        return additionalField;
+    }
+
+    private static String lookContent(String subfieldwValue, String tag) {
+        if (subfieldwValue != null) {
+            if ("tidligere navn".equals(subfieldwValue)) {
+                return "se også under det senere navn";
+            } else if ("senere navn".equals(subfieldwValue)) {
+                return "se også under det tidligere navn";
+            }
+            return subfieldwValue;
+        }
+
+        return "500".equals(tag) || "510".equals(tag) ? "se også" : "se";
+    }
+
+    /**
+     * @param tag 100, 110, 133 or 134
+     * @return The first field with the tag in the authority record or <code>null</code> if there is none
+     */
+    public DataField getMainField(String tag) {
+        return mainFields.get(tag);
+    }
+
+    public boolean hasAdditionalFields(String tag) {
+        return additionalFields.containsKey(tag);
+    }
+
+    /**
+     * @param tag The tag of the authority field, 400, 500, 410, 510, 433 or 434
+     * @return The fields built from the authority fields with the tag, without *z
+     */
+    public List<DataField> getAdditionalFields(String tag) {
+        return additionalFields.getOrDefault(tag, Collections.emptyList());
+    }
+
+    Map<String, DataField> getMainFields() {
+        return mainFields;
+    }
+
+    Map<String, List<DataField>> getAdditionalFields() {
+        return additionalFields;
+    }
+
+}
@@ -0,0 +1,374 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Store of {@link AuthorityFragment} per authority record id, so common records can be expanded without parsing
+ * the authority records.
+ * <p>
+ * The store is an open addressing hash table in a single buffer, so a saved store can be memory mapped with
+ * {@link #load(Path)}. When authority records change, {@link #toBuilder()} starts a new store with the fragments
+ * of the existing one, so only the changed records have to be added or removed. The layout is
+ * </p>
+ * <pre>
+ * header    = magic version slotCount entryCount (ints)
+ * slots     = slotCount ints (entry number + 1, 0 for an empty slot)
+ * entries   = entryCount * (recordIdOffset fragmentOffset fragmentLength) (ints)
+ * data      = record ids (unsigned short length, utf-8 bytes) and fragments
+ * fragment  = mainFieldCount (byte) field* groupCount (byte) (tag fieldCount (unsigned short) field*)*
+ * field     = tag subFieldCount (unsigned short) (code (char) data)*
+ * tag, data = length (int, -1 for null) utf-8 bytes
+ * </pre>
+ */
+public class AuthorityFragmentStore {
+    private static final int MAGIC = 0x41465247; // "AFRG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 12;
+
+    private final ByteBuffer buffer;
+    private final int slotCount;
+    private final int entryCount;
+    private final int entriesOffset;
+
+    private AuthorityFragmentStore(ByteBuffer buffer) {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("The content is not an authority fragment store");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported authority fragment store version " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.slotCount = buffer.getInt(8);
+        this.entryCount = buffer.getInt(12);
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1 || entryCount < 0 || entryCount >= slotCount) {
+            throw new IllegalArgumentException("Invalid slot count " + slotCount + " for " + entryCount + " entries");
+        }
+        if (buffer.limit() < HEADER_SIZE + slotCount * 4L + (long) entryCount * ENTRY_SIZE) {
+            throw new IllegalArgumentException("The content is too short for " + slotCount + " slots and " + entryCount + " entries");
+        }
+        this.entriesOffset = HEADER_SIZE + slotCount * 4;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Builder containing the fragments of this store
+     */
+    public Builder toBuilder() {
+        final Builder builder = new Builder();
+        for (int entry = 0; entry < entryCount; entry++) {
+            final int entryOffset = entriesOffset + entry * ENTRY_SIZE;
+            builder.fragments.put(readId(buffer.getInt(entryOffset)),
+                    buffer.slice(buffer.getInt(entryOffset + 4), buffer.getInt(entryOffset + 8)));
+        }
+
+        return builder;
+    }
+
+    /**
+     * Memory maps a saved store
+     *
+     * @param file The store file
+     * @return The store
+     * @throws IOException If the file can't be read or isn't an authority fragment store
+     */
+    public static AuthorityFragmentStore load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid authority fragment store " + file + ": The file is larger than 2 GB");
+            }
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return new AuthorityFragmentStore(mapped);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid authority fragment store " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the store to a file which can be loaded with {@link #load(Path)}. The file is written next to the
+     * target and then moved into place, so a store which is mapped from the target file stays valid.
+     *
+     * @param file The file to write
+     * @throws IOException If the file can't be written
+     */
+    public void save(Path file) throws IOException {
+        final Path absolute = file.toAbsolutePath();
+        final Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                final ByteBuffer content = buffer.duplicate();
+                content.clear();
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    public boolean contains(String recordId) {
+        return findEntry(recordId) >= 0;
+    }
+
+    /**
+     * @param recordId The id of the authority record
+     * @return The fragment of the authority record or <code>null</code> if it isn't in the store
+     */
+    public AuthorityFragment get(String recordId) {
+        final int entry = findEntry(recordId);
+        if (entry < 0) {
+            return null;
+        }
+        final int entryOffset = entriesOffset + entry * ENTRY_SIZE;
+
+        return readFragment(buffer.slice(buffer.getInt(entryOffset + 4), buffer.getInt(entryOffset + 8)));
+    }
+
+    private int findEntry(String recordId) {
+        final byte[] idBytes = recordId.getBytes(StandardCharsets.UTF_8);
+        final int mask = slotCount - 1;
+        int slot = hash(recordId) & mask;
+        for (int probe = 0; probe < slotCount; probe++, slot = slot + 1 & mask) {
+            final int entry = buffer.getInt(HEADER_SIZE + slot * 4) - 1;
+            if (entry >= entryCount) {
+                throw new IllegalStateException("Invalid entry " + entry + " in slot " + slot);
+            }
+            if (entry < 0 || idEquals(buffer.getInt(entriesOffset + entry * ENTRY_SIZE), idBytes)) {
+                return entry;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean idEquals(int offset, byte[] value) {
+        if ((buffer.getShort(offset) & 0xFFFF) != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (buffer.get(offset + 2 + i) != value[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String readId(int offset) {
+        final int length = buffer.getShort(offset) & 0xFFFF;
+        return StandardCharsets.UTF_8.decode(buffer.slice(offset + 2, length)).toString();
+    }
+
+    private static int hash(String recordId) {
+        final int hash = recordId.hashCode();
+        return hash ^ hash >>> 16;
+    }
+
+    static byte[] writeFragment(AuthorityFragment fragment) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(fragment.getMainFields().size());
+            for (DataField mainField : fragment.getMainFields().values()) {
+                writeField(out, mainField);
+            }
+            out.writeByte(fragment.getAdditionalFields().size());
+            for (Map.Entry<String, List<DataField>> group : fragment.getAdditionalFields().entrySet()) {
+                writeString(out, group.getKey());
+                out.writeShort(group.getValue().size());
+                for (DataField dataField : group.getValue()) {
+                    writeField(out, dataField);
+                }
+            }
+            out.flush();
+
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Can't happen when writing to a byte array
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeField(DataOutputStream out, DataField dataField) throws IOException {
+        if (dataField.getSubFields().size() > 0xFFFF) {
+            throw new IllegalArgumentException("Field " + dataField.getTag() + " has too many subfields");
+        }
+        writeString(out, dataField.getTag());
+        out.writeShort(dataField.getSubFields().size());
+        for (SubField subField : dataField.getSubFields()) {
+            out.writeChar(subField.getCode());
+            writeString(out, subField.getData());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static AuthorityFragment readFragment(ByteBuffer content) {
+        final Map<String, DataField> mainFields = new LinkedHashMap<>();
+        final int mainFieldCount = content.get() & 0xFF;
+        for (int i = 0; i < mainFieldCount; i++) {
+            final DataField mainField = readField(content);
+            mainFields.put(mainField.getTag(), mainField);
+        }
+        final Map<String, List<DataField>> additionalFields = new LinkedHashMap<>();
+        final int groupCount = content.get() & 0xFF;
+        for (int i = 0; i < groupCount; i++) {
+            final String tag = readString(content);
+            final int fieldCount = content.getShort() & 0xFFFF;
+            final List<DataField> fields = new ArrayList<>(fieldCount);
+            for (int f = 0; f < fieldCount; f++) {
+                fields.add(readField(content));
+            }
+            additionalFields.put(tag, Collections.unmodifiableList(fields));
+        }
+
+        return new AuthorityFragment(mainFields, additionalFields);
+    }
+
+    private static DataField readField(ByteBuffer content) {
+        final DataField dataField = new DataField(readString(content), "00");
+        final int subFieldCount = content.getShort() & 0xFFFF;
+        for (int i = 0; i < subFieldCount; i++) {
+            final char code = content.getChar();
+            dataField.getSubFields().add(new SubField(code, readString(content)));
+        }
+
+        return dataField;
+    }
+
+    private static String readString(ByteBuffer content) {
+        final int length = content.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final String value = StandardCharsets.UTF_8.decode(content.slice(content.position(), length)).toString();
+        content.position(content.position() + length);
+
+        return value;
+    }
+
+    /**
+     * Collects the fragments of a store. If a record id is added more than once the last fragment wins.
+     */
+    public static class Builder {
+        private final Map<String, ByteBuffer> fragments = new LinkedHashMap<>();
+
+        private Builder() {
+
+        }
+
+        /**
+         * Adds or replaces the fragment of an authority record
+         *
+         * @param marcRecord The authority record
+         * @return this
+         */
+        public Builder add(MarcRecord marcRecord) {
+            final String recordId = new MarcRecordReader(marcRecord).getRecordId();
+            if (recordId == null) {
+                throw new IllegalArgumentException("The record has no 001 *a");
+            }
+
+            return add(recordId, new AuthorityRecord(marcRecord).getFragment());
+        }
+
+        public Builder add(String recordId, AuthorityFragment fragment) {
+            if (recordId.getBytes(StandardCharsets.UTF_8).length > 0xFFFF) {
+                throw new IllegalArgumentException("The id is too long: " + recordId);
+            }
+            fragments.put(recordId, ByteBuffer.wrap(writeFragment(fragment)));
+            return this;
+        }
+
+        /**
+         * Removes the fragment of a deleted authority record
+         *
+         * @param recordId The id of the authority record
+         * @return this
+         */
+        public Builder remove(String recordId) {
+            fragments.remove(recordId);
+            return this;
+        }
+
+        public AuthorityFragmentStore build() {
+            final int entryCount = fragments.size();
+            final int slotCount = Integer.highestOneBit(Math.max(entryCount, 4) * 2 - 1) * 2;
+            final int dataOffset = HEADER_SIZE + slotCount * 4 + entryCount * ENTRY_SIZE;
+            long size = dataOffset;
+            for (Map.Entry<String, ByteBuffer> fragment : fragments.entrySet()) {
+                size += 2 + fragment.getKey().getBytes(StandardCharsets.UTF_8).length + fragment.getValue().remaining();
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("The store is larger than 2 GB");
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, slotCount);
+            buffer.putInt(12, entryCount);
+            buffer.position(dataOffset);
+            int entry = 0;
+            final int mask = slotCount - 1;
+            for (Map.Entry<String, ByteBuffer> fragment : fragments.entrySet()) {
+                final int entryOffset = HEADER_SIZE + slotCount * 4 + entry * ENTRY_SIZE;
+                final byte[] id = fragment.getKey().getBytes(StandardCharsets.UTF_8);
+                buffer.putInt(entryOffset, buffer.position());
+                buffer.putShort((short) id.length);
+                buffer.put(id);
+                buffer.putInt(entryOffset + 4, buffer.position());
+                buffer.putInt(entryOffset + 8, fragment.getValue().remaining());
+                buffer.put(fragment.getValue().duplicate());
+                int slot = hash(fragment.getKey()) & mask;
+                while (buffer.getInt(HEADER_SIZE + slot * 4) != 0) {
+                    slot = slot + 1 & mask;
+                }
+                buffer.putInt(HEADER_SIZE + slot * 4, ++entry);
+            }
+            buffer.clear();
+
+            return new AuthorityFragmentStore(buffer);
+        }
+    }
+
+}
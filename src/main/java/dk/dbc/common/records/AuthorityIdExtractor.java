@@ -0,0 +1,120 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import dk.dbc.marc.reader.MarcReaderException;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Finds the authority records which {@link ExpandCommonMarcRecord} needs to expand a common record, without
+ * expanding it.
+ * <p>
+ * A common record links to an authority record with a field in {@link ExpandCommonMarcRecord#AUTHORITY_FIELD_LIST}
+ * which has both *5 and *6, where *6 is the id of the authority record. The content functions scan MarcXchange
+ * directly and only decode the *6 values. Use the batch functions to load the authority records of many common
+ * records at once.
+ * </p>
+ */
+public class AuthorityIdExtractor {
+    private static final TagFilter AUTHORITY_FIELDS = ExpandCommonMarcRecord.AUTHORITY_FIELDS;
+
+    private AuthorityIdExtractor() {
+
+    }
+
+    /**
+     * @param commonRecord The common record
+     * @return The distinct authority record ids in record order
+     */
+    public static Set<String> fromRecord(MarcRecord commonRecord) {
+        final Set<String> authorityIds = new LinkedHashSet<>();
+        addAuthorityIds(commonRecord, authorityIds);
+
+        return authorityIds;
+    }
+
+    /**
+     * @param commonRecord The common record snapshot
+     * @return The distinct authority record ids in record order
+     */
+    public static Set<String> fromRecord(FrozenMarcRecord commonRecord) {
+        return fromRecord(commonRecord.view());
+    }
+
+    /**
+     * @param content The common record as MarcXchange
+     * @return The distinct authority record ids in record order
+     * @throws MarcReaderException If the content doesn't contain a record
+     */
+    public static Set<String> fromContent(byte[] content) throws MarcReaderException {
+        final Set<String> authorityIds = new LinkedHashSet<>();
+        addAuthorityIds(content, authorityIds);
+
+        return authorityIds;
+    }
+
+    /**
+     * @param commonRecords The common records
+     * @return The distinct authority record ids of all the records
+     */
+    public static Set<String> fromRecords(Collection<MarcRecord> commonRecords) {
+        final Set<String> authorityIds = new LinkedHashSet<>();
+        for (MarcRecord commonRecord : commonRecords) {
+            addAuthorityIds(commonRecord, authorityIds);
+        }
+
+        return authorityIds;
+    }
+
+    /**
+     * @param contents The common records as MarcXchange
+     * @return The distinct authority record ids of all the records
+     * @throws MarcReaderException If one of the contents doesn't contain a record
+     */
+    public static Set<String> fromContents(Collection<byte[]> contents) throws MarcReaderException {
+        final Set<String> authorityIds = new LinkedHashSet<>();
+        for (byte[] content : contents) {
+            addAuthorityIds(content, authorityIds);
+        }
+
+        return authorityIds;
+    }
+
+    private static void addAuthorityIds(MarcRecord commonRecord, Set<String> authorityIds) {
+        for (DataField dataField : commonRecord.getFields(DataField.class)) {
+            if (!AUTHORITY_FIELDS.test(dataField.getTag())) {
+                continue;
+            }
+            boolean hasAuthorityAgency = false;
+            SubField authorityId = null;
+            for (SubField subField : dataField.getSubFields()) {
+                if (subField.getCode() == '5') {
+                    hasAuthorityAgency = true;
+                } else if (subField.getCode() == '6' && authorityId == null) {
+                    authorityId = subField;
+                }
+            }
+            if (hasAuthorityAgency && authorityId != null) {
+                authorityIds.add(authorityId.getData());
+            }
+        }
+    }
+
+    private static void addAuthorityIds(byte[] content, Set<String> authorityIds) throws MarcReaderException {
+        final boolean found;
+        try {
+            found = MarcXchangeScanner.findAuthorityIds(ByteBuffer.wrap(content), 0, content.length, AUTHORITY_FIELDS, authorityIds::add);
+        } catch (IllegalArgumentException e) {
+            throw new MarcReaderException(e.getMessage());
+        }
+        if (!found) {
+            throw new MarcReaderException("The content doesn't contain a MarcXchange record");
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An authority record together with the parts of it used by the authority expansion: the fields per tag (main
+ * field 100/110/133/134, see and see also fields 400/500/410/510 and the 433/434 fields) and the *w heading
+ * built from 100 or 110.
+ * <p>
+ * The parts are found when the object is created, so an authority record which is referenced by many common
+ * records only has to be prepared once. The object can be shared between threads, but the wrapped record must
+ * not be changed afterwards.
+ * </p>
+ */
+public class AuthorityRecord {
+    private static final String PARENTHESES_SUBFIELD_CODES = "eijk";
+
+    private final MarcRecord marcRecord;
+    private final Map<String, List<DataField>> fieldsByTag = new HashMap<>();
+    private final String heading100;
+    private final String heading110;
+    private volatile AuthorityFragment fragment;
+
+    public AuthorityRecord(MarcRecord marcRecord) {
+        this.marcRecord = marcRecord;
+        for (DataField dataField : marcRecord.getFields(DataField.class)) {
+            fieldsByTag.computeIfAbsent(dataField.getTag(), tag -> new ArrayList<>()).add(dataField);
+        }
+        for (Map.Entry<String, List<DataField>> entry : fieldsByTag.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        final DataField field100 = getField("100");
+        this.heading100 = field100 == null ? null : formatHeading100(field100);
+        final DataField field110 = getField("110");
+        this.heading110 = field110 == null ? null : formatHeading110(field110);
+    }
+
+    public MarcRecord getMarcRecord() {
+        return marcRecord;
+    }
+
+    public boolean hasField(String tag) {
+        return fieldsByTag.containsKey(tag);
+    }
+
+    /**
+     * @param tag The tag
+     * @return The first field with the tag or <code>null</code> if the record has no such field
+     */
+    public DataField getField(String tag) {
+        final List<DataField> fields = fieldsByTag.get(tag);
+        return fields == null ? null : fields.get(0);
+    }
+
+    /**
+     * @param tag The tag
+     * @return The fields with the tag in record order
+     */
+    public List<DataField> getFields(String tag) {
+        return fieldsByTag.getOrDefault(tag, Collections.emptyList());
+    }
+
+    /**
+     * @param tag The main field, 100 or 110
+     * @return The heading used in *w of the 900/910 fields, or <code>null</code> if the record has no such field
+     */
+    public String getHeading(String tag) {
+        if ("100".equals(tag)) {
+            return heading100;
+        } else if ("110".equals(tag)) {
+            return heading110;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return The fragment used to expand common records with this authority record
+     */
+    public AuthorityFragment getFragment() {
+        // The fragment only holds copies of the fields, so building it twice in a race gives two equal fragments
+        AuthorityFragment result = fragment;
+        if (result == null) {
+            result = AuthorityFragment.of(this);
+            fragment = result;
+        }
+
+        return result;
+    }
+
+    /*
+     * *a, *h (*c) using the first occurrence of each subfield
+     */
+    private static String formatHeading100(DataField authAuthorField) {
+        String a = null;
+        String h = null;
+        String c = null;
+        for (SubField subField : authAuthorField.getSubFields()) {
+            if (subField.getCode() == 'a' && a == null) {
+                a = subField.getData();
+            } else if (subField.getCode() == 'h' && h == null) {
+                h = subField.getData();
+            } else if (subField.getCode() == 'c' && c == null) {
+                c = subField.getData();
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        if (a != null && h != null) {
+            sb.append(a).append(", ").append(h);
+        } else if (a != null) {
+            sb.append(a);
+        } else if (h != null) {
+            sb.append(h);
+        }
+        if (c != null) {
+            sb.append(" (").append(c).append(")");
+        }
+
+        return sb.toString();
+    }
+
+    /*
+     * Generelt om ekspansion af felt 410 til 910:
+     * For ekspansion af felt 410 i A-posten (som henvisning til 610, 710 og 780) gælder:
+     * Indhold fra felt 110 - alle delfelterne undtagen eijk - skal skrives i B-postens felt 910 *w i den rækkefølge de optræder i A-posten. Efter hvert delfelt skal skrives et punktum.
+     * Indhold fra delfelterne e, i, j og k skal skrives i en blød parentes med : mellem. Der skal være blanktegn på begge sider af semikolon. Se eksempler.
+     * Kommer et delfelt c efter et af delfelterne e, i, j eller k skal der være et punktum efter den bløde parentes afsluttes. Se eksempel.
+     */
+    private static String formatHeading110(DataField authAuthorField) {
+        final StringBuilder sb = new StringBuilder();
+        boolean previousInParentheses = false;
+        boolean first = true;
+        for (SubField subField : authAuthorField.getSubFields()) {
+            final boolean inParentheses = PARENTHESES_SUBFIELD_CODES.indexOf(subField.getCode()) >= 0;
+            if (inParentheses) {
+                // Continue or start parentheses
+                sb.append(previousInParentheses ? " : " : " (");
+            } else if (previousInParentheses) {
+                // End parentheses
+                sb.append("). ");
+            } else if (!first) {
+                sb.append(". ");
+            }
+            sb.append(subField.getData());
+            previousInParentheses = inParentheses;
+            first = false;
+        }
+        if (previousInParentheses) {
+            sb.append(")");
+        }
+
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,38 @@
+package dk.dbc.common.records;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Fetches the authority records needed to expand a common record.
+ * <p>
+ * {@link ExpandCommonMarcRecord} finds all authority record ids of a common record in one pass and asks for them
+ * in a single call, so an implementation can fetch them in one batch or in parallel instead of one at a time.
+ * Ids which aren't found are left out of the result, and the {@link MissingAuthorityPolicy} of the expansion decides
+ * what happens to the fields referencing them. A failed future fails the expansion.
+ * </p>
+ */
+@FunctionalInterface
+public interface AuthorityResolver {
+
+    /**
+     * @param authorityIds The ids (001 *a) of the authority records
+     * @return Future completed with the found authority records with the id as key
+     */
+    CompletableFuture<Map<String, AuthorityRecord>> resolve(Set<String> authorityIds);
+
+    /**
+     * Creates a resolver from a blocking fetch, e.g. to run it on virtual threads with
+     * <code>AuthorityResolver.ofBlocking(fetch, Executors.newVirtualThreadPerTaskExecutor())</code>
+     *
+     * @param fetch    Fetches the authority records with the given ids
+     * @param executor The executor running the fetch
+     * @return The resolver
+     */
+    static AuthorityResolver ofBlocking(Function<Set<String>, Map<String, AuthorityRecord>> fetch, Executor executor) {
+        return authorityIds -> CompletableFuture.supplyAsync(() -> fetch.apply(authorityIds), executor);
+    }
+}
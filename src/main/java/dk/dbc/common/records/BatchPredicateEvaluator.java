@@ -0,0 +1,163 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.MarcRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Evaluates a number of named predicates on a batch of records, e.g. to decide which queues the records go to.
+ * <p>
+ * The result is a bitmap per predicate where bit n is set if the predicate is true for record n of the batch.
+ * </p>
+ * <p>
+ * Predicates given as {@link FieldQuery} are evaluated column-wise: the fields of the batch are first collected
+ * per tag, and then each query runs over the column of its tag. This way a record is only scanned once no matter
+ * how many queries there are, and a query is skipped for records which already matched. Other predicates, e.g.
+ * <code>CatalogExtractionCode::isPublished</code> or
+ * <code>marcRecord -&gt; new MarcRecordReader(marcRecord).isDBCRecord()</code>, are evaluated per record.
+ * </p>
+ */
+public class BatchPredicateEvaluator {
+    private final String[] queryNames;
+    private final FieldQuerySet querySet;
+    private final String[] predicateNames;
+    private final List<Predicate<MarcRecord>> predicates;
+    private final List<String> names;
+
+    private BatchPredicateEvaluator(Builder builder) {
+        this.queryNames = builder.queryNames.toArray(new String[0]);
+        this.querySet = FieldQuerySet.of(builder.queries);
+        this.predicateNames = builder.predicateNames.toArray(new String[0]);
+        this.predicates = new ArrayList<>(builder.predicates);
+        this.names = new ArrayList<>(builder.names);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Evaluates all predicates on the batch
+     *
+     * @param records The batch
+     * @return Bitmap per predicate name, in the order the predicates were added
+     */
+    public Map<String, BitSet> evaluate(List<MarcRecord> records) {
+        final Map<String, BitSet> result = new LinkedHashMap<>();
+        for (String name : names) {
+            result.put(name, new BitSet(records.size()));
+        }
+
+        final Map<String, Column> columns = new HashMap<>();
+        for (String tag : querySet.getTags()) {
+            columns.put(tag, new Column());
+        }
+        for (int i = 0; i < records.size(); i++) {
+            for (Field field : records.get(i).getFields()) {
+                if (field instanceof DataField) {
+                    final Column column = columns.get(field.getTag());
+                    if (column != null) {
+                        column.add(i, (DataField) field);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Column> entry : columns.entrySet()) {
+            final Column column = entry.getValue();
+            for (int index : querySet.getQueryIndexes(entry.getKey())) {
+                final FieldQuery query = querySet.get(index);
+                final BitSet bits = result.get(queryNames[index]);
+                for (int i = 0; i < column.size; i++) {
+                    final int recordIndex = column.recordIndexes[i];
+                    if (!bits.get(recordIndex) && query.matches(column.fields[i])) {
+                        bits.set(recordIndex);
+                    }
+                }
+            }
+        }
+
+        for (int p = 0; p < predicates.size(); p++) {
+            final Predicate<MarcRecord> predicate = predicates.get(p);
+            final BitSet bits = result.get(predicateNames[p]);
+            for (int i = 0; i < records.size(); i++) {
+                if (predicate.test(records.get(i))) {
+                    bits.set(i);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static class Column {
+        private int size = 0;
+        private int[] recordIndexes = new int[16];
+        private DataField[] fields = new DataField[16];
+
+        private void add(int recordIndex, DataField field) {
+            if (size == fields.length) {
+                recordIndexes = Arrays.copyOf(recordIndexes, size * 2);
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            recordIndexes[size] = recordIndex;
+            fields[size] = field;
+            size++;
+        }
+    }
+
+    public static class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final List<String> queryNames = new ArrayList<>();
+        private final List<FieldQuery> queries = new ArrayList<>();
+        private final List<String> predicateNames = new ArrayList<>();
+        private final List<Predicate<MarcRecord>> predicates = new ArrayList<>();
+
+        private Builder() {
+
+        }
+
+        /**
+         * @param name  Name of the predicate
+         * @param query Query in the syntax of {@link FieldQuery}. The predicate is true if the query finds a value.
+         * @return this
+         */
+        public Builder add(String name, String query) {
+            return add(name, FieldQuery.compile(query));
+        }
+
+        public Builder add(String name, FieldQuery query) {
+            addName(name);
+            queryNames.add(name);
+            queries.add(query);
+            return this;
+        }
+
+        public Builder add(String name, Predicate<MarcRecord> predicate) {
+            addName(name);
+            predicateNames.add(name);
+            predicates.add(predicate);
+            return this;
+        }
+
+        private void addName(String name) {
+            if (names.contains(name)) {
+                throw new IllegalArgumentException("A predicate named " + name + " has already been added");
+            }
+            names.add(name);
+        }
+
+        public BatchPredicateEvaluator build() {
+            return new BatchPredicateEvaluator(this);
+        }
+    }
+
+}
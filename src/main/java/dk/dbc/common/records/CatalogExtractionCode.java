@@ -45,7 +45,23 @@ public class CatalogExtractionCode {
         return isUnderProduction(marcRecord, listOfCatalogCodes);
     }
 
+    public static boolean isUnderProduction(FrozenMarcRecord frozenMarcRecord) {
+        return isUnderProduction(frozenMarcRecord.view(), listOfCatalogCodes);
+    }
+
+    public static boolean isUnderProduction(FrozenMarcRecord frozenMarcRecord, List<String> listOfCatalogCodes) {
+        return isUnderProduction(frozenMarcRecord.view(), listOfCatalogCodes);
+    }
+
     public static boolean isUnderProduction(MarcRecord marcRecord, List<String> listOfCatalogCodes) {
+        final long start = Instrumentation.start();
+        final boolean result = checkUnderProduction(marcRecord, listOfCatalogCodes);
+        Instrumentation.stop(Instrumentation.UNDER_PRODUCTION, start, marcRecord, 0);
+
+        return result;
+    }
+
+    private static boolean checkUnderProduction(MarcRecord marcRecord, List<String> listOfCatalogCodes) {
         boolean hasExtractionDateInTheFuture = false;
         final DataField field032 = (DataField) marcRecord.getField(MarcRecord.hasTag("032")).orElse(null);
 
@@ -88,7 +104,23 @@ public class CatalogExtractionCode {
         return isPublished(marcRecord, listOfCatalogCodes);
     }
 
+    public static boolean isPublished(FrozenMarcRecord frozenMarcRecord) {
+        return isPublished(frozenMarcRecord.view(), listOfCatalogCodes);
+    }
+
+    public static boolean isPublished(FrozenMarcRecord frozenMarcRecord, List<String> listOfCatalogCodes) {
+        return isPublished(frozenMarcRecord.view(), listOfCatalogCodes);
+    }
+
     public static boolean isPublished(MarcRecord marcRecord, List<String> listOfCatalogCodes) {
+        final long start = Instrumentation.start();
+        final boolean result = checkPublished(marcRecord, listOfCatalogCodes);
+        Instrumentation.stop(Instrumentation.PUBLISHED, start, marcRecord, 0);
+
+        return result;
+    }
+
+    private static boolean checkPublished(MarcRecord marcRecord, List<String> listOfCatalogCodes) {
         final DataField field032 = (DataField) marcRecord.getField(MarcRecord.hasTag("032")).orElse(null);
 
         if (field032 != null) {
@@ -109,6 +141,10 @@ public class CatalogExtractionCode {
         return false;
     }
 
+    public static boolean isPublishedIgnoreCatalogCodes(FrozenMarcRecord frozenMarcRecord) {
+        return isPublishedIgnoreCatalogCodes(frozenMarcRecord.view());
+    }
+
     public static boolean isPublishedIgnoreCatalogCodes(MarcRecord marcRecord) {
         logger.entry(marcRecord);
 
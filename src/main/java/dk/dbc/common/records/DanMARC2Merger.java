@@ -1,10 +1,10 @@
 package dk.dbc.common.records;
 
 import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
 import dk.dbc.marc.binding.Leader;
 import dk.dbc.marc.binding.MarcRecord;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 
@@ -39,6 +39,10 @@ public class DanMARC2Merger {
     /**
      * Merge two MarcRecord objects according to the rules defined in the
      * constructor
+     * <p>
+     * The fields of the result are ordered by tag, with the common fields before the local fields with the same tag.
+     * Fields with the same tag keep their order from the input, but the input records don't have to be sorted.
+     * </p>
      *
      * @param common           the base of the result
      * @param local            the additional data
@@ -46,6 +50,20 @@ public class DanMARC2Merger {
      * @return a merged MarcRecord
      */
     public MarcRecord merge(MarcRecord common, MarcRecord local, boolean includeAllFields) {
+        final long start = Instrumentation.start();
+        final MarcRecord result;
+        try {
+            result = doMerge(common, local, includeAllFields);
+        } catch (RuntimeException e) {
+            Instrumentation.error(Instrumentation.MERGE);
+            throw e;
+        }
+        Instrumentation.stop(Instrumentation.MERGE, start, result, 0);
+
+        return result;
+    }
+
+    private MarcRecord doMerge(MarcRecord common, MarcRecord local, boolean includeAllFields) {
         final FieldRules.RuleSet ruleSet = fieldRulesIntermediate.newRuleSet();
         final MarcRecord result = new MarcRecord()
                 .setLeader(new Leader().setData(common.getLeader().getData()))
@@ -57,7 +75,7 @@ public class DanMARC2Merger {
         removeRegisterAndImportLocalFields(localDataFields, ruleSet, includeAllFields);
         removeAndImportCommonFields(commonDataFields, ruleSet);
 
-        final List<DataField> dataFields = mergeCommonAndLocalIntoTarget(localDataFields, commonDataFields);
+        final List<Field> dataFields = mergeCommonAndLocalIntoTarget(localDataFields, commonDataFields);
 
         result.getFields().addAll(dataFields);
 
@@ -112,35 +130,18 @@ public class DanMARC2Merger {
         }
     }
 
-    private static List<DataField> mergeCommonAndLocalIntoTarget(List<DataField> localDataFields, List<DataField> commonDataFields) {
-        final List<DataField> result = new ArrayList<>();
-        ListIterator<DataField> localIterator = localDataFields.listIterator();
-        ListIterator<DataField> commonIterator = commonDataFields.listIterator();
-
-        while (commonIterator.hasNext() && localIterator.hasNext()) {
-            final DataField localDataField = localIterator.next();
-            final String localTag = localDataField.getTag();
-            final DataField commonDataField = commonIterator.next();
-            final String commonTag = commonDataField.getTag();
-
-            if (commonTag.compareTo(localTag) <= 0) {
-                localIterator.previous();
-                result.add(commonDataField);
-            } else {
-                commonIterator.previous();
-                result.add(localDataField);
-            }
-        }
-        while (commonIterator.hasNext()) {
-            final DataField commonDataField = commonIterator.next();
-            result.add(commonDataField);
-        }
-        while (localIterator.hasNext()) {
-            final DataField localDataField = localIterator.next();
-            result.add(localDataField);
-        }
-
-        return result;
+    /**
+     * Merges the common and local fields in tag order. Common fields are placed before local fields with the same tag.
+     * <p>
+     * This is a stable sort of the common fields followed by the local fields. For sorted input it gives the same
+     * result as merging the two lists, and unsorted input is sorted instead of being merged as it comes.
+     * </p>
+     */
+    private static List<Field> mergeCommonAndLocalIntoTarget(List<DataField> localDataFields, List<DataField> commonDataFields) {
+        return RecordScope.sortedFieldBuilder(false)
+                .addAll(commonDataFields)
+                .addAll(localDataFields)
+                .build();
     }
 
 }
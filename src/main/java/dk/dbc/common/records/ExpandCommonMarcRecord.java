@@ -15,22 +15,58 @@ import org.slf4j.ext.XLoggerFactory;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import static dk.dbc.marc.binding.DataField.hasSubFieldCode;
-import static dk.dbc.marc.binding.MarcRecord.hasTag;
 
 public class ExpandCommonMarcRecord {
     private static final XLogger logger = XLoggerFactory.getXLogger(ExpandCommonMarcRecord.class);
     public static final List<String> AUTHORITY_FIELD_LIST = Arrays.asList("100", "110", "233", "234", "600", "610", "664", "665", "666", "700", "710", "770", "780", "845", "846");
+    static final TagFilter AUTHORITY_FIELDS = TagFilter.of(AUTHORITY_FIELD_LIST);
+    // Position in AUTHORITY_FIELD_LIST by tag id, -1 for other tags
+    private static final int[] AUTHORITY_FIELD_INDEXES = new int[TagRegistry.size()];
+
+    static {
+        Arrays.fill(AUTHORITY_FIELD_INDEXES, -1);
+        for (int i = 0; i < AUTHORITY_FIELD_LIST.size(); i++) {
+            AUTHORITY_FIELD_INDEXES[TagRegistry.id(AUTHORITY_FIELD_LIST.get(i))] = i;
+        }
+    }
     private static final MarcXchangeV1Writer marcRecordWriter = new MarcXchangeV1Writer();
     private static final Charset charset = StandardCharsets.UTF_8;
+    private static volatile ExpansionMetrics metrics = ExpansionMetrics.NOOP;
+
+    /**
+     * Sets the hooks receiving measurements of the expansion
+     *
+     * @param expansionMetrics The hooks or <code>null</code> to stop measuring
+     */
+    public static void setMetrics(ExpansionMetrics expansionMetrics) {
+        metrics = expansionMetrics == null ? ExpansionMetrics.NOOP : expansionMetrics;
+    }
+
+    private static long elapsed(Stopwatch stopWatch, String operation) {
+        final long nanos = stopWatch.getElapsedTime(TimeUnit.NANOSECONDS);
+        logger.debug("Stopwatch - {} took {} ms", operation, TimeUnit.NANOSECONDS.toMillis(nanos));
+        stopWatch.reset();
+
+        return nanos;
+    }
 
     private static MarcRecord contentToMarcRecord(byte[] content) throws MarcReaderException {
         final InputStream inputStream = new ByteArrayInputStream(content);
@@ -47,31 +83,64 @@ public class ExpandCommonMarcRecord {
      * @param content          The record content which should be expanded
      * @param authorityContent List of authority record content to be used for expanding
      * @param keepAutFields    If true the  *5 and *6 fields remains in the output record
+     * @return The expanded record content, or the given content if the record has no *5 or *6
      * @throws MarcReaderException When expansion fails (usually due to missing authority record)
      */
     public static byte[] expandRecord(byte[] content, Map<String, byte[]> authorityContent, boolean keepAutFields) throws MarcReaderException, MarcRecordExpandException {
+        final ExpansionMetrics expansionMetrics = metrics;
+        if (!hasAutFields(content)) {
+            expansionMetrics.authorityLinks(0);
+            return content;
+        }
         final Stopwatch stopWatch = new Stopwatch();
         final MarcRecord commonMarcRecord = contentToMarcRecord(content);
-        logger.debug("Stopwatch - {} took {} ms", "RecordContentTransformer.decodeRecord(common)", stopWatch.getElapsedTime(TimeUnit.MILLISECONDS));
-        stopWatch.reset();
+        expansionMetrics.decodeTime(elapsed(stopWatch, "RecordContentTransformer.decodeRecord(common)"));
 
-        final Map<String, MarcRecord> authorityMarcRecords = new HashMap<>();
+        final Map<String, AuthorityRecord> authorityMarcRecords = new HashMap<>();
         for (Map.Entry<String, byte[]> entry : authorityContent.entrySet()) {
-            authorityMarcRecords.put(entry.getKey(), contentToMarcRecord(entry.getValue()));
-            logger.debug("Stopwatch - {} took {} ms", "RecordContentTransformer.decodeRecord(loop)", stopWatch.getElapsedTime(TimeUnit.MILLISECONDS));
-            stopWatch.reset();
+            authorityMarcRecords.put(entry.getKey(), new AuthorityRecord(contentToMarcRecord(entry.getValue())));
+            expansionMetrics.authorityDecodeTime(elapsed(stopWatch, "RecordContentTransformer.decodeRecord(loop)"));
         }
 
-        final MarcRecord expandedMarcRecord = doExpand(commonMarcRecord, authorityMarcRecords, keepAutFields);
-        logger.debug("Stopwatch - {} took {} ms", "doExpand", stopWatch.getElapsedTime(TimeUnit.MILLISECONDS));
-        stopWatch.reset();
+        // The decoded records are only used here, so the expanded record can share their fields
+        final MarcRecord expandedMarcRecord = doExpand(commonMarcRecord, fragments(authorityMarcRecords), keepAutFields, true, MissingAuthorityPolicy.FAIL, expansionMetrics);
+        expansionMetrics.expandTime(elapsed(stopWatch, "doExpand"));
 
-        logger.debug("Stopwatch - {} took {} ms", "sortFields", stopWatch.getElapsedTime(TimeUnit.MILLISECONDS));
-        stopWatch.reset();
+        final byte[] expandedContent = marcRecordWriter.write(expandedMarcRecord, charset);
+        expansionMetrics.encodeTime(elapsed(stopWatch, "RecordContentTransformer.encodeRecord"));
 
-        logger.debug("Stopwatch - {} took {} ms", "RecordContentTransformer.encodeRecord", stopWatch.getElapsedTime(TimeUnit.MILLISECONDS));
-        stopWatch.reset();
-        return marcRecordWriter.write(expandedMarcRecord, charset);
+        return expandedContent;
+    }
+
+    /**
+     * This function performs authority expansion on a rawrepo Record using pre-expanded authority fragments, so
+     * no authority records are parsed.
+     *
+     * @param content       The record content which should be expanded
+     * @param fragmentStore The fragments of the authority records
+     * @param keepAutFields If true the  *5 and *6 fields remains in the output record
+     * @return The expanded record content, or the given content if the record has no *5 or *6
+     * @throws MarcReaderException When the record content can't be parsed
+     * @throws MarcRecordExpandException When an authority record is missing in the store
+     */
+    public static byte[] expandRecord(byte[] content, AuthorityFragmentStore fragmentStore, boolean keepAutFields) throws MarcReaderException, MarcRecordExpandException {
+        final ExpansionMetrics expansionMetrics = metrics;
+        if (!hasAutFields(content)) {
+            expansionMetrics.authorityLinks(0);
+            return content;
+        }
+        final Stopwatch stopWatch = new Stopwatch();
+        final MarcRecord commonMarcRecord = contentToMarcRecord(content);
+        expansionMetrics.decodeTime(elapsed(stopWatch, "RecordContentTransformer.decodeRecord(common)"));
+
+        // The fragments are read from the store for each call, so the expanded record can share their fields
+        final MarcRecord expandedMarcRecord = doExpand(commonMarcRecord, fragmentStore::get, keepAutFields, true, MissingAuthorityPolicy.FAIL, expansionMetrics);
+        expansionMetrics.expandTime(elapsed(stopWatch, "doExpand"));
+
+        final byte[] expandedContent = marcRecordWriter.write(expandedMarcRecord, charset);
+        expansionMetrics.encodeTime(elapsed(stopWatch, "RecordContentTransformer.encodeRecord"));
+
+        return expandedContent;
     }
 
     /**
@@ -84,7 +153,7 @@ public class ExpandCommonMarcRecord {
     public static MarcRecord expandMarcRecord(Map<String, MarcRecord> records, String recordId, boolean keepAutFields) throws MarcRecordExpandException {
         final Stopwatch stopWatch = new Stopwatch();
         MarcRecord commonRecord = null;
-        final Map<String, MarcRecord> authorityRecords = new HashMap<>();
+        final Map<String, AuthorityRecord> authorityRecords = new HashMap<>();
 
         // Key is the recordId and value is the record. AgencyId have to be found in the record
         for (Map.Entry<String, MarcRecord> entry : records.entrySet()) {
@@ -95,17 +164,22 @@ public class ExpandCommonMarcRecord {
             if (recordId.equals(foundRecordId)) {
                 commonRecord = entry.getValue();
             } else if ("870979".equals(foundAgencyId)) {
-                authorityRecords.put(foundRecordId, entry.getValue());
+                authorityRecords.put(foundRecordId, new AuthorityRecord(entry.getValue()));
             }
         }
 
         logger.debug("Stopwatch - {} took {} ms", "expandMarcRecord", stopWatch.getElapsedTime(TimeUnit.MILLISECONDS));
+        stopWatch.reset();
 
         if (commonRecord == null) {
             throw new MarcRecordExpandException("The record collection doesn't contain a common record");
         }
 
-        return doExpand(commonRecord, authorityRecords, keepAutFields);
+        final ExpansionMetrics expansionMetrics = metrics;
+        final MarcRecord expandedRecord = doExpand(commonRecord, fragments(authorityRecords), keepAutFields, false, MissingAuthorityPolicy.FAIL, expansionMetrics);
+        expansionMetrics.expandTime(elapsed(stopWatch, "doExpand"));
+
+        return expandedRecord;
     }
 
     /**
@@ -120,7 +194,172 @@ public class ExpandCommonMarcRecord {
         return expandMarcRecord(records, recordId, false);
     }
 
-    private static MarcRecord doExpand(MarcRecord commonRecord, Map<String, MarcRecord> authorityRecords, boolean keepAutFields) throws MarcRecordExpandException {
+    /**
+     * Expands a common record with authority records which have already been prepared for expansion. Use this when
+     * the same authority records are used for many common records, e.g. by keeping the {@link AuthorityRecord}
+     * objects in a cache.
+     *
+     * @param commonRecord     The common record
+     * @param authorityRecords The authority records with the authority record id as key
+     * @param keepAutFields    If true the  *5 and *6 fields remains in the output record
+     * @return The common record expanded with authority data
+     * @throws MarcRecordExpandException if an authority record is missing
+     */
+    public static MarcRecord expandMarcRecord(MarcRecord commonRecord, Map<String, AuthorityRecord> authorityRecords, boolean keepAutFields) throws MarcRecordExpandException {
+        final Stopwatch stopWatch = new Stopwatch();
+        final ExpansionMetrics expansionMetrics = metrics;
+        // The authority records are shared with other expansions, so their fields are always copied
+        final MarcRecord expandedRecord = doExpand(commonRecord, fragments(authorityRecords), keepAutFields, false, MissingAuthorityPolicy.FAIL, expansionMetrics);
+        expansionMetrics.expandTime(elapsed(stopWatch, "doExpand"));
+
+        return expandedRecord;
+    }
+
+    /**
+     * Expands a common record using pre-expanded authority fragments, so no authority records are parsed
+     *
+     * @param commonRecord  The common record
+     * @param fragmentStore The fragments of the authority records
+     * @param keepAutFields If true the  *5 and *6 fields remains in the output record
+     * @return The common record expanded with authority data
+     * @throws MarcRecordExpandException if an authority record is missing in the store
+     */
+    public static MarcRecord expandMarcRecord(MarcRecord commonRecord, AuthorityFragmentStore fragmentStore, boolean keepAutFields) throws MarcRecordExpandException {
+        final Stopwatch stopWatch = new Stopwatch();
+        final ExpansionMetrics expansionMetrics = metrics;
+        final MarcRecord expandedRecord = doExpand(commonRecord, fragmentStore::get, keepAutFields, false, MissingAuthorityPolicy.FAIL, expansionMetrics);
+        expansionMetrics.expandTime(elapsed(stopWatch, "doExpand"));
+
+        return expandedRecord;
+    }
+
+    /**
+     * Expands a common record with authority records fetched by a resolver. All authority record ids of the record
+     * are passed to the resolver in a single call, and the expansion continues when the resolver completes. It runs on
+     * the thread which completes the resolver, so it uses a {@link RecordScope} of that thread rather than the caller's.
+     *
+     * @param commonRecord           The common record
+     * @param resolver               Fetches the authority records
+     * @param timeout                The maximum time to wait for the resolver, or <code>null</code> to wait until it completes
+     * @param missingAuthorityPolicy What to do when the resolver doesn't find an authority record
+     * @param keepAutFields          If true the  *5 and *6 fields remains in the output record
+     * @return Future completed with the expanded record, or failed with a {@link MarcRecordExpandException} if the
+     * resolver fails or times out or an authority record is missing with {@link MissingAuthorityPolicy#FAIL}
+     */
+    public static CompletableFuture<MarcRecord> expandMarcRecordAsync(MarcRecord commonRecord, AuthorityResolver resolver, Duration timeout, MissingAuthorityPolicy missingAuthorityPolicy, boolean keepAutFields) {
+        final ExpansionMetrics expansionMetrics = metrics;
+        return resolve(commonRecord, resolver, timeout, expansionMetrics).thenApply(authorityRecords -> {
+            final Stopwatch stopWatch = new Stopwatch();
+            try {
+                // The resolver may cache the authority records, so their fields are always copied
+                final MarcRecord expandedRecord = doExpand(commonRecord, fragments(authorityRecords), keepAutFields, false, missingAuthorityPolicy, expansionMetrics);
+                expansionMetrics.expandTime(elapsed(stopWatch, "doExpand"));
+
+                return expandedRecord;
+            } catch (MarcRecordExpandException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Blocking version of {@link #expandMarcRecordAsync(MarcRecord, AuthorityResolver, Duration, MissingAuthorityPolicy, boolean)}
+     *
+     * @throws MarcRecordExpandException If the resolver fails or times out, or an authority record is missing with
+     *                                   {@link MissingAuthorityPolicy#FAIL}
+     */
+    public static MarcRecord expandMarcRecord(MarcRecord commonRecord, AuthorityResolver resolver, Duration timeout, MissingAuthorityPolicy missingAuthorityPolicy, boolean keepAutFields) throws MarcRecordExpandException {
+        return join(expandMarcRecordAsync(commonRecord, resolver, timeout, missingAuthorityPolicy, keepAutFields));
+    }
+
+    /**
+     * Same as {@link #expandMarcRecordAsync(MarcRecord, AuthorityResolver, Duration, MissingAuthorityPolicy, boolean)}
+     * but for record content. If the record has no *5 or *6 the future is completed with the given content.
+     *
+     * @throws MarcReaderException If the record content can't be parsed
+     */
+    public static CompletableFuture<byte[]> expandRecordAsync(byte[] content, AuthorityResolver resolver, Duration timeout, MissingAuthorityPolicy missingAuthorityPolicy, boolean keepAutFields) throws MarcReaderException {
+        final ExpansionMetrics expansionMetrics = metrics;
+        if (!hasAutFields(content)) {
+            expansionMetrics.authorityLinks(0);
+            return CompletableFuture.completedFuture(content);
+        }
+        final Stopwatch decodeStopWatch = new Stopwatch();
+        final MarcRecord commonMarcRecord = contentToMarcRecord(content);
+        expansionMetrics.decodeTime(elapsed(decodeStopWatch, "RecordContentTransformer.decodeRecord(common)"));
+
+        return expandMarcRecordAsync(commonMarcRecord, resolver, timeout, missingAuthorityPolicy, keepAutFields).thenApply(expandedMarcRecord -> {
+            final Stopwatch stopWatch = new Stopwatch();
+            final byte[] expandedContent = marcRecordWriter.write(expandedMarcRecord, charset);
+            expansionMetrics.encodeTime(elapsed(stopWatch, "RecordContentTransformer.encodeRecord"));
+
+            return expandedContent;
+        });
+    }
+
+    /**
+     * Blocking version of {@link #expandRecordAsync(byte[], AuthorityResolver, Duration, MissingAuthorityPolicy, boolean)}
+     *
+     * @throws MarcReaderException       If the record content can't be parsed
+     * @throws MarcRecordExpandException If the resolver fails or times out, or an authority record is missing with
+     *                                   {@link MissingAuthorityPolicy#FAIL}
+     */
+    public static byte[] expandRecord(byte[] content, AuthorityResolver resolver, Duration timeout, MissingAuthorityPolicy missingAuthorityPolicy, boolean keepAutFields) throws MarcReaderException, MarcRecordExpandException {
+        return join(expandRecordAsync(content, resolver, timeout, missingAuthorityPolicy, keepAutFields));
+    }
+
+    private static CompletableFuture<Map<String, AuthorityRecord>> resolve(MarcRecord commonRecord, AuthorityResolver resolver, Duration timeout, ExpansionMetrics expansionMetrics) {
+        final Set<String> authorityIds = AuthorityIdExtractor.fromRecord(commonRecord);
+        if (authorityIds.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+
+        final Stopwatch stopWatch = new Stopwatch();
+        CompletableFuture<Map<String, AuthorityRecord>> resolved;
+        try {
+            // Copy the future so the timeout doesn't complete a future which the resolver may share
+            resolved = resolver.resolve(authorityIds).copy();
+        } catch (RuntimeException e) {
+            resolved = CompletableFuture.failedFuture(e);
+        }
+        if (timeout != null) {
+            resolved = resolved.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        return resolved.handle((authorityRecords, failure) -> {
+            expansionMetrics.resolveTime(elapsed(stopWatch, "AuthorityResolver.resolve"));
+            if (failure != null) {
+                final Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                final String message = cause instanceof TimeoutException
+                        ? String.format("The authority records %s weren't resolved within %s", authorityIds, timeout)
+                        : String.format("The authority records %s couldn't be resolved: %s", authorityIds, cause.getMessage());
+                logger.error(message, cause);
+                throw new CompletionException(new MarcRecordExpandException(message, cause));
+            }
+
+            return authorityRecords;
+        });
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws MarcRecordExpandException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof MarcRecordExpandException) {
+                throw (MarcRecordExpandException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static Function<String, AuthorityFragment> fragments(Map<String, AuthorityRecord> authorityRecords) {
+        return authRecordId -> {
+            final AuthorityRecord authorityRecord = authorityRecords.get(authRecordId);
+            return authorityRecord == null ? null : authorityRecord.getFragment();
+        };
+    }
+
+    private static MarcRecord doExpand(MarcRecord commonRecord, Function<String, AuthorityFragment> authorityFragments, boolean keepAutFields, boolean shareFields, MissingAuthorityPolicy missingAuthorityPolicy, ExpansionMetrics expansionMetrics) throws MarcRecordExpandException {
         final MarcRecord expandedRecord = new MarcRecord()
                 .setLeader(commonRecord.getLeader());
         /*
@@ -143,48 +382,63 @@ public class ExpandCommonMarcRecord {
 
         // Record doesn't have any authority record references, so just return the same record
         if (!hasAutFields(commonRecord)) {
+            expansionMetrics.authorityLinks(0);
             return commonRecord;
         }
 
-        final int authNumerator = findMaxAuthNumerator(commonRecord.getFields(DataField.class));
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("100")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("110")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("233")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("234")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("600")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("610")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("664")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("665")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("666")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("700")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("710")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("770")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("780")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("845")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-        handleRepeatableField(commonRecord.getFields(DataField.class, hasTag("846")), expandedRecord, authorityRecords, keepAutFields, authNumerator);
-
-        for (DataField dataField : commonRecord.getFields(DataField.class)) {
-            if (!AUTHORITY_FIELD_LIST.contains(dataField.getTag())) {
-                expandedRecord.getFields().add(new DataField(dataField));
+        final List<DataField> dataFields = commonRecord.getFields(DataField.class);
+        final int authNumerator = findMaxAuthNumerator(dataFields);
+        final SortedFieldBuilder expandedFields = RecordScope.sortedFieldBuilder(true);
+
+        // The authority fields are handled in the order of AUTHORITY_FIELD_LIST and before the other fields
+        final List<List<DataField>> authorityFields = new ArrayList<>(AUTHORITY_FIELD_LIST.size());
+        for (int i = 0; i < AUTHORITY_FIELD_LIST.size(); i++) {
+            authorityFields.add(new ArrayList<>());
+        }
+        for (DataField dataField : dataFields) {
+            final int index = authorityFieldIndex(dataField.getTag());
+            if (index >= 0) {
+                authorityFields.get(index).add(dataField);
+            }
+        }
+        int authorityLinks = 0;
+        for (List<DataField> fields : authorityFields) {
+            if (!fields.isEmpty()) {
+                authorityLinks += handleRepeatableField(fields, expandedFields, authorityFragments, keepAutFields, authNumerator, shareFields, missingAuthorityPolicy, expansionMetrics);
+            }
+        }
+
+        for (DataField dataField : dataFields) {
+            if (!AUTHORITY_FIELDS.test(dataField.getTag())) {
+                expandedFields.add(copy(dataField, shareFields));
             }
         }
 
-        sortFields(expandedRecord);
+        expansionMetrics.authorityLinks(authorityLinks);
+
+        final Stopwatch stopWatch = new Stopwatch();
+        expandedRecord.getFields().addAll(expandedFields.build());
+        expansionMetrics.sortTime(elapsed(stopWatch, "sortFields"));
 
         return expandedRecord;
     }
 
+    private static int authorityFieldIndex(String tag) {
+        final int id = TagRegistry.id(tag);
+
+        return id >= 0 ? AUTHORITY_FIELD_INDEXES[id] : -1;
+    }
+
     private static int findMaxAuthNumerator(List<DataField> dataFields) {
         int authNumerator = 1001;
         for (DataField dataField : dataFields) {
-            if (dataField.hasSubField(hasSubFieldCode('å'))) {
-                try {
-                    final int numerator = Integer.parseInt(dataField.getSubField(hasSubFieldCode('å')).orElseThrow().getData());
-                    if (numerator > authNumerator) {
-                        authNumerator = numerator + 1;
-                    }
-                } catch (NumberFormatException ex) {
-                    final String message = String.format("Ugyldig værdi i delfelt %s *å. Forventede et tal men fik '%s' - ignorerer", dataField.getTag(), dataField.getSubField(hasSubFieldCode('å')).get().getData());
+            final String value = FieldSorter.aaData(dataField);
+            if (value != null) {
+                final int numerator = FieldSorter.parseIntOrZero(value);
+                if (numerator > authNumerator) {
+                    authNumerator = numerator + 1;
+                } else if (numerator == 0 && logger.isDebugEnabled() && !FieldSorter.isInt(value)) {
+                    final String message = String.format("Ugyldig værdi i delfelt %s *å. Forventede et tal men fik '%s' - ignorerer", dataField.getTag(), value);
                     logger.debug(message);
                 }
             }
@@ -193,16 +447,27 @@ public class ExpandCommonMarcRecord {
         return authNumerator;
     }
 
-    private static void handleRepeatableField(List<DataField> dataFields, MarcRecord expandedRecord, Map<String, MarcRecord> authorityRecords, boolean keepAutFields, int authNumerator) throws MarcRecordExpandException {
+    private static int handleRepeatableField(List<DataField> dataFields, SortedFieldBuilder expandedFields, Function<String, AuthorityFragment> authorityFragments, boolean keepAutFields, int authNumerator, boolean shareFields, MissingAuthorityPolicy missingAuthorityPolicy, ExpansionMetrics expansionMetrics) throws MarcRecordExpandException {
+        int authorityLinks = 0;
         for (DataField dataField : dataFields) {
             if (dataField.hasSubField(hasSubFieldCode('5')) && dataField.hasSubField(hasSubFieldCode('6'))) {
+                authorityLinks++;
                 final String authRecordId = dataField.getSubField(hasSubFieldCode('6')).orElseThrow().getData();
-                final MarcRecord authRecord = authorityRecords.get(authRecordId);
+                final AuthorityFragment authRecord = authorityFragments.apply(authRecordId);
 
                 if (authRecord == null) {
                     final String message = String.format("Autoritetsposten '%s' blev ikke fundet i forbindelse med ekspandering af fællesskabsposten", authRecordId);
-                    logger.error(message);
-                    throw new MarcRecordExpandException(message);
+                    expansionMetrics.missingAuthority();
+                    if (missingAuthorityPolicy == MissingAuthorityPolicy.FAIL) {
+                        logger.error(message);
+                        throw new MarcRecordExpandException(message);
+                    }
+                    logger.warn(message);
+                    final DataField errorField = new DataField("e01", "00");
+                    errorField.addSubField(new SubField('a', message));
+                    expandedFields.add(copy(dataField, shareFields));
+                    expandedFields.add(errorField);
+                    continue;
                 }
 
                 final DataField expandedField = new DataField(dataField);
@@ -210,61 +475,65 @@ public class ExpandCommonMarcRecord {
                 String referenceField = "";
 
                 int mode = 0;
-                switch (dataField.getTag()) {
-                    case "100":
+                // The ids of three digit tags are their numeric values
+                final int tagId = TagRegistry.id(dataField.getTag());
+                switch (tagId) {
+                    case 100:
                         mode = 1;
                         authAuthorFieldName = "100";
                         break;
-                    case "600":
-                    case "700":
-                    case "770":
+                    case 600:
+                    case 700:
+                    case 770:
                         mode = 2;
                         authAuthorFieldName = "100";
                         break;
-                    case "110":
+                    case 110:
                         mode = 1;
                         authAuthorFieldName = "110";
                         break;
-                    case "610":
-                    case "710":
-                    case "780":
+                    case 610:
+                    case 710:
+                    case 780:
                         mode = 2;
                         authAuthorFieldName = "110";
                         break;
-                    case "845":
+                    case 845:
                         mode = 3;
-                    case "233":
+                    case 233:
                         referenceField = "433";
                         authAuthorFieldName = "133";
                         break;
-                    case "846":
+                    case 846:
                         mode = 4;
-                    case "234":
+                    case 234:
                         referenceField = "434";
                         authAuthorFieldName = "134";
                         break;
                 }
-                if (!authRecord.hasField(hasTag(authAuthorFieldName))) {
+                // The authority field is only read, so it isn't copied
+                final DataField authAuthorField = authRecord.getMainField(authAuthorFieldName);
+                if (authAuthorField == null) {
                     final DataField errorField = new DataField("e01", "00");
                     String error = "A-post " + authRecordId + " er ikke af en type der svarer til felt " + dataField.getTag();
                     errorField.addSubField(new SubField('a', error));
-                    expandedRecord.getFields().add(new DataField(dataField));
-                    expandedRecord.getFields().add(new DataField(errorField));
+                    expandedFields.add(copy(dataField, shareFields));
+                    expandedFields.add(errorField);
+                    expansionMetrics.authorityTypeMismatch();
                     continue;
                 }
-                final DataField authAuthorField = new DataField((DataField) authRecord.getField(hasTag(authAuthorFieldName)).orElseThrow());
 
-                addMainField(expandedField, authAuthorField, keepAutFields);
+                addMainField(expandedField, authAuthorField, keepAutFields, shareFields);
 
                 String fieldReference = dataField.getTag();
                 if (mode == 1 || mode == 2) {
                     // x00 and 770 puts 400 and 500 in 900 fields and x10 and 780 puts 410 and 510 in 910 fields - this is so fun
                     boolean hasAdditionalFields;
-                    List<String> mayNeedFourFiveHundred = Arrays.asList("00", "70");
-                    if (mayNeedFourFiveHundred.contains(dataField.getTag().substring(1))) {
-                        hasAdditionalFields = authRecord.hasField(hasTag("400").or(hasTag("500")));
+                    final boolean mayNeedFourFiveHundred = tagId % 100 == 0 || tagId % 100 == 70;
+                    if (mayNeedFourFiveHundred) {
+                        hasAdditionalFields = authRecord.hasAdditionalFields("400") || authRecord.hasAdditionalFields("500");
                     } else {
-                        hasAdditionalFields = authRecord.hasField(hasTag("410").or(hasTag("510")));
+                        hasAdditionalFields = authRecord.hasAdditionalFields("410") || authRecord.hasAdditionalFields("510");
                     }
                     if (mode == 2 && hasAdditionalFields) {
                         // The field is repeatable, so we add a numerator value to the *z content
@@ -276,22 +545,22 @@ public class ExpandCommonMarcRecord {
                             fieldReference += "/" + dataField.getSubField(hasSubFieldCode('å')).orElseThrow().getData();
                         }
                     }
-                    if (mayNeedFourFiveHundred.contains(dataField.getTag().substring(1))) {
+                    if (mayNeedFourFiveHundred) {
                         if (hasAdditionalFields) {
-                            addAdditionalFields("900", expandedRecord, authRecord.getFields(DataField.class, hasTag("400")), authAuthorField, fieldReference);
-                            addAdditionalFields("900", expandedRecord, authRecord.getFields(DataField.class, hasTag("500")), authAuthorField, fieldReference);
+                            addAdditionalFields(expandedFields, authRecord.getAdditionalFields("400"), fieldReference, shareFields);
+                            addAdditionalFields(expandedFields, authRecord.getAdditionalFields("500"), fieldReference, shareFields);
                         }
                     } else {
                         if (hasAdditionalFields) {
-                            addAdditionalFields("910", expandedRecord, authRecord.getFields(DataField.class, hasTag("410")), authAuthorField, fieldReference);
-                            addAdditionalFields("910", expandedRecord, authRecord.getFields(DataField.class, hasTag("510")), authAuthorField, fieldReference);
+                            addAdditionalFields(expandedFields, authRecord.getAdditionalFields("410"), fieldReference, shareFields);
+                            addAdditionalFields(expandedFields, authRecord.getAdditionalFields("510"), fieldReference, shareFields);
                         }
                     }
                 } else {
                     // The universe/series fields is repeatable, so we add a numerator value to the *z content
                     // though, only if there are 433 or 434 fields
                     boolean hasAdditionalFields;
-                    hasAdditionalFields = authRecord.hasField(hasTag(referenceField));
+                    hasAdditionalFields = authRecord.hasAdditionalFields(referenceField);
                     if (hasAdditionalFields && !dataField.hasSubField(hasSubFieldCode('å'))) {
                         expandedField.getSubFields().add(0, new SubField('å', Integer.toString(authNumerator)));
                         fieldReference += "/" + authNumerator;
@@ -300,16 +569,18 @@ public class ExpandCommonMarcRecord {
                         fieldReference = "";
                     }
                     if (mode == 3) {
-                        addAdditionalFields("945", expandedRecord, authRecord.getFields(DataField.class, hasTag("433")), authAuthorField, fieldReference);
+                        addAdditionalFields(expandedFields, authRecord.getAdditionalFields("433"), fieldReference, shareFields);
                     } else {
-                        addAdditionalFields("945", expandedRecord, authRecord.getFields(DataField.class, hasTag("434")), authAuthorField, fieldReference);
+                        addAdditionalFields(expandedFields, authRecord.getAdditionalFields("434"), fieldReference, shareFields);
                     }
                 }
-                expandedRecord.getFields().add(new DataField(expandedField));
+                expandedFields.add(expandedField);
             } else {
-                expandedRecord.getFields().add(new DataField(dataField));
+                expandedFields.add(copy(dataField, shareFields));
             }
         }
+
+        return authorityLinks;
     }
 
     // Sonarlint
@@ -323,7 +594,7 @@ public class ExpandCommonMarcRecord {
         return 0;
     }
 
-    private static void addMainField(Field<DataField> field, Field<DataField> authField, boolean keepAutFields) {
+    private static void addMainField(Field<DataField> field, Field<DataField> authField, boolean keepAutFields, boolean shareFields) {
         // Find the index of where the AUT reference subfields are in the field
         // We need to add the AUT content at that location
         int authSubfieldIndex = findAuthPosition(field);
@@ -344,180 +615,52 @@ public class ExpandCommonMarcRecord {
             for (SubField authSubfield : authDataField.getSubFields()) {
                 char code = authSubfield.getCode();
                 if ('a' == code || 'ø' == code) {
-                    dataField.getSubFields().add(authSubfieldIndex++, new SubField(authSubfield));
+                    dataField.getSubFields().add(authSubfieldIndex++, copy(authSubfield, shareFields));
                 }
             }
         } else {
             final DataField authDataField = (DataField) authField;
             for (SubField authSubfield : authDataField.getSubFields()) {
-                dataField.getSubFields().add(authSubfieldIndex++, new SubField(authSubfield));
-            }
-        }
-    }
-
-    // Sonarlint is even stupider
-    private static void doGeneralUniverse(boolean universeFields, SubField authSubfield, DataField additionalField) {
-        if (universeFields) {
-            char code = authSubfield.getCode();
-            if ('a' == code || 'ø' == code) {
-                // there will at least be a subfield 8 which isn't wanted - only subfield a and ø should be copied
-                additionalField.getSubFields().add(new SubField(authSubfield));
-            }
-        } else {
-            additionalField.getSubFields().add(new SubField(authSubfield));
-        }
-    }
-
-    // Sonarlint is stupid
-    private static String doGeneral(boolean universeFields, DataField additionalField, DataField authDataField, String subfieldwValue) {
-        for (SubField authSubfield : authDataField.getSubFields()) {
-            if ('w' == authSubfield.getCode()) {
-                if (!universeFields) {
-                    subfieldwValue = authSubfield.getData();
-                }
-            } else {
-                doGeneralUniverse(universeFields, authSubfield, additionalField);
-            }
-        }
-        return subfieldwValue;
-    }
-
-    private static void handleLookContent(String subfieldwValue, DataField additionalField, DataField authDataField) {
-        if (subfieldwValue != null) {
-            if ("tidligere navn".equals(subfieldwValue)) {
-                additionalField.getSubFields().add(new SubField('x', "se også under det senere navn"));
-            } else if ("senere navn".equals(subfieldwValue)) {
-                additionalField.getSubFields().add(new SubField('x', "se også under det tidligere navn"));
-            } else {
-                additionalField.getSubFields().add(new SubField('x', subfieldwValue));
-            }
-        } else {
-            if (Arrays.asList("500", "510").contains(authDataField.getTag())) {
-                additionalField.getSubFields().add(new SubField('x', "se også"));
-            } else {
-                additionalField.getSubFields().add(new SubField('x', "se"));
-            }
-        }
-    }
-
-    private static void handleField100(DataField authAuthorField, StringBuilder sb) {
-        final boolean hasAuthField100A = authAuthorField.hasSubField(hasSubFieldCode('a'));
-        final boolean hasAuthField100H = authAuthorField.hasSubField(hasSubFieldCode('h'));
-
-        if (hasAuthField100A && hasAuthField100H) {
-            sb.append(authAuthorField.getSubField(hasSubFieldCode('a')).orElseThrow().getData());
-            sb.append(", ");
-            sb.append(authAuthorField.getSubField(hasSubFieldCode('h')).orElseThrow().getData());
-        } else if (hasAuthField100A) {
-            sb.append(authAuthorField.getSubField(hasSubFieldCode('a')).orElseThrow().getData());
-        } else if (hasAuthField100H) {
-            sb.append(authAuthorField.getSubField(hasSubFieldCode('h')).orElseThrow().getData());
-        }
-
-        if (authAuthorField.hasSubField(hasSubFieldCode('c'))) {
-            sb.append(" (");
-            sb.append(authAuthorField.getSubField(hasSubFieldCode('c')).orElseThrow().getData());
-            sb.append(")");
-        }
-    }
-
-    private static void handleParantesis(char previousSubFieldName, StringBuilder sb, SubField subField, List<Character> parenthesesSubFieldNames) {
-        if (parenthesesSubFieldNames.contains(previousSubFieldName)) {
-            // Continue parentheses
-            sb.append(" : ");
-            sb.append(subField.getData());
-        } else {
-            // New parentheses
-            sb.append(" (");
-            sb.append(subField.getData());
-        }
-    }
-
-    private static void handleNonUniverse110(DataField authAuthorField, StringBuilder sb) {
-        final List<Character> parenthesesSubFieldNames = Arrays.asList('e', 'i', 'j', 'k');
-
-        char previousSubFieldName = '\0';
-
-        for (SubField subField : authAuthorField.getSubFields()) {
-            if (parenthesesSubFieldNames.contains(subField.getCode())) {
-                handleParantesis(previousSubFieldName, sb, subField, parenthesesSubFieldNames);
-            } else {
-                if (parenthesesSubFieldNames.contains(previousSubFieldName)) {
-                    // End parentheses
-                    sb.append("). ");
-                    sb.append(subField.getData());
-                } else {
-                    if ('\u0000' != previousSubFieldName) {
-                        sb.append(". ");
-                    }
-                    sb.append(subField.getData());
-                }
+                dataField.getSubFields().add(authSubfieldIndex++, copy(authSubfield, shareFields));
             }
-            previousSubFieldName = subField.getCode();
-        }
-        if (parenthesesSubFieldNames.contains(previousSubFieldName)) {
-            sb.append(")");
         }
     }
 
-    private static void addAdditionalFields(String fieldName, MarcRecord marcRecord, List<DataField> authFields, DataField authAuthorField, String fieldReference) {
-        final boolean universeFields = "945".equals(fieldName); // I don't like this, but for the moment only universe/series put things in 945
-        for (DataField authDataField : authFields) {
-            final DataField additionalField = new DataField(fieldName, "00");
-            String subfieldwValue = null;
-            subfieldwValue = doGeneral(universeFields, additionalField, authDataField, subfieldwValue);
-
-            if (!universeFields) {
-                handleLookContent(subfieldwValue, additionalField, authDataField);
-            }
-
-            final StringBuilder sb = new StringBuilder();
-
-            /*
-             * Generelt om ekspansion af felt 410 til 910:
-             * For ekspansion af felt 410 i A-posten (som henvisning til 610, 710 og 780) gælder:
-             * Indhold fra felt 110 - alle delfelterne undtagen eijk - skal skrives i B-postens felt 910 *w i den rækkefølge de optræder i A-posten. Efter hvert delfelt skal skrives et punktum.
-             * Indhold fra delfelterne e, i, j og k skal skrives i en blød parentes med : mellem. Der skal være blanktegn på begge sider af semikolon. Se eksempler.
-             * Kommer et delfelt c efter et af delfelterne e, i, j eller k skal der være et punktum efter den bløde parentes afsluttes. Se eksempel.
-             */
-            if (!universeFields) {
-                if ("110".equals(authAuthorField.getTag())) {
-                    handleNonUniverse110(authAuthorField, sb);
-                } else {
-                    handleField100(authAuthorField, sb);
-                }
-                additionalField.getSubFields().add(new SubField('w', sb.toString()));
-
+    private static void addAdditionalFields(SortedFieldBuilder expandedFields, List<DataField> fragmentFields, String fieldReference, boolean shareFields) {
+        for (DataField fragmentField : fragmentFields) {
+            // The fragment is built once per authority record, see AuthorityFragment
+            final DataField additionalField = new DataField(fragmentField.getTag(), "00");
+            for (SubField subField : fragmentField.getSubFields()) {
+                additionalField.getSubFields().add(copy(subField, shareFields));
             }
             if (!fieldReference.isEmpty()) {
                 additionalField.getSubFields().add(new SubField('z', fieldReference));
             }
-            marcRecord.getFields().add(additionalField);
+            expandedFields.add(additionalField);
         }
     }
 
-    private static void sortFields(MarcRecord marcRecord) {
-        // First sort by field name then sort by subfield å
-        marcRecord.getFields().sort((m1, m2) -> {
-            if (m1.getTag().equals(m2.getTag())) {
-                return getAaIntegerValue((DataField) m1) - getAaIntegerValue((DataField) m2);
-            }
+    /**
+     * Fields and subfields are only copied when the source record belongs to the caller. Fields which are changed
+     * by the expansion are always copied.
+     */
+    private static DataField copy(DataField dataField, boolean shareFields) {
+        return shareFields ? dataField : new DataField(dataField);
+    }
 
-            return m1.getTag().compareTo(m2.getTag());
-        });
+    private static SubField copy(SubField subField, boolean shareFields) {
+        return shareFields ? subField : new SubField(subField);
     }
 
-    private static int getAaIntegerValue(DataField dataField) {
-        if (dataField.hasSubField(hasSubFieldCode('å'))) {
-            try {
-                return Integer.parseInt(dataField.getSubField(hasSubFieldCode('å')).orElseThrow().getData());
-            } catch (NumberFormatException e) {
-                // The subfield has a value that can't be converted to an integer, so we just put the field at top
-                return 0;
-            }
-        } else {
-            return 0;
-        }
+    /**
+     * Checks the content for *5 and *6 without decoding it. Most records have no authority links, and they are
+     * returned as they are without being decoded and encoded. Content without a record is decoded as usual, so
+     * the error is reported the same way.
+     */
+    private static boolean hasAutFields(byte[] content) {
+        final ByteBuffer buffer = ByteBuffer.wrap(content);
+        return MarcXchangeScanner.findStartTag(buffer, 0, content.length, MarcXchangeScanner.RECORD) < 0
+                || MarcXchangeScanner.hasSubFieldCode(buffer, 0, content.length, "56");
     }
 
     private static boolean hasAutFields(MarcRecord marcRecord) {
@@ -0,0 +1,68 @@
+package dk.dbc.common.records;
+
+/**
+ * Hooks for measuring authority expansion in {@link ExpandCommonMarcRecord}.
+ * <p>
+ * All methods do nothing by default, so an implementation only has to override the ones it is interested in.
+ * Times are in nanoseconds. Use {@link NamedExpansionMetrics} to forward the measurements to a metrics library
+ * such as Micrometer.
+ * </p>
+ */
+public interface ExpansionMetrics {
+    ExpansionMetrics NOOP = new ExpansionMetrics() {
+    };
+
+    /**
+     * Time spent decoding the common record
+     */
+    default void decodeTime(long nanos) {
+    }
+
+    /**
+     * Time spent decoding a single authority record
+     */
+    default void authorityDecodeTime(long nanos) {
+    }
+
+    /**
+     * Time spent waiting for an {@link AuthorityResolver}
+     */
+    default void resolveTime(long nanos) {
+    }
+
+    /**
+     * Time spent expanding a record, including sorting the fields
+     */
+    default void expandTime(long nanos) {
+    }
+
+    /**
+     * Time spent putting the fields of an expanded record in order
+     */
+    default void sortTime(long nanos) {
+    }
+
+    /**
+     * Time spent encoding the expanded record
+     */
+    default void encodeTime(long nanos) {
+    }
+
+    /**
+     * Number of authority links (fields with *5 and *6) in an expanded record
+     */
+    default void authorityLinks(int count) {
+    }
+
+    /**
+     * An authority record referenced by the record was missing, so the expansion failed or an e01 field was added
+     */
+    default void missingAuthority() {
+    }
+
+    /**
+     * An e01 field was added because an authority record didn't match the type of the referencing field
+     */
+    default void authorityTypeMismatch() {
+    }
+}
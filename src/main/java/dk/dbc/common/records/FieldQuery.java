@@ -0,0 +1,173 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled query for subfield values of a record.
+ * <p>
+ * The syntax is a tag, optionally followed by the subfield codes separated by '|' (each optionally prefixed
+ * with '*'), optionally followed by either '~' and a regular expression or '=' and a value. Examples:
+ * </p>
+ * <pre>
+ * 001a                   001 *a
+ * 032 *a|*x ~ ^DBF\d{6}   032 *a or *x values containing a match of the expression
+ * 004 *r = d             004 *r values equal to "d"
+ * 652                    all values in 652
+ * </pre>
+ * <p>
+ * Use {@link FieldQuerySet} to evaluate many queries on a record in a single pass.
+ * </p>
+ */
+public class FieldQuery {
+    private final String query;
+    private final String tag;
+    private final String codes;
+    private final Pattern pattern;
+    private final String value;
+
+    private FieldQuery(String query, String tag, String codes, Pattern pattern, String value) {
+        this.query = query;
+        this.tag = tag;
+        this.codes = codes;
+        this.pattern = pattern;
+        this.value = value;
+    }
+
+    /**
+     * Compiles a query
+     *
+     * @param query The query
+     * @return The compiled query
+     * @throws IllegalArgumentException If the query isn't valid
+     */
+    public static FieldQuery compile(String query) {
+        final String trimmed = query.trim();
+        if (trimmed.length() < 3) {
+            throw new IllegalArgumentException("Missing tag in query '" + query + "'");
+        }
+        final String tag = trimmed.substring(0, 3);
+        int i = skipWhitespace(trimmed, 3);
+
+        final StringBuilder codes = new StringBuilder();
+        while (i < trimmed.length() && trimmed.charAt(i) != '~' && trimmed.charAt(i) != '=') {
+            if (trimmed.charAt(i) == '*') {
+                i++;
+            }
+            if (i >= trimmed.length()) {
+                throw new IllegalArgumentException("Missing subfield code in query '" + query + "'");
+            }
+            codes.append(trimmed.charAt(i++));
+            i = skipWhitespace(trimmed, i);
+            if (i < trimmed.length() && trimmed.charAt(i) == '|') {
+                i = skipWhitespace(trimmed, i + 1);
+            } else if (i < trimmed.length() && trimmed.charAt(i) != '~' && trimmed.charAt(i) != '=') {
+                throw new IllegalArgumentException("Unexpected '" + trimmed.charAt(i) + "' in query '" + query + "'");
+            }
+        }
+
+        Pattern pattern = null;
+        String value = null;
+        if (i < trimmed.length()) {
+            final String operand = trimmed.substring(i + 1).trim();
+            if (trimmed.charAt(i) == '~') {
+                try {
+                    pattern = Pattern.compile(operand);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Invalid expression in query '" + query + "'", e);
+                }
+            } else {
+                value = operand;
+            }
+        }
+
+        return new FieldQuery(query, tag, codes.length() == 0 ? null : codes.toString(), pattern, value);
+    }
+
+    private static int skipWhitespace(String value, int i) {
+        while (i < value.length() && Character.isWhitespace(value.charAt(i))) {
+            i++;
+        }
+
+        return i;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    boolean acceptsCode(char code) {
+        return codes == null || codes.indexOf(code) >= 0;
+    }
+
+    boolean acceptsValue(String data) {
+        if (pattern != null) {
+            return data != null && pattern.matcher(data).find();
+        }
+
+        return value == null || value.equals(data);
+    }
+
+    /**
+     * @param marcRecord The record
+     * @return All subfield values matching the query, in record order
+     */
+    public List<String> getValues(MarcRecord marcRecord) {
+        final List<String> result = new ArrayList<>();
+        for (Field field : marcRecord.getFields()) {
+            if (field instanceof DataField && tag.equals(field.getTag())) {
+                for (SubField subField : ((DataField) field).getSubFields()) {
+                    if (acceptsCode(subField.getCode()) && acceptsValue(subField.getData())) {
+                        result.add(subField.getData());
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param marcRecord The record
+     * @return <code>true</code> if the record has a subfield value matching the query, otherwise <code>false</code>
+     */
+    public boolean matches(MarcRecord marcRecord) {
+        for (Field field : marcRecord.getFields()) {
+            if (field instanceof DataField && tag.equals(field.getTag()) && matches((DataField) field)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public List<String> getValues(FrozenMarcRecord frozenMarcRecord) {
+        return getValues(frozenMarcRecord.view());
+    }
+
+    public boolean matches(FrozenMarcRecord frozenMarcRecord) {
+        return matches(frozenMarcRecord.view());
+    }
+
+    boolean matches(DataField dataField) {
+        for (SubField subField : dataField.getSubFields()) {
+            if (acceptsCode(subField.getCode()) && acceptsValue(subField.getData())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return query;
+    }
+}
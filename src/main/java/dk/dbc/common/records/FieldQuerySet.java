@@ -0,0 +1,148 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of compiled queries which are evaluated together in a single pass over the fields of a record.
+ * <p>
+ * The queries are grouped by tag when the set is created, so each field is only checked against the queries for
+ * its tag. Create the set once and reuse it for all records.
+ * </p>
+ */
+public class FieldQuerySet {
+    private final FieldQuery[] queries;
+    private final Map<String, int[]> queriesByTag = new HashMap<>();
+
+    private FieldQuerySet(List<FieldQuery> queries) {
+        this.queries = queries.toArray(new FieldQuery[0]);
+        final Map<String, List<Integer>> indexes = new HashMap<>();
+        for (int i = 0; i < this.queries.length; i++) {
+            indexes.computeIfAbsent(this.queries[i].getTag(), tag -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<String, List<Integer>> entry : indexes.entrySet()) {
+            queriesByTag.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    public static FieldQuerySet of(List<FieldQuery> queries) {
+        return new FieldQuerySet(queries);
+    }
+
+    public static FieldQuerySet of(FieldQuery... queries) {
+        return new FieldQuerySet(Arrays.asList(queries));
+    }
+
+    /**
+     * @param queries The queries in the syntax of {@link FieldQuery}
+     * @return The compiled set
+     * @throws IllegalArgumentException If one of the queries isn't valid
+     */
+    public static FieldQuerySet compile(String... queries) {
+        final List<FieldQuery> compiled = new ArrayList<>(queries.length);
+        for (String query : queries) {
+            compiled.add(FieldQuery.compile(query));
+        }
+
+        return new FieldQuerySet(compiled);
+    }
+
+    public int size() {
+        return queries.length;
+    }
+
+    public FieldQuery get(int index) {
+        return queries[index];
+    }
+
+    /**
+     * @return The tags used by the queries
+     */
+    public Iterable<String> getTags() {
+        return queriesByTag.keySet();
+    }
+
+    int[] getQueryIndexes(String tag) {
+        return queriesByTag.get(tag);
+    }
+
+    /**
+     * Evaluates all queries on the record
+     *
+     * @param marcRecord The record
+     * @return The values found by each query
+     */
+    public Result evaluate(MarcRecord marcRecord) {
+        final Result result = new Result(queries.length);
+        for (Field field : marcRecord.getFields()) {
+            if (!(field instanceof DataField)) {
+                continue;
+            }
+            final int[] indexes = queriesByTag.get(field.getTag());
+            if (indexes == null) {
+                continue;
+            }
+            for (SubField subField : ((DataField) field).getSubFields()) {
+                for (int index : indexes) {
+                    final FieldQuery query = queries[index];
+                    if (query.acceptsCode(subField.getCode()) && query.acceptsValue(subField.getData())) {
+                        result.add(index, subField.getData());
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public Result evaluate(FrozenMarcRecord frozenMarcRecord) {
+        return evaluate(frozenMarcRecord.view());
+    }
+
+    /**
+     * The values found by the queries of a set, addressed by the position of the query in the set
+     */
+    public static class Result {
+        private final List<String>[] values;
+
+        @SuppressWarnings("unchecked")
+        private Result(int size) {
+            this.values = new List[size];
+        }
+
+        private void add(int index, String value) {
+            if (values[index] == null) {
+                values[index] = new ArrayList<>();
+            }
+            values[index].add(value);
+        }
+
+        /**
+         * @return The values found by the query in record order
+         */
+        public List<String> getValues(int index) {
+            return values[index] == null ? Collections.emptyList() : Collections.unmodifiableList(values[index]);
+        }
+
+        /**
+         * @return The first value found by the query or <code>null</code> if none was found
+         */
+        public String getValue(int index) {
+            return values[index] == null ? null : values[index].get(0);
+        }
+
+        public boolean matches(int index) {
+            return values[index] != null;
+        }
+    }
+
+}
@@ -39,7 +39,7 @@ public class FieldRules {
             entry("654", new HashSet<>(Arrays.asList("008", "009", "038", "039", "100", "110", "239", "245", "652", "654")))
     );
 
-    private final Pattern validRegex;
+    private final TagFilter validTags;
     private final Set<String> invalid;
     private final Set<String> immutable;
     private final Set<String> remove;
@@ -53,7 +53,7 @@ public class FieldRules {
         this.immutable = IMMUTABLE_DEFAULT;
         this.remove = new HashSet<>();
         this.overwriteCollections = OVERWRITE_DEFAULT;
-        this.validRegex = Pattern.compile(VALID_REGEX_DANMARC2, Pattern.MULTILINE);
+        this.validTags = validTags(VALID_REGEX_DANMARC2);
     }
 
     /**
@@ -68,7 +68,16 @@ public class FieldRules {
         this.immutable = immutable;
         this.remove = new HashSet<>();
         this.overwriteCollections = overwrite;
-        this.validRegex = Pattern.compile(validRegex, Pattern.MULTILINE);
+        this.validTags = validTags(validRegex);
+    }
+
+    /*
+     * The regex is evaluated once for each tag in the registry instead of for each field
+     */
+    private static TagFilter validTags(String validRegex) {
+        final Pattern pattern = Pattern.compile(validRegex, Pattern.MULTILINE);
+
+        return TagFilter.of(tag -> pattern.matcher(tag).matches());
     }
 
     /**
@@ -82,8 +91,8 @@ public class FieldRules {
      */
     public class RuleSet {
 
-        private final Set<String> immutable = new HashSet<>();
-        private final Set<String> remove = new HashSet<>();
+        private final TagSet immutable = new TagSet();
+        private final TagSet remove = new TagSet();
 
         private RuleSet(Set<String> immutable, Set<String> remove) {
             this.immutable.addAll(immutable);
@@ -110,7 +119,7 @@ public class FieldRules {
          * @return boolean
          */
         public boolean invalidField(String field, boolean includeAllFields) {
-            return !includeAllFields && !validRegex.matcher(field).matches() || invalid.contains(field);
+            return !includeAllFields && !validTags.test(field) || invalid.contains(field);
         }
 
         /**
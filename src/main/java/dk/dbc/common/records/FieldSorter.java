@@ -0,0 +1,90 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.SubField;
+
+/**
+ * Sort keys for ordering fields by tag and subfield *å, as used for expanded records.
+ * <p>
+ * *å is parsed to an int once per field (0 if missing or not a number) without throwing, and
+ * {@link SortedFieldBuilder} orders the fields of a tag on the key.
+ * </p>
+ */
+final class FieldSorter {
+    private static final long INVALID = Long.MIN_VALUE;
+
+    private FieldSorter() {
+
+    }
+
+    /**
+     * @param field The field
+     * @return The value of the first *å, or <code>null</code> if the field has no *å
+     */
+    static String aaData(Field field) {
+        if (field instanceof DataField) {
+            for (SubField subField : ((DataField) field).getSubFields()) {
+                if (subField.getCode() == 'å') {
+                    return subField.getData();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param field The field
+     * @return The numeric value of the first *å, or 0 if the field has no *å or the value isn't a number
+     */
+    static int aaValue(Field field) {
+        return parseIntOrZero(aaData(field));
+    }
+
+    /**
+     * Parses a value the same way as {@link Integer#parseInt(String)}, but returns 0 instead of throwing
+     */
+    static int parseIntOrZero(String value) {
+        final long result = parse(value);
+        return result == INVALID ? 0 : (int) result;
+    }
+
+    /**
+     * @return <code>true</code> if {@link Integer#parseInt(String)} accepts the value, otherwise <code>false</code>
+     */
+    static boolean isInt(String value) {
+        return parse(value) != INVALID;
+    }
+
+    private static long parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return INVALID;
+        }
+        int i = 0;
+        boolean negative = false;
+        if (value.charAt(0) == '-' || value.charAt(0) == '+') {
+            negative = value.charAt(0) == '-';
+            i++;
+            if (value.length() == 1) {
+                return INVALID;
+            }
+        }
+        long result = 0;
+        for (; i < value.length(); i++) {
+            final int digit = Character.digit(value.charAt(i), 10);
+            if (digit < 0) {
+                return INVALID;
+            }
+            result = result * 10 + digit;
+            if (result > (long) Integer.MAX_VALUE + 1) {
+                return INVALID;
+            }
+        }
+        if (negative) {
+            return -result;
+        }
+
+        return result > Integer.MAX_VALUE ? INVALID : result;
+    }
+}
@@ -0,0 +1,185 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.ControlField;
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.Leader;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only snapshot of a record, which can be shared between threads without copying, e.g. in a record cache.
+ * <p>
+ * The snapshot has its own copy of the fields, so later changes to the source record don't affect it, and it only
+ * hands out values, never its fields. Read-only operations of the library accept the snapshot directly, e.g.
+ * {@link MarcRecordReader#MarcRecordReader(FrozenMarcRecord)}, {@link CatalogExtractionCode#isPublished(FrozenMarcRecord)},
+ * {@link FieldQuery#getValues(FrozenMarcRecord)} and {@link RecordContentTransformer#encodeRecord(FrozenMarcRecord)}.
+ * They read the fields of the snapshot without copying them, and a reader returns copies of the fields it is asked
+ * for.
+ * </p>
+ * <p>
+ * {@link #thaw()} gives a changeable record which shares the fields with the snapshot and copies a field when it is
+ * edited. Freezing it again with {@link ThawedMarcRecord#freeze()} shares the unchanged fields with this snapshot.
+ * </p>
+ */
+public final class FrozenMarcRecord {
+    private final MarcRecord marcRecord;
+
+    private FrozenMarcRecord(MarcRecord marcRecord) {
+        this.marcRecord = marcRecord;
+    }
+
+    /**
+     * @param marcRecord The record
+     * @return Snapshot of the record
+     */
+    public static FrozenMarcRecord freeze(MarcRecord marcRecord) {
+        final List<Field> fields = new ArrayList<>(marcRecord.getFields().size());
+        for (Field field : marcRecord.getFields()) {
+            fields.add(copy(field));
+        }
+
+        return of(marcRecord.getLeader() == null ? null : marcRecord.getLeader().getData(),
+                marcRecord.getType(), marcRecord.getFormat(), fields);
+    }
+
+    /**
+     * @param fields Fields which are not used anywhere else, or which are shared with other snapshots
+     */
+    static FrozenMarcRecord of(String leaderData, String type, String format, List<Field> fields) {
+        return new FrozenMarcRecord(toMarcRecord(leaderData, type, format, fields));
+    }
+
+    static MarcRecord toMarcRecord(String leaderData, String type, String format, List<Field> fields) {
+        final MarcRecord result = new MarcRecord();
+        if (leaderData != null) {
+            result.setLeader(new Leader().setData(leaderData));
+        }
+        result.setType(type);
+        result.setFormat(format);
+        result.getFields().addAll(fields);
+
+        return result;
+    }
+
+    static Field copy(Field field) {
+        if (field instanceof DataField) {
+            return new DataField((DataField) field);
+        } else if (field instanceof ControlField) {
+            final ControlField controlField = (ControlField) field;
+            return new ControlField().setTag(controlField.getTag()).setData(controlField.getData());
+        }
+
+        throw new IllegalArgumentException("Unsupported field type " + field.getClass().getName());
+    }
+
+    /**
+     * @return A changeable record, which copies the fields of the snapshot when they are edited
+     */
+    public ThawedMarcRecord thaw() {
+        return new ThawedMarcRecord(getLeaderData(), getType(), getFormat(), marcRecord.getFields());
+    }
+
+    /**
+     * The record of the snapshot, only for read-only operations of the library which don't hand out its fields
+     */
+    MarcRecord view() {
+        return marcRecord;
+    }
+
+    public String getLeaderData() {
+        return marcRecord.getLeader() == null ? null : marcRecord.getLeader().getData();
+    }
+
+    public String getType() {
+        return marcRecord.getType();
+    }
+
+    public String getFormat() {
+        return marcRecord.getFormat();
+    }
+
+    public int size() {
+        return marcRecord.getFields().size();
+    }
+
+    public boolean hasField(String tag) {
+        return marcRecord.hasField(MarcRecord.hasTag(tag));
+    }
+
+    /**
+     * Returns the first occurrence of the value of a field and subfield, in the same way as
+     * {@link MarcRecordReader#getValue(String, char)}
+     *
+     * @param tag  The field tag
+     * @param code The subfield code
+     * @return The value of the subfield if found, <code>null</code> otherwise.
+     */
+    public String getValue(String tag, char code) {
+        return getValue(marcRecord.getFields(), tag, code);
+    }
+
+    /**
+     * @param tag  The field tag
+     * @param code The subfield code
+     * @return All values of the subfield in the fields with the tag, in record order
+     */
+    public List<String> getValues(String tag, char code) {
+        return getValues(marcRecord.getFields(), tag, code);
+    }
+
+    static String getValue(List<Field> fields, String tag, char code) {
+        for (Field field : fields) {
+            if (field instanceof DataField && tag.equals(field.getTag())) {
+                for (SubField subField : ((DataField) field).getSubFields()) {
+                    if (code == subField.getCode()) {
+                        return subField.getData();
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    static List<String> getValues(List<Field> fields, String tag, char code) {
+        final List<String> result = new ArrayList<>();
+        for (Field field : fields) {
+            if (field instanceof DataField && tag.equals(field.getTag())) {
+                for (SubField subField : ((DataField) field).getSubFields()) {
+                    if (code == subField.getCode()) {
+                        result.add(subField.getData());
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        return marcRecord.equals(((FrozenMarcRecord) o).marcRecord);
+    }
+
+    @Override
+    public int hashCode() {
+        return marcRecord.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return marcRecord.toString();
+    }
+
+}
@@ -0,0 +1,79 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.MarcRecord;
+
+/**
+ * Measures latency, record size and errors of the operations of the library.
+ * <p>
+ * Nothing is measured until a recorder is set with {@link #setRecorder(InstrumentationRecorder)}, e.g. an
+ * {@link InstrumentationRegistry}. While disabled the cost of a measurement is a single volatile read.
+ * </p>
+ * <p>
+ * Usage:
+ * </p>
+ * <pre>
+ * final long start = Instrumentation.start();
+ * ...
+ * Instrumentation.stop(Instrumentation.MERGE, start, marcRecord, 0);
+ * </pre>
+ */
+public final class Instrumentation {
+    public static final String DECODE = "record.decode";
+    public static final String ENCODE = "record.encode";
+    public static final String MERGE = "record.merge";
+    public static final String UPDATE_OWNERSHIP = "record.ownership";
+    public static final String UNDER_PRODUCTION = "record.catalogcode.underproduction";
+    public static final String PUBLISHED = "record.catalogcode.published";
+
+    private static volatile InstrumentationRecorder recorder = null;
+
+    private Instrumentation() {
+
+    }
+
+    /**
+     * @param instrumentationRecorder The recorder receiving the measurements or <code>null</code> to disable
+     *                                instrumentation
+     */
+    public static void setRecorder(InstrumentationRecorder instrumentationRecorder) {
+        recorder = instrumentationRecorder;
+    }
+
+    public static boolean isEnabled() {
+        return recorder != null;
+    }
+
+    /**
+     * @return The start time of an operation, or 0 if instrumentation is disabled
+     */
+    public static long start() {
+        return recorder == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records a completed operation
+     *
+     * @param operation  Name of the operation
+     * @param start      The value returned by {@link #start()}
+     * @param marcRecord The record handled, used for the field count. May be <code>null</code>.
+     * @param byteCount  Size of the record content in bytes, 0 if unknown
+     */
+    public static void stop(String operation, long start, MarcRecord marcRecord, int byteCount) {
+        final InstrumentationRecorder current = recorder;
+        if (current != null && start != 0) {
+            current.record(operation, System.nanoTime() - start, marcRecord == null ? 0 : marcRecord.getFields().size(), byteCount);
+        }
+    }
+
+    /**
+     * Records a failed operation
+     *
+     * @param operation Name of the operation
+     */
+    public static void error(String operation) {
+        final InstrumentationRecorder current = recorder;
+        if (current != null) {
+            current.error(operation);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package dk.dbc.common.records;
+
+/**
+ * Receives the measurements made through {@link Instrumentation}
+ */
+public interface InstrumentationRecorder {
+
+    /**
+     * Called when an operation has completed
+     *
+     * @param operation  Name of the operation
+     * @param nanos      Time spent in nanoseconds
+     * @param fieldCount Number of fields in the record handled, 0 if unknown
+     * @param byteCount  Size of the record content in bytes, 0 if unknown
+     */
+    void record(String operation, long nanos, int fieldCount, int byteCount);
+
+    /**
+     * Called when an operation has failed
+     *
+     * @param operation Name of the operation
+     */
+    void error(String operation);
+}
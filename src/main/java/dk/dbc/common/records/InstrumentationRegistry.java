@@ -0,0 +1,169 @@
+package dk.dbc.common.records;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory recorder keeping a latency histogram, record sizes and error counts per operation.
+ * <p>
+ * The statistics can be read directly, as a text report with {@link #toText()} or through JMX after
+ * {@link #registerMBeans()} has been called.
+ * </p>
+ */
+public class InstrumentationRegistry implements InstrumentationRecorder {
+    public static final String JMX_DOMAIN = "dk.dbc.common.records";
+
+    private final Map<String, OperationStatistics> operations = new ConcurrentHashMap<>();
+    private volatile MBeanServer mBeanServer;
+
+    @Override
+    public void record(String operation, long nanos, int fieldCount, int byteCount) {
+        final OperationStatistics statistics = getOrCreate(operation);
+        statistics.histogram.record(nanos);
+        statistics.fieldCount.add(fieldCount);
+        if (byteCount > 0) {
+            statistics.byteCount.add(byteCount);
+            statistics.byteCountSamples.increment();
+        }
+    }
+
+    @Override
+    public void error(String operation) {
+        getOrCreate(operation).errorCount.increment();
+    }
+
+    private OperationStatistics getOrCreate(String operation) {
+        final OperationStatistics existing = operations.get(operation);
+        if (existing != null) {
+            return existing;
+        }
+
+        return operations.computeIfAbsent(operation, name -> {
+            final OperationStatistics statistics = new OperationStatistics();
+            if (mBeanServer != null) {
+                register(name, statistics);
+            }
+            return statistics;
+        });
+    }
+
+    /**
+     * @param operation Name of the operation
+     * @return The statistics of the operation or <code>null</code> if nothing has been recorded for it
+     */
+    public OperationStatisticsMXBean getStatistics(String operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * Registers the statistics of each operation, including operations recorded later, in the platform MBean
+     * server as <code>dk.dbc.common.records:type=Instrumentation,name=&lt;operation&gt;</code>
+     */
+    public void registerMBeans() {
+        mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (Map.Entry<String, OperationStatistics> entry : operations.entrySet()) {
+            register(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void register(String operation, OperationStatistics statistics) {
+        try {
+            final ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Instrumentation,name=" + ObjectName.quote(operation));
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(statistics, objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register statistics for " + operation, e);
+        }
+    }
+
+    /**
+     * @return A line per operation with count, errors, latency percentiles in microseconds and mean sizes
+     */
+    public String toText() {
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, OperationStatistics> entry : new TreeMap<>(operations).entrySet()) {
+            final OperationStatistics statistics = entry.getValue();
+            sb.append(String.format("%s count=%d errors=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus fields=%.1f bytes=%.1f%n",
+                    entry.getKey(),
+                    statistics.getCount(),
+                    statistics.getErrorCount(),
+                    statistics.getMeanNanos() / 1000,
+                    statistics.getP50Nanos() / 1000.0,
+                    statistics.getP90Nanos() / 1000.0,
+                    statistics.getP99Nanos() / 1000.0,
+                    statistics.getP999Nanos() / 1000.0,
+                    statistics.getMaxNanos() / 1000.0,
+                    statistics.getMeanFieldCount(),
+                    statistics.getMeanByteCount()));
+        }
+
+        return sb.toString();
+    }
+
+    private static class OperationStatistics implements OperationStatisticsMXBean {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder errorCount = new LongAdder();
+        private final LongAdder fieldCount = new LongAdder();
+        private final LongAdder byteCount = new LongAdder();
+        private final LongAdder byteCountSamples = new LongAdder();
+
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public long getErrorCount() {
+            return errorCount.sum();
+        }
+
+        @Override
+        public double getMeanNanos() {
+            return histogram.getMean();
+        }
+
+        @Override
+        public long getMaxNanos() {
+            return histogram.getMax();
+        }
+
+        @Override
+        public long getP50Nanos() {
+            return histogram.getValueAtPercentile(50);
+        }
+
+        @Override
+        public long getP90Nanos() {
+            return histogram.getValueAtPercentile(90);
+        }
+
+        @Override
+        public long getP99Nanos() {
+            return histogram.getValueAtPercentile(99);
+        }
+
+        @Override
+        public long getP999Nanos() {
+            return histogram.getValueAtPercentile(99.9);
+        }
+
+        @Override
+        public double getMeanFieldCount() {
+            final long count = histogram.getCount();
+            return count == 0 ? 0 : (double) fieldCount.sum() / count;
+        }
+
+        @Override
+        public double getMeanByteCount() {
+            final long count = byteCountSamples.sum();
+            return count == 0 ? 0 : (double) byteCount.sum() / count;
+        }
+    }
+}
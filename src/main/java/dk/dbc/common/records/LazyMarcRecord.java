@@ -0,0 +1,287 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.Leader;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static dk.dbc.common.records.MarcXchangeScanner.CONTROLFIELD;
+import static dk.dbc.common.records.MarcXchangeScanner.DATAFIELD;
+import static dk.dbc.common.records.MarcXchangeScanner.FORMAT;
+import static dk.dbc.common.records.MarcXchangeScanner.LEADER;
+import static dk.dbc.common.records.MarcXchangeScanner.RECORD;
+import static dk.dbc.common.records.MarcXchangeScanner.TAG;
+import static dk.dbc.common.records.MarcXchangeScanner.TYPE;
+
+/**
+ * Lazy view of a record in MarcXchange content.
+ * <p>
+ * Nothing is decoded until the view is first used. At that point the positions and tags of the fields are
+ * indexed, and a field is only decoded when it is accessed. Decoded fields are kept, so each field is decoded at
+ * most once.
+ * </p>
+ * <p>
+ * The view hands out the normal binding types. To use the rest of the library on a few fields of a large record,
+ * create a MarcRecord with just those fields, e.g.
+ * <code>new MarcRecordReader(lazyMarcRecord.toMarcRecord("001", "004")).getRecordId()</code> or
+ * <code>CatalogExtractionCode.isPublished(lazyMarcRecord.toMarcRecord("032"))</code>.
+ * </p>
+ * <p>
+ * The fields returned are shared between the view and the records created from it, so they should not be
+ * modified. The class is not thread safe.
+ * </p>
+ */
+public class LazyMarcRecord {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ByteBuffer content;
+    private boolean indexed = false;
+    private int leaderStart = -1;
+    private int leaderEnd;
+    private Leader leader;
+    private String type;
+    private String format;
+    private int size = 0;
+    private String[] tags = new String[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private boolean[] dataFields = new boolean[INITIAL_CAPACITY];
+    private Field[] fields = new Field[INITIAL_CAPACITY];
+
+    public LazyMarcRecord(byte[] content) {
+        this(ByteBuffer.wrap(content));
+    }
+
+    /**
+     * @param content Buffer with MarcXchange content. If the content is a collection the first record is used.
+     */
+    public LazyMarcRecord(ByteBuffer content) {
+        this.content = content.slice();
+    }
+
+    private void index() {
+        if (indexed) {
+            return;
+        }
+        size = 0;
+        leaderStart = -1;
+        final int limit = content.limit();
+        final int recordStart = MarcXchangeScanner.findStartTag(content, 0, limit, RECORD);
+        if (recordStart < 0) {
+            throw new IllegalArgumentException("The content doesn't contain a MarcXchange record");
+        }
+        final int recordTagEnd = MarcXchangeScanner.findTagEnd(content, recordStart, limit);
+        if (recordTagEnd < 0) {
+            throw new IllegalArgumentException("The record content is not terminated");
+        }
+        type = MarcXchangeScanner.getAttribute(content, recordStart, recordTagEnd, TYPE);
+        format = MarcXchangeScanner.getAttribute(content, recordStart, recordTagEnd, FORMAT);
+
+        if (content.get(recordTagEnd - 2) != '/') {
+            int elementStart = MarcXchangeScanner.findChildStartTag(content, recordTagEnd, limit, RECORD);
+            while (elementStart >= 0) {
+                final int next;
+                if (MarcXchangeScanner.isStartTag(content, elementStart, limit, DATAFIELD)) {
+                    next = addField(elementStart, MarcXchangeScanner.findElementEnd(content, elementStart, limit, DATAFIELD), true);
+                } else if (MarcXchangeScanner.isStartTag(content, elementStart, limit, CONTROLFIELD)) {
+                    next = addField(elementStart, MarcXchangeScanner.findElementEnd(content, elementStart, limit, CONTROLFIELD), false);
+                } else if (MarcXchangeScanner.isStartTag(content, elementStart, limit, LEADER)) {
+                    leaderStart = elementStart;
+                    leaderEnd = MarcXchangeScanner.findElementEnd(content, elementStart, limit, LEADER);
+                    next = leaderEnd;
+                } else {
+                    next = MarcXchangeScanner.findTagEnd(content, elementStart, limit);
+                }
+                if (next < 0) {
+                    throw new IllegalArgumentException("The record content is not terminated");
+                }
+                elementStart = MarcXchangeScanner.findChildStartTag(content, next, limit, RECORD);
+            }
+        }
+        indexed = true;
+    }
+
+    private int addField(int start, int end, boolean dataField) {
+        if (end < 0) {
+            return -1;
+        }
+        if (size == tags.length) {
+            final int capacity = size * 2;
+            tags = Arrays.copyOf(tags, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            dataFields = Arrays.copyOf(dataFields, capacity);
+            fields = Arrays.copyOf(fields, capacity);
+        }
+        final int tagEnd = MarcXchangeScanner.findTagEnd(content, start, end);
+        tags[size] = TagRegistry.canonical(MarcXchangeScanner.getAttribute(content, start, tagEnd, TAG));
+        starts[size] = start;
+        ends[size] = end;
+        dataFields[size] = dataField;
+        size++;
+
+        return end;
+    }
+
+    private Field getField(int index) {
+        if (fields[index] == null) {
+            if (dataFields[index]) {
+                fields[index] = MarcXchangeScanner.decodeDataField(content, starts[index], ends[index]);
+            } else {
+                fields[index] = MarcXchangeScanner.decodeControlField(content, starts[index], ends[index]);
+            }
+        }
+
+        return fields[index];
+    }
+
+    /**
+     * @return Number of fields in the record
+     */
+    public int size() {
+        index();
+        return size;
+    }
+
+    /**
+     * @return The tags of all fields in record order
+     */
+    public List<String> getTags() {
+        index();
+        return Collections.unmodifiableList(Arrays.asList(tags).subList(0, size));
+    }
+
+    public Leader getLeader() {
+        index();
+        if (leader == null && leaderStart >= 0) {
+            final int tagEnd = MarcXchangeScanner.findTagEnd(content, leaderStart, leaderEnd);
+            leader = new Leader().setData(MarcXchangeScanner.getText(content, tagEnd, leaderEnd));
+        }
+
+        return leader;
+    }
+
+    public boolean hasField(String tag) {
+        index();
+        for (int i = 0; i < size; i++) {
+            if (tag.equals(tags[i])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param tag The field tag
+     * @return The first data field with the tag or <code>null</code> if there is none
+     */
+    public DataField getField(String tag) {
+        index();
+        for (int i = 0; i < size; i++) {
+            if (dataFields[i] && tag.equals(tags[i])) {
+                return (DataField) getField(i);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param tag The field tag
+     * @return All data fields with the tag. Only these fields are decoded.
+     */
+    public List<DataField> getFields(String tag) {
+        index();
+        final List<DataField> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (dataFields[i] && tag.equals(tags[i])) {
+                result.add((DataField) getField(i));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the first occurrence of the value of a field and subfield, in the same way as
+     * {@link MarcRecordReader#getValue(String, char)}
+     *
+     * @param tag  The field tag
+     * @param code The subfield code
+     * @return The value of the subfield if found, <code>null</code> otherwise.
+     */
+    public String getValue(String tag, char code) {
+        for (DataField dataField : getFields(tag)) {
+            for (SubField subField : dataField.getSubFields()) {
+                if (code == subField.getCode()) {
+                    return subField.getData();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates a record with the fields with the given tags, in record order. Only these fields are decoded.
+     *
+     * @param tags The tags of the fields to include
+     * @return A record with the leader and the selected fields
+     */
+    public MarcRecord toMarcRecord(String... tags) {
+        return toMarcRecord(new HashSet<>(Arrays.asList(tags)));
+    }
+
+    /**
+     * Creates a record with the fields with the given tags, in record order. Only these fields are decoded.
+     *
+     * @param tags The tags of the fields to include
+     * @return A record with the leader and the selected fields
+     */
+    public MarcRecord toMarcRecord(Set<String> tags) {
+        index();
+        final MarcRecord marcRecord = createMarcRecord();
+        for (int i = 0; i < size; i++) {
+            if (tags.contains(this.tags[i])) {
+                marcRecord.getFields().add(getField(i));
+            }
+        }
+
+        return marcRecord;
+    }
+
+    /**
+     * @return A record with all fields decoded
+     */
+    public MarcRecord toMarcRecord() {
+        index();
+        final MarcRecord marcRecord = createMarcRecord();
+        for (int i = 0; i < size; i++) {
+            marcRecord.getFields().add(getField(i));
+        }
+
+        return marcRecord;
+    }
+
+    private MarcRecord createMarcRecord() {
+        final MarcRecord marcRecord = new MarcRecord();
+        if (getLeader() != null) {
+            marcRecord.setLeader(new Leader().setData(leader.getData()));
+        }
+        marcRecord.setType(type);
+        marcRecord.setFormat(format);
+
+        return marcRecord;
+    }
+
+}
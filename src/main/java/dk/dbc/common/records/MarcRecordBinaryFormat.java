@@ -0,0 +1,295 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.ControlField;
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.Leader;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import dk.dbc.marc.reader.MarcReaderException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a MarcRecord, intended for caching decoded records between services.
+ * <p>
+ * The format is:
+ * </p>
+ * <pre>
+ * record    = magic version leader type format count field*
+ * magic     = 'M' 'R'
+ * version   = byte (currently 1)
+ * field     = 'D' tag ind1 ind2 ind3 count subfield* | 'C' tag string
+ * tag       = short (000-999) | short(0xFFFF) string
+ * ind       = char (0 for missing)
+ * subfield  = char string
+ * string    = varint(length + 1) utf-8 bytes (length 0 for null)
+ * count     = varint
+ * </pre>
+ * <p>
+ * A record decoded from the binary form is equal to the record that was encoded, so encoding a record decoded
+ * from MarcXchange gives the same record as decoding the MarcXchange content again.
+ * </p>
+ */
+public class MarcRecordBinaryFormat {
+    public static final byte VERSION = 1;
+    private static final byte MAGIC_1 = 'M';
+    private static final byte MAGIC_2 = 'R';
+    private static final byte DATA_FIELD = 'D';
+    private static final byte CONTROL_FIELD = 'C';
+    private static final int NON_NUMERIC_TAG = 0xFFFF;
+    private MarcRecordBinaryFormat() {
+
+    }
+
+    /**
+     * Encodes the record in the binary format
+     *
+     * @param frozenMarcRecord The snapshot to encode
+     * @return The encoded record
+     */
+    public static byte[] encode(FrozenMarcRecord frozenMarcRecord) {
+        return encode(frozenMarcRecord.view());
+    }
+
+    /**
+     * Encodes the record in the binary format
+     *
+     * @param marcRecord The record to encode
+     * @return The encoded record
+     */
+    public static byte[] encode(MarcRecord marcRecord) {
+        final Output output = new Output();
+        output.writeByte(MAGIC_1);
+        output.writeByte(MAGIC_2);
+        output.writeByte(VERSION);
+        output.writeString(marcRecord.getLeader() == null ? null : marcRecord.getLeader().getData());
+        output.writeString(marcRecord.getType());
+        output.writeString(marcRecord.getFormat());
+
+        final List<Field> fields = marcRecord.getFields();
+        output.writeVarInt(fields.size());
+        for (Field field : fields) {
+            if (field instanceof DataField) {
+                final DataField dataField = (DataField) field;
+                output.writeByte(DATA_FIELD);
+                output.writeTag(dataField.getTag());
+                output.writeIndicator(dataField.getInd1());
+                output.writeIndicator(dataField.getInd2());
+                output.writeIndicator(dataField.getInd3());
+                final List<SubField> subFields = dataField.getSubFields();
+                output.writeVarInt(subFields.size());
+                for (SubField subField : subFields) {
+                    output.writeChar(subField.getCode());
+                    output.writeString(subField.getData());
+                }
+            } else if (field instanceof ControlField) {
+                final ControlField controlField = (ControlField) field;
+                output.writeByte(CONTROL_FIELD);
+                output.writeTag(controlField.getTag());
+                output.writeString(controlField.getData());
+            } else {
+                throw new IllegalArgumentException("Unsupported field type " + field.getClass().getName());
+            }
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Decodes a record in the binary format
+     *
+     * @param content The encoded record
+     * @return The decoded record
+     * @throws MarcReaderException If the content isn't a record in a supported version of the binary format
+     */
+    public static MarcRecord decode(byte[] content) throws MarcReaderException {
+        final Input input = new Input(content);
+        try {
+            if (input.readByte() != MAGIC_1 || input.readByte() != MAGIC_2) {
+                throw new MarcReaderException("Content is not a binary encoded record");
+            }
+            final byte version = input.readByte();
+            if (version != VERSION) {
+                throw new MarcReaderException("Unsupported binary record version " + version);
+            }
+
+            final MarcRecord marcRecord = new MarcRecord();
+            final String leader = input.readString();
+            if (leader != null) {
+                marcRecord.setLeader(new Leader().setData(leader));
+            }
+            marcRecord.setType(input.readString());
+            marcRecord.setFormat(input.readString());
+
+            final int fieldCount = input.readVarInt();
+            final List<Field> fields = marcRecord.getFields();
+            for (int i = 0; i < fieldCount; i++) {
+                final byte kind = input.readByte();
+                if (kind == DATA_FIELD) {
+                    final DataField dataField = new DataField();
+                    dataField.setTag(input.readTag());
+                    dataField.setInd1(input.readIndicator());
+                    dataField.setInd2(input.readIndicator());
+                    dataField.setInd3(input.readIndicator());
+                    final int subFieldCount = input.readVarInt();
+                    final List<SubField> subFields = dataField.getSubFields();
+                    for (int j = 0; j < subFieldCount; j++) {
+                        final char code = input.readChar();
+                        subFields.add(new SubField(code, input.readString()));
+                    }
+                    fields.add(dataField);
+                } else if (kind == CONTROL_FIELD) {
+                    final ControlField controlField = new ControlField();
+                    controlField.setTag(input.readTag());
+                    controlField.setData(input.readString());
+                    fields.add(controlField);
+                } else {
+                    throw new MarcReaderException("Unknown field type " + kind + " at offset " + (input.position - 1));
+                }
+            }
+            if (input.position != content.length) {
+                throw new MarcReaderException("Unexpected content after the record at offset " + input.position);
+            }
+
+            return marcRecord;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new MarcReaderException("Unexpected end of binary record content");
+        }
+    }
+
+    /**
+     * @param content The content to check
+     * @return <code>true</code> if the content starts with the binary record signature, otherwise <code>false</code>
+     */
+    public static boolean isBinaryRecord(byte[] content) {
+        return content != null && content.length > 2 && content[0] == MAGIC_1 && content[1] == MAGIC_2;
+    }
+
+    private static class Output {
+        private byte[] bytes = new byte[512];
+        private int position = 0;
+
+        private void ensureCapacity(int length) {
+            if (position + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + length));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[position++] = (byte) value;
+        }
+
+        private void writeChar(char value) {
+            ensureCapacity(2);
+            bytes[position++] = (byte) (value >>> 8);
+            bytes[position++] = (byte) value;
+        }
+
+        private void writeVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            final byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(data.length + 1);
+            ensureCapacity(data.length);
+            System.arraycopy(data, 0, bytes, position, data.length);
+            position += data.length;
+        }
+
+        private void writeTag(String tag) {
+            final int numericTag = TagRegistry.numericTag(tag);
+            if (numericTag >= 0) {
+                writeChar((char) numericTag);
+            } else {
+                writeChar((char) NON_NUMERIC_TAG);
+                writeString(tag);
+            }
+        }
+
+        private void writeIndicator(Character indicator) {
+            writeChar(indicator == null ? '\0' : indicator);
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, position);
+        }
+    }
+
+    private static class Input {
+        private final byte[] bytes;
+        private int position = 0;
+
+        private Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private byte readByte() {
+            return bytes[position++];
+        }
+
+        private char readChar() {
+            final int high = bytes[position++] & 0xFF;
+            final int low = bytes[position++] & 0xFF;
+            return (char) (high << 8 | low);
+        }
+
+        private int readVarInt() throws MarcReaderException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                final byte b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        break;
+                    }
+                    return value;
+                }
+            }
+            throw new MarcReaderException("Invalid length at offset " + position);
+        }
+
+        private String readString() throws MarcReaderException {
+            final int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > bytes.length - position) {
+                throw new MarcReaderException("Unexpected end of binary record content");
+            }
+            final String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private String readTag() throws MarcReaderException {
+            final char numericTag = readChar();
+            if (numericTag == NON_NUMERIC_TAG) {
+                return TagRegistry.canonical(readString());
+            }
+            if (numericTag >= TagRegistry.NUMERIC_TAG_COUNT) {
+                throw new MarcReaderException("Invalid tag " + (int) numericTag + " at offset " + (position - 2));
+            }
+            return TagRegistry.tag(numericTag);
+        }
+
+        private Character readIndicator() {
+            final char indicator = readChar();
+            return indicator == '\0' ? null : indicator;
+        }
+    }
+
+}
@@ -6,4 +6,8 @@ public class MarcRecordExpandException extends Exception {
         super(message);
     }
 
+    public MarcRecordExpandException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
 }
@@ -7,7 +7,10 @@ import dk.dbc.marc.binding.SubField;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -20,9 +23,22 @@ import static dk.dbc.marc.binding.MarcRecord.hasTag;
 public class MarcRecordReader {
     private static final List<String> AGENCIES_WITH_OTHER_RELATIONS = Arrays.asList("870974", "870975");
     private final MarcRecord marcRecord;
+    private final boolean copyFields;
 
     public MarcRecordReader(MarcRecord marcRecord) {
         this.marcRecord = marcRecord;
+        this.copyFields = false;
+    }
+
+    /**
+     * Reads from the fields of the snapshot without copying them. Fields returned by {@link #getField(String)} and
+     * {@link #getFieldAll(String)} are copies, so changing them doesn't affect the snapshot.
+     *
+     * @param frozenMarcRecord The snapshot
+     */
+    public MarcRecordReader(FrozenMarcRecord frozenMarcRecord) {
+        this.marcRecord = frozenMarcRecord.view();
+        this.copyFields = true;
     }
 
     /**
@@ -57,14 +73,23 @@ public class MarcRecordReader {
         final List<DataField> fields = marcRecord.getFields(DataField.class, hasTag(fieldName));
 
         if (fields != null && !fields.isEmpty()) {
-            result = fields.get(0);
+            result = copyFields ? new DataField(fields.get(0)) : fields.get(0);
         }
 
         return result;
     }
 
     public List<DataField> getFieldAll(String fieldName) {
-        return marcRecord.getFields(DataField.class, hasTag(fieldName));
+        final List<DataField> fields = marcRecord.getFields(DataField.class, hasTag(fieldName));
+        if (!copyFields) {
+            return fields;
+        }
+        final List<DataField> copies = new ArrayList<>(fields.size());
+        for (DataField field : fields) {
+            copies.add(new DataField(field));
+        }
+
+        return copies;
     }
 
 
@@ -177,6 +202,57 @@ public class MarcRecordReader {
      */
     public List<HashMap<Character, String>> getDecentralAliasIds() {
         final List<HashMap<Character, String>> result = new ArrayList<>();
+        forEachDecentralAlias((agencyId, aliasId) -> {
+            final HashMap<Character, String> bcValues = new HashMap<>();
+            bcValues.put('b', agencyId);
+            bcValues.put('c', aliasId);
+            result.add(bcValues);
+        });
+
+        return result;
+    }
+
+    /**
+     * Returns the central alias ids (002 *a) as ids of this agency
+     *
+     * @return The alias ids with the agency id of this record
+     */
+    public List<RecordId> getCentralAliases() {
+        final List<RecordId> result = new ArrayList<>();
+        final List<String> aliasIds = getCentralAliasIds();
+        if (!aliasIds.isEmpty()) {
+            final int agencyId = getAgencyIdAsInt();
+            for (String aliasId : aliasIds) {
+                result.add(new RecordId(aliasId, agencyId));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the decentral alias ids, i.e. the pairs of 002 *b (agency id) and *c (record id) returned by
+     * {@link #getDecentralAliasIds()}
+     * <p>
+     * Each pair is only returned once, and pairs where *b isn't a number are skipped.
+     * </p>
+     *
+     * @return The alias ids
+     */
+    public List<RecordId> getDecentralAliases() {
+        final Set<RecordId> result = new LinkedHashSet<>();
+        forEachDecentralAlias((agencyId, aliasId) -> {
+            try {
+                result.add(new RecordId(aliasId, Integer.parseInt(agencyId)));
+            } catch (NumberFormatException e) {
+                // Not an agency id, so it can't be the id of a record
+            }
+        });
+
+        return new ArrayList<>(result);
+    }
+
+    private void forEachDecentralAlias(BiConsumer<String, String> consumer) {
         for (DataField field : marcRecord.getFields(DataField.class, hasTag("002"))) {
             String bValue = null;
             String cValue = null;
@@ -191,15 +267,10 @@ public class MarcRecordReader {
                 }
 
                 if (bValue != null && cValue != null) {
-                    HashMap<Character, String> bcValues = new HashMap<>();
-                    bcValues.put('b', bValue);
-                    bcValues.put('c', cValue);
-
-                    result.add(bcValues);
+                    consumer.accept(bValue, cValue);
                 }
             }
         }
-        return result;
     }
 
     /**
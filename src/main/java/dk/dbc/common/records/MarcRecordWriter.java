@@ -5,12 +5,14 @@ import dk.dbc.marc.binding.Field;
 import dk.dbc.marc.binding.MarcRecord;
 import dk.dbc.marc.binding.SubField;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -18,9 +20,20 @@ import java.util.Optional;
  */
 public class MarcRecordWriter {
     private final MarcRecord marcRecord;
+    private final RecordTimestamps timestamps;
 
     public MarcRecordWriter(MarcRecord marcRecord) {
+        this(marcRecord, RecordTimestamps.systemDefault());
+    }
+
+    /**
+     * @param marcRecord The record to write to
+     * @param timestamps The source of the timestamps set by {@link #setCreationTimestamp()} and
+     *                   {@link #setChangedTimestamp()}
+     */
+    public MarcRecordWriter(MarcRecord marcRecord, RecordTimestamps timestamps) {
         this.marcRecord = marcRecord;
+        this.timestamps = timestamps;
     }
 
     public MarcRecord getMarcRecord() {
@@ -51,13 +64,20 @@ public class MarcRecordWriter {
      * @param rec The record to copy the fields from
      */
     public void copyFieldsFromRecord(List<String> fieldnames, MarcRecord rec) {
-        final List<DataField> marcFieldsToAdd = new ArrayList<>();
-        fieldnames.forEach(fieldName -> rec.getFields(DataField.class).forEach((DataField mf) -> {
-            if (mf.getTag().equals(fieldName)) {
-                marcFieldsToAdd.add(mf);
-            }
-        }));
-        marcRecord.getFields().addAll(marcFieldsToAdd);
+        // The source record is scanned once, and the fields are added in the order of the field names
+        final Map<String, List<DataField>> fieldsByTag = fieldsByTag(rec);
+        for (String fieldName : fieldnames) {
+            marcRecord.getFields().addAll(fieldsByTag.getOrDefault(fieldName, Collections.emptyList()));
+        }
+    }
+
+    private static Map<String, List<DataField>> fieldsByTag(MarcRecord rec) {
+        final Map<String, List<DataField>> fieldsByTag = new HashMap<>();
+        for (DataField dataField : rec.getFields(DataField.class)) {
+            fieldsByTag.computeIfAbsent(dataField.getTag(), tag -> new ArrayList<>()).add(dataField);
+        }
+
+        return fieldsByTag;
     }
 
     /***
@@ -98,9 +118,9 @@ public class MarcRecordWriter {
      * @param fieldnames the list to remove
      */
     public void removeFields(List<String> fieldnames) {
-        for (String fieldname : fieldnames) {
-            removeField(fieldname);
-        }
+        final TagSet tags = new TagSet();
+        tags.addAll(fieldnames);
+        marcRecord.getFields().removeIf(field -> tags.contains(field.getTag()));
     }
 
     public void addOrReplaceSubField(String tag, char code, String value) {
@@ -114,14 +134,30 @@ public class MarcRecordWriter {
         }
     }
 
+    /**
+     * Sorts the fields by tag, keeping the order of fields with the same tag.
+     * <p>
+     * When all tags are in the {@link TagRegistry}, e.g. three digit DanMARC tags, the fields are sorted with a
+     * stable counting sort by tag id instead of the comparator. The result is the same.
+     * </p>
+     */
     public void sort() {
-        sort(new SortFieldByTag());
+        if (!SortFieldByTag.sortByTagId(marcRecord.getFields())) {
+            sort(new SortFieldByTag());
+        }
     }
 
     public void sort(Comparator<Field> comparator) {
         this.marcRecord.getFields().sort(comparator);
     }
 
+    /**
+     * @return A batch collecting changes to the record, which are applied in a single pass
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
     //------------------------------------------------------------------------
     //              Record business values
     //------------------------------------------------------------------------
@@ -140,19 +176,217 @@ public class MarcRecordWriter {
      * Updates 001 *d field with current timestamp
      */
     public void setCreationTimestamp() {
-        final DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyyMMdd");
-        final LocalDateTime dateTime = LocalDateTime.now();
-
-        addOrReplaceSubField("001", 'd', dateTime.format(format));
+        addOrReplaceSubField("001", 'd', timestamps.creationTimestamp());
     }
 
     /**
      * Updates 001 *c field with current timestamp
      */
     public void setChangedTimestamp() {
-        final DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-        final LocalDateTime dateTime = LocalDateTime.now();
+        addOrReplaceSubField("001", 'c', timestamps.changedTimestamp());
+    }
+
+    /**
+     * Collects changes to the record and applies them with {@link #apply()} in a single pass over the fields.
+     * <p>
+     * The result is the same as calling the corresponding functions of the writer in the order the changes were
+     * added, but the record is scanned and compacted only once, and a source record is scanned once no matter how
+     * many fields are copied from it. Only data fields are changed. Fields are copied from a source record when the
+     * batch is applied.
+     * </p>
+     * <pre>
+     * writer.batch()
+     *         .removeFields(Arrays.asList("d08", "s10"))
+     *         .removeSubfield("001", 'f')
+     *         .addOrReplaceSubField("004", 'r', "c")
+     *         .copyFieldsFromRecord(Arrays.asList("996", "s12"), sourceRecord)
+     *         .apply();
+     * </pre>
+     */
+    public class Batch {
+        private final List<Change> changes = new ArrayList<>();
+        private final Map<String, List<Change>> changesByTag = new HashMap<>();
+
+        private Batch() {
+
+        }
+
+        public Batch addFieldSubfield(String fieldName, char subFieldName, String value) {
+            return add(new Change(ChangeType.ADD_FIELD, fieldName, subFieldName, value, null));
+        }
+
+        public Batch copyFieldFromRecord(String fieldname, MarcRecord rec) {
+            return add(new Change(ChangeType.COPY_FIELDS, fieldname, (char) 0, null, rec));
+        }
+
+        public Batch copyFieldsFromRecord(List<String> fieldnames, MarcRecord rec) {
+            for (String fieldname : fieldnames) {
+                copyFieldFromRecord(fieldname, rec);
+            }
+
+            return this;
+        }
+
+        public Batch removeSubfield(String fieldName, char subFieldName) {
+            return add(new Change(ChangeType.REMOVE_SUBFIELD, fieldName, subFieldName, null, null));
+        }
 
-        addOrReplaceSubField("001", 'c', dateTime.format(format));
+        public Batch removeField(String fieldName) {
+            return add(new Change(ChangeType.REMOVE_FIELD, fieldName, (char) 0, null, null));
+        }
+
+        public Batch removeFields(List<String> fieldnames) {
+            for (String fieldname : fieldnames) {
+                removeField(fieldname);
+            }
+
+            return this;
+        }
+
+        public Batch addOrReplaceSubField(String tag, char code, String value) {
+            return add(new Change(ChangeType.ADD_OR_REPLACE_SUBFIELD, tag, code, value, null));
+        }
+
+        public int size() {
+            return changes.size();
+        }
+
+        private Batch add(Change change) {
+            changes.add(change);
+            changesByTag.computeIfAbsent(change.tag, tag -> new ArrayList<>()).add(change);
+            return this;
+        }
+
+        /**
+         * Applies the changes to the record and empties the batch
+         */
+        public void apply() {
+            if (changes.isEmpty()) {
+                return;
+            }
+
+            // The fields of the record are run through the changes to their tag, and the remaining fields are
+            // moved down in place
+            final List<Field> fields = marcRecord.getFields();
+            int kept = 0;
+            for (int i = 0; i < fields.size(); i++) {
+                final Field field = fields.get(i);
+                if (!(field instanceof DataField) || applyToExistingField((DataField) field)) {
+                    fields.set(kept++, field);
+                }
+            }
+            fields.subList(kept, fields.size()).clear();
+
+            fields.addAll(addedFields());
+
+            changes.clear();
+            changesByTag.clear();
+        }
+
+        /**
+         * @return <code>true</code> if the field is kept
+         */
+        private boolean applyToExistingField(DataField dataField) {
+            final List<Change> tagChanges = changesByTag.get(dataField.getTag());
+            if (tagChanges == null) {
+                return true;
+            }
+            for (Change change : tagChanges) {
+                switch (change.type) {
+                    case REMOVE_FIELD:
+                        return false;
+                    case REMOVE_SUBFIELD:
+                        if (removeSubfield(dataField, change.code)) {
+                            return false;
+                        }
+                        break;
+                    case ADD_OR_REPLACE_SUBFIELD:
+                        // The first field with the tag at the time of the change gets the subfield
+                        if (!change.done) {
+                            dataField.addOrReplaceFirstSubField(new SubField(change.code, change.value));
+                            change.done = true;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            return true;
+        }
+
+        /*
+         * The fields added by the batch come after the fields of the record, so the changes are replayed in order on
+         * the added fields only
+         */
+        private List<DataField> addedFields() {
+            final List<DataField> addedFields = new ArrayList<>();
+            final Map<MarcRecord, Map<String, List<DataField>>> sourceFields = new IdentityHashMap<>();
+            for (Change change : changes) {
+                switch (change.type) {
+                    case ADD_FIELD:
+                        addedFields.add(new DataField(change.tag, "00").addSubField(new SubField(change.code, change.value)));
+                        break;
+                    case COPY_FIELDS:
+                        addedFields.addAll(sourceFields.computeIfAbsent(change.source, MarcRecordWriter::fieldsByTag)
+                                .getOrDefault(change.tag, Collections.emptyList()));
+                        break;
+                    case REMOVE_FIELD:
+                        addedFields.removeIf(dataField -> change.tag.equals(dataField.getTag()));
+                        break;
+                    case REMOVE_SUBFIELD:
+                        addedFields.removeIf(dataField -> change.tag.equals(dataField.getTag()) && removeSubfield(dataField, change.code));
+                        break;
+                    case ADD_OR_REPLACE_SUBFIELD:
+                        if (!change.done) {
+                            addOrReplaceSubField(addedFields, change);
+                        }
+                        break;
+                }
+            }
+
+            return addedFields;
+        }
+
+        private void addOrReplaceSubField(List<DataField> addedFields, Change change) {
+            for (DataField dataField : addedFields) {
+                if (change.tag.equals(dataField.getTag())) {
+                    dataField.addOrReplaceFirstSubField(new SubField(change.code, change.value));
+                    return;
+                }
+            }
+            addedFields.add(new DataField(change.tag, "00").addSubField(new SubField(change.code, change.value)));
+        }
+
+        /**
+         * @return <code>true</code> if the field has no subfields left
+         */
+        private boolean removeSubfield(DataField dataField, char code) {
+            dataField.getSubFields().removeIf(subfield -> code == subfield.getCode());
+
+            return dataField.getSubFields().isEmpty();
+        }
+    }
+
+    private enum ChangeType {
+        ADD_FIELD, COPY_FIELDS, REMOVE_FIELD, REMOVE_SUBFIELD, ADD_OR_REPLACE_SUBFIELD
+    }
+
+    private static class Change {
+        private final ChangeType type;
+        private final String tag;
+        private final char code;
+        private final String value;
+        private final MarcRecord source;
+        // Set when an existing field has received the subfield of an add or replace
+        private boolean done = false;
+
+        private Change(ChangeType type, String tag, char code, String value, MarcRecord source) {
+            this.type = type;
+            this.tag = tag;
+            this.code = code;
+            this.value = value;
+            this.source = source;
+        }
     }
 }
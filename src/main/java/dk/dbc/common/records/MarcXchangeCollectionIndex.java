@@ -0,0 +1,163 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.reader.MarcReaderException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Index of the records in a collection file written by {@link MarcXchangeCollectionWriter}.
+ * <p>
+ * The index is a tab separated text file. The first line holds the compression of the collection file and each
+ * of the following lines holds record id, agency id, block offset, offset in block and length of a record.
+ * The block offset is the position in the collection file where the (possibly compressed) block containing the
+ * record starts, and the offset in block is the position of the record in the uncompressed block.
+ * </p>
+ */
+public class MarcXchangeCollectionIndex {
+    private static final String COMPRESSION = "compression";
+
+    private final MarcXchangeCollectionWriter.Compression compression;
+    private final Map<String, Entry> entries;
+
+    private MarcXchangeCollectionIndex(MarcXchangeCollectionWriter.Compression compression, Map<String, Entry> entries) {
+        this.compression = compression;
+        this.entries = entries;
+    }
+
+    static void writeHeader(Writer writer, MarcXchangeCollectionWriter.Compression compression) throws IOException {
+        writer.write(COMPRESSION + "\t" + compression + "\n");
+    }
+
+    static void writeEntry(Writer writer, String recordId, String agencyId, long blockOffset, long offsetInBlock, int length) throws IOException {
+        writer.write(recordId + "\t" + (agencyId == null ? "" : agencyId) + "\t" + blockOffset + "\t" + offsetInBlock + "\t" + length + "\n");
+    }
+
+    /**
+     * Loads an index file
+     *
+     * @param indexFile The index file
+     * @return The index
+     * @throws IOException If the file can't be read or has an invalid format
+     */
+    public static MarcXchangeCollectionIndex load(Path indexFile) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            MarcXchangeCollectionWriter.Compression compression = MarcXchangeCollectionWriter.Compression.NONE;
+            final Map<String, Entry> entries = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] values = line.split("\t", -1);
+                if (values.length == 2 && COMPRESSION.equals(values[0])) {
+                    compression = MarcXchangeCollectionWriter.Compression.valueOf(values[1]);
+                } else if (values.length == 5) {
+                    entries.put(key(values[0], values[1]), new Entry(Long.parseLong(values[2]), Long.parseLong(values[3]), Integer.parseInt(values[4])));
+                } else if (!line.isEmpty()) {
+                    throw new IOException("Invalid index line: " + line);
+                }
+            }
+
+            return new MarcXchangeCollectionIndex(compression, entries);
+        }
+    }
+
+    public MarcXchangeCollectionWriter.Compression getCompression() {
+        return compression;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean contains(String recordId, String agencyId) {
+        return entries.containsKey(key(recordId, agencyId));
+    }
+
+    /**
+     * Reads the content of a single record from the collection file
+     *
+     * @param collectionFile The collection file which the index belongs to
+     * @param recordId       The record id (001 *a)
+     * @param agencyId       The agency id (001 *b)
+     * @return The MarcXchange content of the record or <code>null</code> if the record isn't in the index
+     * @throws IOException If the collection file can't be read
+     */
+    public byte[] readContent(Path collectionFile, String recordId, String agencyId) throws IOException {
+        final Entry entry = entries.get(key(recordId, agencyId));
+        if (entry == null) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(collectionFile, StandardOpenOption.READ)) {
+            if (compression == MarcXchangeCollectionWriter.Compression.GZIP) {
+                channel.position(entry.blockOffset);
+                try (InputStream inputStream = new GZIPInputStream(Channels.newInputStream(channel))) {
+                    inputStream.skipNBytes(entry.offsetInBlock);
+                    final byte[] content = inputStream.readNBytes(entry.length);
+                    if (content.length != entry.length) {
+                        throw new IOException("Unexpected end of block at offset " + entry.blockOffset);
+                    }
+                    return content;
+                }
+            } else {
+                final ByteBuffer content = ByteBuffer.allocate(entry.length);
+                long position = entry.blockOffset + entry.offsetInBlock;
+                while (content.hasRemaining()) {
+                    final int read = channel.read(content, position);
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of file at offset " + position);
+                    }
+                    position += read;
+                }
+                return content.array();
+            }
+        }
+    }
+
+    /**
+     * Reads and decodes a single record from the collection file
+     *
+     * @param collectionFile The collection file which the index belongs to
+     * @param recordId       The record id (001 *a)
+     * @param agencyId       The agency id (001 *b)
+     * @return The record or <code>null</code> if the record isn't in the index
+     * @throws IOException         If the collection file can't be read
+     * @throws MarcReaderException If the record can't be decoded
+     */
+    public MarcRecord readRecord(Path collectionFile, String recordId, String agencyId) throws IOException, MarcReaderException {
+        final byte[] content = readContent(collectionFile, recordId, agencyId);
+        if (content == null) {
+            return null;
+        }
+
+        return RecordContentTransformer.decodeRecord(content);
+    }
+
+    private static String key(String recordId, String agencyId) {
+        return recordId + ":" + (agencyId == null ? "" : agencyId);
+    }
+
+    private static class Entry {
+        private final long blockOffset;
+        private final long offsetInBlock;
+        private final int length;
+
+        private Entry(long blockOffset, long offsetInBlock, int length) {
+            this.blockOffset = blockOffset;
+            this.offsetInBlock = offsetInBlock;
+            this.length = length;
+        }
+    }
+
+}
@@ -0,0 +1,319 @@
+package dk.dbc.common.records;
+
+import dk.dbc.common.records.utils.ByteBufferInputStream;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.reader.MarcReaderException;
+import dk.dbc.marc.reader.MarcXchangeV1Reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static dk.dbc.common.records.MarcXchangeScanner.RECORD;
+
+/**
+ * Reads MarcXchange collection files through memory mapped buffers.
+ * <p>
+ * Each file is divided into splits of roughly the configured size. A split always starts at a record boundary,
+ * so the splits can be decoded independently, e.g. by a parallel stream. The records are decoded one at a time
+ * directly from the mapped region, which means the file content is never copied onto the heap as a whole.
+ * </p>
+ * <p>
+ * The path may either point to a single file or to a directory, in which case all regular files in the directory
+ * are read in name order. A file can contain either a collection of records or a single record document.
+ * The files are expected to be UTF-8 encoded.
+ * </p>
+ */
+public class MarcXchangeCollectionReader {
+    public static final long DEFAULT_SPLIT_SIZE = 64L * 1024 * 1024;
+
+    private final List<Path> files;
+    private final long splitSize;
+
+    private MarcXchangeCollectionReader(List<Path> files, long splitSize) {
+        this.files = files;
+        this.splitSize = splitSize;
+    }
+
+    /**
+     * Opens a file or a directory of files using the default split size
+     *
+     * @param path Path to a MarcXchange file or to a directory of MarcXchange files
+     * @return The reader
+     * @throws IOException If the directory can't be listed
+     */
+    public static MarcXchangeCollectionReader open(Path path) throws IOException {
+        return open(path, DEFAULT_SPLIT_SIZE);
+    }
+
+    /**
+     * Opens a file or a directory of files
+     *
+     * @param path      Path to a MarcXchange file or to a directory of MarcXchange files
+     * @param splitSize The approximate size in bytes of each split
+     * @return The reader
+     * @throws IOException If the directory can't be listed
+     */
+    public static MarcXchangeCollectionReader open(Path path, long splitSize) throws IOException {
+        if (splitSize <= 0 || splitSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Split size must be between 1 and " + Integer.MAX_VALUE + " but was " + splitSize);
+        }
+        final List<Path> files;
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> list = Files.list(path)) {
+                files = list.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+        } else {
+            files = Collections.singletonList(path);
+        }
+
+        return new MarcXchangeCollectionReader(files, splitSize);
+    }
+
+    public List<Path> getFiles() {
+        return files;
+    }
+
+    /**
+     * Finds the splits of all files. Only the root element of each file and the areas around the split
+     * boundaries are touched.
+     *
+     * @return List of splits in file order
+     * @throws IOException If a file can't be read
+     */
+    public List<Split> getSplits() throws IOException {
+        final List<Split> result = new ArrayList<>();
+        for (Path file : files) {
+            result.addAll(splitFile(file));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return A sequential stream of all records in all files
+     * @throws IOException If a file can't be read
+     */
+    public Stream<MarcRecord> stream() throws IOException {
+        return getSplits().stream().flatMap(Split::records);
+    }
+
+    /**
+     * The records are returned in file order, but the splits are decoded concurrently
+     *
+     * @return A parallel stream of all records in all files
+     * @throws IOException If a file can't be read
+     */
+    public Stream<MarcRecord> parallelStream() throws IOException {
+        return getSplits().parallelStream().flatMap(Split::records);
+    }
+
+    private List<Split> splitFile(Path file) throws IOException {
+        final List<Split> result = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final Envelope envelope = readEnvelope(channel, size);
+            if (envelope == null) {
+                return result;
+            }
+            long start = findRecordStart(channel, envelope.firstRecord, size);
+            while (start >= 0) {
+                final long next = start + splitSize < size ? findRecordStart(channel, start + splitSize, size) : -1;
+                result.add(new Split(file, start, next < 0 ? size : next, envelope));
+                start = next;
+            }
+        }
+
+        return result;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long from, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(size - from, Integer.MAX_VALUE));
+    }
+
+    private static long findRecordStart(FileChannel channel, long from, long size) throws IOException {
+        final ByteBuffer buffer = map(channel, from, size);
+        final int index = MarcXchangeScanner.findStartTag(buffer, 0, buffer.limit(), RECORD);
+
+        return index < 0 ? -1 : from + index;
+    }
+
+    /*
+     * The records are decoded one by one, so when the records are wrapped in a collection element the namespace
+     * declarations on that element are needed around each record. Returns null if the file contains no records.
+     */
+    private static Envelope readEnvelope(FileChannel channel, long size) throws IOException {
+        if (size == 0) {
+            return null;
+        }
+        final ByteBuffer buffer = map(channel, 0, size);
+        final int root = MarcXchangeScanner.findRootElement(buffer, 0, buffer.limit());
+        if (root < 0) {
+            return null;
+        }
+        if (MarcXchangeScanner.isStartTag(buffer, root, buffer.limit(), RECORD)) {
+            return new Envelope(new byte[0], new byte[0], root);
+        }
+        final int rootEnd = MarcXchangeScanner.findTagEnd(buffer, root, buffer.limit());
+        if (rootEnd < 0 || buffer.get(rootEnd - 2) == '/') {
+            return null;
+        }
+        final byte[] open = new byte[rootEnd - root];
+        buffer.get(root, open);
+        final int nameEnd = MarcXchangeScanner.nameEnd(buffer, root + 1, rootEnd);
+        final byte[] name = new byte[nameEnd - root - 1];
+        buffer.get(root + 1, name);
+        final byte[] close = new byte[name.length + 3];
+        close[0] = '<';
+        close[1] = '/';
+        System.arraycopy(name, 0, close, 2, name.length);
+        close[close.length - 1] = '>';
+
+        return new Envelope(open, close, rootEnd);
+    }
+
+    private static MarcRecord decode(ByteBuffer content, Envelope envelope) {
+        final InputStream inputStream = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                new ByteArrayInputStream(envelope.open),
+                new ByteBufferInputStream(content),
+                new ByteArrayInputStream(envelope.close))));
+        try {
+            final MarcXchangeV1Reader reader = new MarcXchangeV1Reader(inputStream, StandardCharsets.UTF_8);
+
+            return reader.read();
+        } catch (MarcReaderException e) {
+            throw new IllegalStateException("Unable to decode record: " + e.getMessage(), e);
+        }
+    }
+
+    private static class Envelope {
+        private final byte[] open;
+        private final byte[] close;
+        private final long firstRecord;
+
+        private Envelope(byte[] open, byte[] close, long firstRecord) {
+            this.open = open;
+            this.close = close;
+            this.firstRecord = firstRecord;
+        }
+    }
+
+    /**
+     * A region of a file which starts at a record boundary and contains whole records only
+     */
+    public static class Split {
+        private final Path file;
+        private final long start;
+        private final long end;
+        private final Envelope envelope;
+
+        private Split(Path file, long start, long end, Envelope envelope) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.envelope = envelope;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * Maps the region and returns a lazy stream of the records in it
+         *
+         * @return Stream of records
+         * @throws UncheckedIOException If the file can't be mapped
+         */
+        public Stream<MarcRecord> records() {
+            final MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new RecordIterator(buffer, envelope),
+                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+
+        @Override
+        public String toString() {
+            return "Split{" +
+                    "file=" + file +
+                    ", start=" + start +
+                    ", end=" + end +
+                    '}';
+        }
+    }
+
+    private static class RecordIterator implements Iterator<MarcRecord> {
+        private final ByteBuffer buffer;
+        private final Envelope envelope;
+        private int position;
+        private int recordStart = -1;
+        private int recordEnd;
+
+        private RecordIterator(ByteBuffer buffer, Envelope envelope) {
+            this.buffer = buffer;
+            this.envelope = envelope;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (recordStart < 0) {
+                recordStart = MarcXchangeScanner.findStartTag(buffer, position, buffer.limit(), RECORD);
+                if (recordStart < 0) {
+                    position = buffer.limit();
+                    return false;
+                }
+                recordEnd = MarcXchangeScanner.findElementEnd(buffer, recordStart, buffer.limit(), RECORD);
+                if (recordEnd < 0) {
+                    throw new IllegalStateException("Record starting at offset " + recordStart + " is not terminated");
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public MarcRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final MarcRecord marcRecord = decode(buffer.slice(recordStart, recordEnd - recordStart), envelope);
+            position = recordEnd;
+            recordStart = -1;
+
+            return marcRecord;
+        }
+    }
+
+}
@@ -0,0 +1,321 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.reader.MarcReaderException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+import static dk.dbc.common.records.MarcXchangeScanner.RECORD;
+
+/**
+ * Writes records to a single MarcXchange collection document.
+ * <p>
+ * The records are appended to a reusable buffer which is written to the channel as a block whenever it is full,
+ * when the flush interval is reached or when {@link #flush()} is called. Each block can optionally be compressed
+ * as a separate gzip member - the concatenated members are still a valid gzip file.
+ * </p>
+ * <p>
+ * If an index writer is set a line is written for each record with the location of the record in the output.
+ * The index can be loaded with {@link MarcXchangeCollectionIndex} in order to read single records directly. The
+ * records must then have a 001 *a, and a record without one is rejected before anything is written.
+ * </p>
+ * <p>
+ * The configuration setters must be called before the first record is written.
+ * </p>
+ */
+public class MarcXchangeCollectionWriter implements Closeable {
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final byte[] COLLECTION_START = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<marcx:collection xmlns:marcx=\"info:lc/xmlns/marcxchange-v1\">\n").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] COLLECTION_END = "</marcx:collection>\n".getBytes(StandardCharsets.UTF_8);
+
+    public enum Compression {
+        NONE, GZIP
+    }
+
+    private final WritableByteChannel channel;
+    private final OutputStream channelOutputStream;
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private Compression compression = Compression.NONE;
+    private int flushInterval = 0;
+    private Writer index;
+    private ByteBuffer buffer;
+    private long channelPosition = 0;
+    private int recordsSinceFlush = 0;
+    private boolean indexHeaderWritten = false;
+    private boolean closed = false;
+
+    public MarcXchangeCollectionWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        this.channelOutputStream = Channels.newOutputStream(channel);
+    }
+
+    /**
+     * Creates a writer for a file. An existing file is truncated.
+     *
+     * @param file The file to write to
+     * @return The writer
+     * @throws IOException If the file can't be opened
+     */
+    public static MarcXchangeCollectionWriter open(Path file) throws IOException {
+        return new MarcXchangeCollectionWriter(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    public MarcXchangeCollectionWriter setCompression(Compression compression) {
+        assertNotStarted();
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * @param bufferSize Size in bytes of the write buffer. It must at least hold the collection start and end tags.
+     * @return this
+     * @throws IllegalArgumentException If the buffer size is too small
+     */
+    public MarcXchangeCollectionWriter setBufferSize(int bufferSize) {
+        assertNotStarted();
+        if (bufferSize < COLLECTION_START.length + COLLECTION_END.length) {
+            throw new IllegalArgumentException("Buffer size " + bufferSize + " is too small");
+        }
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        return this;
+    }
+
+    /**
+     * @param flushInterval Number of records after which the buffer is flushed. 0 means only flush when the
+     *                      buffer is full.
+     * @return this
+     */
+    public MarcXchangeCollectionWriter setFlushInterval(int flushInterval) {
+        assertNotStarted();
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    /**
+     * @param index Writer which receives the index lines. The writer is closed when this writer is closed.
+     * @return this
+     */
+    public MarcXchangeCollectionWriter setIndex(Writer index) {
+        assertNotStarted();
+        this.index = index;
+        return this;
+    }
+
+    /**
+     * Encodes the record directly into the buffer and appends it to the collection
+     *
+     * @param marcRecord The record to write
+     * @throws IOException              If the output can't be written
+     * @throws IllegalArgumentException If an index is written and the record has no 001 *a
+     */
+    public void write(MarcRecord marcRecord) throws IOException {
+        final MarcRecordReader reader = new MarcRecordReader(marcRecord);
+        final String recordId = index == null ? null : requireRecordId(reader.getRecordId());
+        startRecord();
+        long blockOffset = channelPosition;
+        int offsetInBlock = buffer.position();
+        if (!encode(marcRecord, buffer)) {
+            buffer.position(offsetInBlock);
+            writeBlock();
+            blockOffset = channelPosition;
+            offsetInBlock = buffer.position();
+            if (!encode(marcRecord, buffer)) {
+                // The record is larger than the buffer so it is written as a block of its own
+                buffer.position(offsetInBlock);
+                writeBlock();
+                blockOffset = channelPosition;
+                offsetInBlock = 0;
+                ByteBuffer large = ByteBuffer.allocate(buffer.capacity() * 2);
+                while (!encode(marcRecord, large)) {
+                    large = ByteBuffer.allocate(large.capacity() * 2);
+                }
+                large.flip();
+                writeBlock(large);
+                endRecord(recordId, reader.getAgencyId(), blockOffset, offsetInBlock, large.limit() - 1);
+                return;
+            }
+        }
+        endRecord(recordId, reader.getAgencyId(), blockOffset, offsetInBlock, buffer.position() - offsetInBlock - 1);
+    }
+
+    private static boolean encode(MarcRecord marcRecord, ByteBuffer out) {
+        try {
+            MarcXchangeEncoder.encode(marcRecord, out);
+            out.put((byte) '\n');
+            return true;
+        } catch (BufferOverflowException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Appends an already encoded single record document to the collection without decoding it.
+     * <p>
+     * Content which isn't a single record document (e.g. a collection) is decoded and encoded again.
+     * </p>
+     *
+     * @param content MarcXchange content of a single record
+     * @throws IOException              If the output can't be written
+     * @throws MarcReaderException      If the content isn't a single record and can't be decoded
+     * @throws IllegalArgumentException If an index is written and the record has no 001 *a
+     */
+    public void write(byte[] content) throws IOException, MarcReaderException {
+        final ByteBuffer wrapped = ByteBuffer.wrap(content);
+        final int start = MarcXchangeScanner.findRootElement(wrapped, 0, content.length);
+        if (start < 0 || !MarcXchangeScanner.isStartTag(wrapped, start, content.length, RECORD)) {
+            write(RecordContentTransformer.decodeRecord(content));
+            return;
+        }
+        final int end = MarcXchangeScanner.findElementEnd(wrapped, start, content.length, RECORD);
+        if (end < 0) {
+            throw new MarcReaderException("The record content is not terminated");
+        }
+        final int length = end - start;
+        final String recordId = index == null ? null
+                : requireRecordId(MarcXchangeScanner.findSubFieldValue(wrapped, start, end, "001", 'a'));
+        startRecord();
+        if (buffer.remaining() < length + 1) {
+            writeBlock();
+        }
+        final long blockOffset = channelPosition;
+        final int offsetInBlock = buffer.position();
+        if (buffer.remaining() < length + 1) {
+            // The record is larger than the buffer so it is written as a block of its own
+            final ByteBuffer large = ByteBuffer.allocate(length + 1);
+            large.put(content, start, length).put((byte) '\n').flip();
+            writeBlock(large);
+        } else {
+            buffer.put(content, start, length);
+            buffer.put((byte) '\n');
+        }
+        final String agencyId = index == null ? null : MarcXchangeScanner.findSubFieldValue(wrapped, start, end, "001", 'b');
+        endRecord(recordId, agencyId, blockOffset, offsetInBlock, length);
+    }
+
+    private static String requireRecordId(String recordId) {
+        if (recordId == null) {
+            throw new IllegalArgumentException("The record has no 001 *a, so it can't be indexed");
+        }
+
+        return recordId;
+    }
+
+    private void startRecord() {
+        if (closed) {
+            throw new IllegalStateException("The writer is closed");
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+        }
+        if (channelPosition == 0 && buffer.position() == 0) {
+            buffer.put(COLLECTION_START);
+        }
+    }
+
+    private void endRecord(String recordId, String agencyId, long blockOffset, int offsetInBlock, int length) throws IOException {
+        if (index != null) {
+            if (!indexHeaderWritten) {
+                MarcXchangeCollectionIndex.writeHeader(index, compression);
+                indexHeaderWritten = true;
+            }
+            MarcXchangeCollectionIndex.writeEntry(index, recordId, agencyId, blockOffset, offsetInBlock, length);
+        }
+
+        recordsSinceFlush++;
+        if (flushInterval > 0 && recordsSinceFlush >= flushInterval) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered records to the channel. When compression is enabled this ends the current block.
+     *
+     * @throws IOException If the output can't be written
+     */
+    public void flush() throws IOException {
+        writeBlock();
+        if (index != null) {
+            index.flush();
+        }
+        recordsSinceFlush = 0;
+    }
+
+    /**
+     * Ends the collection, flushes and closes the channel and the index
+     *
+     * @throws IOException If the output can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate(COLLECTION_START.length + COLLECTION_END.length);
+            }
+            if (channelPosition == 0 && buffer.position() == 0) {
+                buffer.put(COLLECTION_START);
+            }
+            if (buffer.remaining() < COLLECTION_END.length) {
+                writeBlock();
+            }
+            buffer.put(COLLECTION_END);
+            flush();
+        } finally {
+            closed = true;
+            try {
+                channel.close();
+            } finally {
+                if (index != null) {
+                    index.close();
+                }
+            }
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (buffer != null && buffer.position() > 0) {
+            buffer.flip();
+            writeBlock(buffer);
+            buffer.clear();
+        }
+    }
+
+    private void writeBlock(ByteBuffer block) throws IOException {
+        if (compression == Compression.GZIP) {
+            compressed.reset();
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed)) {
+                gzipOutputStream.write(block.array(), block.arrayOffset() + block.position(), block.remaining());
+            }
+            compressed.writeTo(channelOutputStream);
+            channelPosition += compressed.size();
+        } else {
+            while (block.hasRemaining()) {
+                channelPosition += channel.write(block);
+            }
+        }
+    }
+
+    private void assertNotStarted() {
+        if (channelPosition > 0 || buffer != null && buffer.position() > 0) {
+            throw new IllegalStateException("The writer must be configured before records are written");
+        }
+    }
+
+}
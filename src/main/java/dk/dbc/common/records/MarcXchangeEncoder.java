@@ -0,0 +1,163 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.ControlField;
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes a record as a MarcXchange record element directly into a buffer.
+ * <p>
+ * The element has no XML declaration, so it can be written inside a collection element. It declares the
+ * <code>marcx</code> namespace itself, so a record read from a collection by its offset can be decoded on its own.
+ * The content is encoded as UTF-8.
+ * </p>
+ */
+final class MarcXchangeEncoder {
+    static final String DEFAULT_FORMAT = "danMARC2";
+    static final String DEFAULT_TYPE = "Bibliographic";
+
+    private static final byte[] RECORD_START = bytes("<marcx:record xmlns:marcx=\"info:lc/xmlns/marcxchange-v1\" format=\"");
+    private static final byte[] TYPE = bytes("\" type=\"");
+    private static final byte[] RECORD_END = bytes("</marcx:record>");
+    private static final byte[] LEADER_START = bytes("<marcx:leader>");
+    private static final byte[] LEADER_END = bytes("</marcx:leader>");
+    private static final byte[] CONTROLFIELD_START = bytes("<marcx:controlfield tag=\"");
+    private static final byte[] CONTROLFIELD_END = bytes("</marcx:controlfield>");
+    private static final byte[] DATAFIELD_START = bytes("<marcx:datafield tag=\"");
+    private static final byte[] IND1 = bytes("\" ind1=\"");
+    private static final byte[] IND2 = bytes("\" ind2=\"");
+    private static final byte[] IND3 = bytes("\" ind3=\"");
+    private static final byte[] DATAFIELD_END = bytes("</marcx:datafield>");
+    private static final byte[] SUBFIELD_START = bytes("<marcx:subfield code=\"");
+    private static final byte[] SUBFIELD_END = bytes("</marcx:subfield>");
+    private static final byte[] AMP = bytes("&amp;");
+    private static final byte[] LT = bytes("&lt;");
+    private static final byte[] GT = bytes("&gt;");
+    private static final byte[] QUOT = bytes("&quot;");
+
+    private MarcXchangeEncoder() {
+
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes the record at the position of the buffer
+     *
+     * @param marcRecord The record
+     * @param out        The buffer to encode into
+     * @throws BufferOverflowException If the record doesn't fit in the remaining space of the buffer. The position
+     *                                 of the buffer is then undefined.
+     */
+    static void encode(MarcRecord marcRecord, ByteBuffer out) {
+        out.put(RECORD_START);
+        putText(out, marcRecord.getFormat() == null ? DEFAULT_FORMAT : marcRecord.getFormat());
+        out.put(TYPE);
+        putText(out, marcRecord.getType() == null ? DEFAULT_TYPE : marcRecord.getType());
+        out.put((byte) '"');
+        out.put((byte) '>');
+        if (marcRecord.getLeader() != null) {
+            out.put(LEADER_START);
+            putText(out, marcRecord.getLeader().getData());
+            out.put(LEADER_END);
+        }
+        for (Field field : marcRecord.getFields()) {
+            if (field instanceof DataField) {
+                encodeDataField((DataField) field, out);
+            } else if (field instanceof ControlField) {
+                final ControlField controlField = (ControlField) field;
+                out.put(CONTROLFIELD_START);
+                putText(out, controlField.getTag());
+                out.put((byte) '"');
+                out.put((byte) '>');
+                putText(out, controlField.getData());
+                out.put(CONTROLFIELD_END);
+            }
+        }
+        out.put(RECORD_END);
+    }
+
+    private static void encodeDataField(DataField dataField, ByteBuffer out) {
+        out.put(DATAFIELD_START);
+        putText(out, dataField.getTag());
+        putIndicator(out, IND1, dataField.getInd1());
+        putIndicator(out, IND2, dataField.getInd2());
+        putIndicator(out, IND3, dataField.getInd3());
+        out.put((byte) '"');
+        out.put((byte) '>');
+        for (SubField subField : dataField.getSubFields()) {
+            out.put(SUBFIELD_START);
+            putChar(out, subField.getCode());
+            out.put((byte) '"');
+            out.put((byte) '>');
+            putText(out, subField.getData());
+            out.put(SUBFIELD_END);
+        }
+        out.put(DATAFIELD_END);
+    }
+
+    private static void putIndicator(ByteBuffer out, byte[] name, Character indicator) {
+        if (indicator != null) {
+            out.put(name);
+            putChar(out, indicator);
+        }
+    }
+
+    private static void putText(ByteBuffer out, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xF0 | codePoint >> 18));
+                out.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                out.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                out.put((byte) (0x80 | codePoint & 0x3F));
+            } else {
+                putChar(out, c);
+            }
+        }
+    }
+
+    private static void putChar(ByteBuffer out, char c) {
+        switch (c) {
+            case '&':
+                out.put(AMP);
+                break;
+            case '<':
+                out.put(LT);
+                break;
+            case '>':
+                out.put(GT);
+                break;
+            case '"':
+                out.put(QUOT);
+                break;
+            default:
+                if (c < 0x80) {
+                    out.put((byte) c);
+                } else if (c < 0x800) {
+                    out.put((byte) (0xC0 | c >> 6));
+                    out.put((byte) (0x80 | c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // An unpaired surrogate can't be encoded, which String.getBytes also replaces with '?'
+                    out.put((byte) '?');
+                } else {
+                    out.put((byte) (0xE0 | c >> 12));
+                    out.put((byte) (0x80 | c >> 6 & 0x3F));
+                    out.put((byte) (0x80 | c & 0x3F));
+                }
+        }
+    }
+
+}
@@ -0,0 +1,803 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.ControlField;
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Leader;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Byte level helper functions for locating elements in MarcXchange content.
+ * <p>
+ * The functions work on absolute indexes in the buffer and never change its position or limit. The content is
+ * expected to be encoded in an ASCII compatible charset, i.e. UTF-8. Element names are compared on their local
+ * part, so any namespace prefix is accepted.
+ * </p>
+ */
+final class MarcXchangeScanner {
+    static final byte[] RECORD = "record".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] LEADER = "leader".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] CONTROLFIELD = "controlfield".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] DATAFIELD = "datafield".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] SUBFIELD = "subfield".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] TAG = "tag".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] CODE = "code".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] IND1 = "ind1".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] IND2 = "ind2".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] IND3 = "ind3".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] TYPE = "type".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] FORMAT = "format".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(StandardCharsets.US_ASCII);
+
+    private MarcXchangeScanner() {
+
+    }
+
+    /**
+     * Finds the next start tag of an element with the given local name
+     *
+     * @param buffer    The content
+     * @param from      Index to start searching from
+     * @param to        Index to stop searching at (exclusive)
+     * @param localName The local name of the element
+     * @return Index of the '&lt;' of the start tag or -1 if no such tag exists in the range
+     */
+    static int findStartTag(ByteBuffer buffer, int from, int to, byte[] localName) {
+        int i = from;
+        while (i < to) {
+            if (buffer.get(i) == '<') {
+                final int skipped = skipCommentOrCData(buffer, i, to);
+                if (skipped >= 0) {
+                    i = skipped;
+                    continue;
+                }
+                if (isStartTag(buffer, i, to, localName)) {
+                    return i;
+                }
+            }
+            i++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the end of the element with the given local name, i.e. the index just after the '&gt;' of the
+     * end tag.
+     * <p>
+     * Elements with the same name must not be nested, which is the case for all MarcXchange elements.
+     * </p>
+     *
+     * @param buffer    The content
+     * @param from      Index of the start tag of the element
+     * @param to        Index to stop searching at (exclusive)
+     * @param localName The local name of the element
+     * @return Index after the end of the element or -1 if the element isn't terminated within the range
+     */
+    static int findElementEnd(ByteBuffer buffer, int from, int to, byte[] localName) {
+        final int startTagEnd = findTagEnd(buffer, from, to);
+        if (startTagEnd < 0) {
+            return -1;
+        }
+        if (buffer.get(startTagEnd - 2) == '/') {
+            // Empty element
+            return startTagEnd;
+        }
+        int i = startTagEnd;
+        while (i < to) {
+            if (buffer.get(i) == '<' && i + 1 < to) {
+                final int skipped = skipCommentOrCData(buffer, i, to);
+                if (skipped >= 0) {
+                    i = skipped;
+                    continue;
+                }
+                if (buffer.get(i + 1) == '/' && nameMatches(buffer, i + 2, to, localName)) {
+                    return findTagEnd(buffer, i, to);
+                }
+            }
+            i++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the index just after the '&gt;' which ends the tag starting at the given index. Quoted attribute
+     * values are skipped.
+     *
+     * @param buffer The content
+     * @param from   Index of the '&lt;' of the tag
+     * @param to     Index to stop searching at (exclusive)
+     * @return Index after the tag or -1 if the tag isn't terminated within the range
+     */
+    static int findTagEnd(ByteBuffer buffer, int from, int to) {
+        byte quote = 0;
+        for (int i = from + 1; i < to; i++) {
+            final byte b = buffer.get(i);
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the first element start tag in the content, skipping the XML declaration, processing instructions,
+     * comments and doctype declarations.
+     *
+     * @param buffer The content
+     * @param from   Index to start searching from
+     * @param to     Index to stop searching at (exclusive)
+     * @return Index of the '&lt;' of the first start tag or -1 if there is none
+     */
+    static int findRootElement(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        while (i < to) {
+            if (buffer.get(i) == '<' && i + 1 < to) {
+                final byte next = buffer.get(i + 1);
+                if (isComment(buffer, i, to)) {
+                    i = skipComment(buffer, i, to);
+                    continue;
+                } else if (next == '?' || next == '!') {
+                    final int end = findTagEnd(buffer, i, to);
+                    if (end < 0) {
+                        return -1;
+                    }
+                    i = end;
+                    continue;
+                }
+                return i;
+            }
+            i++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the next start tag of any element, skipping end tags, comments and processing instructions.
+     * Searching stops at the first end tag with the given local name, e.g. the end of the enclosing record.
+     *
+     * @param buffer       The content
+     * @param from         Index to start searching from
+     * @param to           Index to stop searching at (exclusive)
+     * @param endLocalName Local name of the enclosing element
+     * @return Index of the '&lt;' of the start tag or -1 if there is no start tag before the end of the
+     * enclosing element
+     */
+    static int findChildStartTag(ByteBuffer buffer, int from, int to, byte[] endLocalName) {
+        int i = from;
+        while (i < to) {
+            if (buffer.get(i) == '<' && i + 1 < to) {
+                final byte next = buffer.get(i + 1);
+                final int skipped = skipCommentOrCData(buffer, i, to);
+                if (skipped >= 0) {
+                    i = skipped;
+                    continue;
+                }
+                if (next == '/') {
+                    if (nameMatches(buffer, i + 2, to, endLocalName)) {
+                        return -1;
+                    }
+                } else if (next != '?' && next != '!') {
+                    return i;
+                }
+            }
+            i++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks whether the start tag at the given index has the local name
+     *
+     * @param buffer    The content
+     * @param at        Index of the '&lt;'
+     * @param to        Index to stop searching at (exclusive)
+     * @param localName The local name of the element
+     * @return <code>true</code> if the tag is a start tag with the local name, otherwise <code>false</code>
+     */
+    static boolean isStartTag(ByteBuffer buffer, int at, int to, byte[] localName) {
+        if (at + 1 >= to) {
+            return false;
+        }
+        final byte next = buffer.get(at + 1);
+        if (next == '/' || next == '?' || next == '!') {
+            return false;
+        }
+
+        return nameMatches(buffer, at + 1, to, localName);
+    }
+
+    /**
+     * Returns the index after the end of the qualified name starting at the given index
+     */
+    static int nameEnd(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        while (i < to && !isNameTerminator(buffer.get(i))) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Returns the index of the first character of the local part of the qualified name starting at the given index
+     */
+    static int localNameStart(ByteBuffer buffer, int from, int to) {
+        int localStart = from;
+        for (int i = from; i < to && !isNameTerminator(buffer.get(i)); i++) {
+            if (buffer.get(i) == ':') {
+                localStart = i + 1;
+            }
+        }
+
+        return localStart;
+    }
+
+    /**
+     * Returns the value of the first subfield with the given code in the first field with the given tag
+     *
+     * @param buffer The content
+     * @param from   Index to start searching from
+     * @param to     Index to stop searching at (exclusive)
+     * @param tag    The field tag
+     * @param code   The subfield code
+     * @return The unescaped subfield value or <code>null</code> if the field or subfield doesn't exist
+     */
+    static String findSubFieldValue(ByteBuffer buffer, int from, int to, String tag, char code) {
+        int fieldStart = findStartTag(buffer, from, to, DATAFIELD);
+        while (fieldStart >= 0) {
+            final int fieldTagEnd = findTagEnd(buffer, fieldStart, to);
+            if (fieldTagEnd < 0) {
+                return null;
+            }
+            if (tag.equals(getAttribute(buffer, fieldStart, fieldTagEnd, TAG))) {
+                final int fieldEnd = findElementEnd(buffer, fieldStart, to, DATAFIELD);
+                final int limit = fieldEnd < 0 ? to : fieldEnd;
+                int subFieldStart = findStartTag(buffer, fieldTagEnd, limit, SUBFIELD);
+                while (subFieldStart >= 0) {
+                    final int subFieldTagEnd = findTagEnd(buffer, subFieldStart, limit);
+                    if (subFieldTagEnd < 0) {
+                        return null;
+                    }
+                    final String subFieldCode = getAttribute(buffer, subFieldStart, subFieldTagEnd, CODE);
+                    if (subFieldCode != null && subFieldCode.length() == 1 && subFieldCode.charAt(0) == code) {
+                        if (buffer.get(subFieldTagEnd - 2) == '/') {
+                            return "";
+                        }
+                        return getText(buffer, subFieldTagEnd, limit);
+                    }
+                    subFieldStart = findStartTag(buffer, subFieldTagEnd, limit, SUBFIELD);
+                }
+                return null;
+            }
+            fieldStart = findStartTag(buffer, fieldTagEnd, to, DATAFIELD);
+        }
+
+        return null;
+    }
+
+    /**
+     * Decodes a datafield element
+     *
+     * @param buffer The content
+     * @param start  Index of the start tag of the datafield
+     * @param end    Index after the end of the datafield
+     * @return The decoded field
+     * @throws IllegalArgumentException If a subfield has no code or its start tag isn't terminated
+     */
+    static DataField decodeDataField(ByteBuffer buffer, int start, int end) {
+        final int tagEnd = findTagEnd(buffer, start, end);
+        final DataField dataField = new DataField();
+        dataField.setTag(TagRegistry.canonical(getAttribute(buffer, start, tagEnd, TAG)));
+        dataField.setInd1(getIndicator(buffer, start, tagEnd, IND1));
+        dataField.setInd2(getIndicator(buffer, start, tagEnd, IND2));
+        dataField.setInd3(getIndicator(buffer, start, tagEnd, IND3));
+        if (buffer.get(tagEnd - 2) == '/') {
+            return dataField;
+        }
+        int subFieldStart = findStartTag(buffer, tagEnd, end, SUBFIELD);
+        while (subFieldStart >= 0) {
+            final int subFieldTagEnd = findTagEnd(buffer, subFieldStart, end);
+            if (subFieldTagEnd < 0) {
+                throw new IllegalArgumentException("Subfield start tag is not terminated in field " + dataField.getTag());
+            }
+            final String code = getAttribute(buffer, subFieldStart, subFieldTagEnd, CODE);
+            if (code == null || code.isEmpty()) {
+                throw new IllegalArgumentException("Subfield without code in field " + dataField.getTag());
+            }
+            final String data = buffer.get(subFieldTagEnd - 2) == '/' ? "" : getText(buffer, subFieldTagEnd, end);
+            dataField.getSubFields().add(new SubField(code.charAt(0), data));
+            subFieldStart = findStartTag(buffer, subFieldTagEnd, end, SUBFIELD);
+        }
+
+        return dataField;
+    }
+
+    /**
+     * Decodes a controlfield element
+     *
+     * @param buffer The content
+     * @param start  Index of the start tag of the controlfield
+     * @param end    Index after the end of the controlfield
+     * @return The decoded field
+     */
+    static ControlField decodeControlField(ByteBuffer buffer, int start, int end) {
+        final int tagEnd = findTagEnd(buffer, start, end);
+        final ControlField controlField = new ControlField();
+        controlField.setTag(TagRegistry.canonical(getAttribute(buffer, start, tagEnd, TAG)));
+        controlField.setData(buffer.get(tagEnd - 2) == '/' ? "" : getText(buffer, tagEnd, end));
+
+        return controlField;
+    }
+
+    private static Character getIndicator(ByteBuffer buffer, int tagStart, int tagEnd, byte[] name) {
+        final String value = getAttribute(buffer, tagStart, tagEnd, name);
+
+        return value == null || value.isEmpty() ? null : value.charAt(0);
+    }
+
+    /**
+     * Returns the unescaped value of an attribute
+     *
+     * @param buffer   The content
+     * @param tagStart Index of the '&lt;' of the start tag
+     * @param tagEnd   Index after the '&gt;' of the start tag
+     * @param name     The qualified name of the attribute
+     * @return The value or <code>null</code> if the tag has no such attribute
+     */
+    static String getAttribute(ByteBuffer buffer, int tagStart, int tagEnd, byte[] name) {
+        final int valueStart = findAttributeValue(buffer, tagStart, tagEnd, name);
+        if (valueStart < 0) {
+            return null;
+        }
+
+        return unescape(decode(buffer, valueStart, findAttributeValueEnd(buffer, valueStart, tagEnd)));
+    }
+
+    /**
+     * Finds the value of an attribute without decoding it
+     *
+     * @param buffer   The content
+     * @param tagStart Index of the '&lt;' of the start tag
+     * @param tagEnd   Index after the '&gt;' of the start tag
+     * @param name     The qualified name of the attribute
+     * @return Index of the first character of the value or -1 if the tag has no such attribute
+     */
+    static int findAttributeValue(ByteBuffer buffer, int tagStart, int tagEnd, byte[] name) {
+        int i = nameEnd(buffer, tagStart + 1, tagEnd);
+        while (i < tagEnd) {
+            while (i < tagEnd && isWhitespace(buffer.get(i))) {
+                i++;
+            }
+            final int attributeNameStart = i;
+            while (i < tagEnd && buffer.get(i) != '=' && !isNameTerminator(buffer.get(i))) {
+                i++;
+            }
+            final int attributeNameEnd = i;
+            while (i < tagEnd && isWhitespace(buffer.get(i))) {
+                i++;
+            }
+            if (i >= tagEnd || buffer.get(i) != '=') {
+                return -1;
+            }
+            i++;
+            while (i < tagEnd && isWhitespace(buffer.get(i))) {
+                i++;
+            }
+            if (i >= tagEnd) {
+                return -1;
+            }
+            final int valueStart = i + 1;
+            if (equals(buffer, attributeNameStart, attributeNameEnd, name)) {
+                return valueStart;
+            }
+            i = findAttributeValueEnd(buffer, valueStart, tagEnd) + 1;
+        }
+
+        return -1;
+    }
+
+    private static int findAttributeValueEnd(ByteBuffer buffer, int valueStart, int tagEnd) {
+        final byte quote = buffer.get(valueStart - 1);
+        int valueEnd = valueStart;
+        while (valueEnd < tagEnd && buffer.get(valueEnd) != quote) {
+            valueEnd++;
+        }
+
+        return valueEnd;
+    }
+
+    /**
+     * Reads the tag attribute of a field as a number without decoding it
+     *
+     * @param buffer   The content
+     * @param tagStart Index of the '&lt;' of the start tag of the field
+     * @param tagEnd   Index after the '&gt;' of the start tag of the field
+     * @return The tag as a number between 0 and 999, -1 if the tag isn't three digits and -2 if there is no tag
+     */
+    static int getNumericTag(ByteBuffer buffer, int tagStart, int tagEnd) {
+        final int valueStart = findAttributeValue(buffer, tagStart, tagEnd, TAG);
+        if (valueStart < 0) {
+            return -2;
+        }
+        if (valueStart + 3 >= tagEnd || buffer.get(valueStart + 3) != buffer.get(valueStart - 1)) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = valueStart; i < valueStart + 3; i++) {
+            final byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + b - '0';
+        }
+
+        return value;
+    }
+
+    /**
+     * Decodes the first record in the content, skipping fields which are not accepted by the filter. Skipped
+     * fields are only scanned for their end tag.
+     *
+     * @param buffer    The content
+     * @param from      Index to start searching from
+     * @param to        Index to stop searching at (exclusive)
+     * @param tagFilter Filter deciding which fields to decode
+     * @return The record or <code>null</code> if the content doesn't contain a record
+     * @throws IllegalArgumentException If the record isn't terminated
+     */
+    static MarcRecord decodeRecord(ByteBuffer buffer, int from, int to, TagFilter tagFilter) {
+        final int recordStart = findStartTag(buffer, from, to, RECORD);
+        if (recordStart < 0) {
+            return null;
+        }
+        final int recordTagEnd = findTagEnd(buffer, recordStart, to);
+        if (recordTagEnd < 0) {
+            throw new IllegalArgumentException("The record start tag is not terminated");
+        }
+        final MarcRecord marcRecord = new MarcRecord();
+        marcRecord.setType(getAttribute(buffer, recordStart, recordTagEnd, TYPE));
+        marcRecord.setFormat(getAttribute(buffer, recordStart, recordTagEnd, FORMAT));
+        if (buffer.get(recordTagEnd - 2) == '/') {
+            return marcRecord;
+        }
+
+        int elementStart = findChildStartTag(buffer, recordTagEnd, to, RECORD);
+        while (elementStart >= 0) {
+            final int elementEnd;
+            if (isStartTag(buffer, elementStart, to, DATAFIELD)) {
+                elementEnd = findElementEnd(buffer, elementStart, to, DATAFIELD);
+                if (elementEnd >= 0 && accepts(buffer, elementStart, elementEnd, tagFilter)) {
+                    marcRecord.getFields().add(decodeDataField(buffer, elementStart, elementEnd));
+                }
+            } else if (isStartTag(buffer, elementStart, to, CONTROLFIELD)) {
+                elementEnd = findElementEnd(buffer, elementStart, to, CONTROLFIELD);
+                if (elementEnd >= 0 && accepts(buffer, elementStart, elementEnd, tagFilter)) {
+                    marcRecord.getFields().add(decodeControlField(buffer, elementStart, elementEnd));
+                }
+            } else if (isStartTag(buffer, elementStart, to, LEADER)) {
+                elementEnd = findElementEnd(buffer, elementStart, to, LEADER);
+                if (elementEnd >= 0) {
+                    marcRecord.setLeader(new Leader().setData(getText(buffer, findTagEnd(buffer, elementStart, elementEnd), elementEnd)));
+                }
+            } else {
+                elementEnd = findTagEnd(buffer, elementStart, to);
+            }
+            if (elementEnd < 0) {
+                throw new IllegalArgumentException("The record content is not terminated");
+            }
+            elementStart = findChildStartTag(buffer, elementEnd, to, RECORD);
+        }
+
+        return marcRecord;
+    }
+
+    /**
+     * Finds the authority record ids of the first record in the content, i.e. the first *6 of each field which is
+     * accepted by the filter and has both *5 and *6. No other values are decoded.
+     *
+     * @param buffer    The content
+     * @param from      Index to start searching from
+     * @param to        Index to stop searching at (exclusive)
+     * @param tagFilter Filter deciding which fields can link to authority records
+     * @param consumer  Receives the ids in record order
+     * @return <code>false</code> if the content doesn't contain a record, otherwise <code>true</code>
+     * @throws IllegalArgumentException If the record isn't terminated
+     */
+    static boolean findAuthorityIds(ByteBuffer buffer, int from, int to, TagFilter tagFilter, Consumer<String> consumer) {
+        final int recordStart = findStartTag(buffer, from, to, RECORD);
+        if (recordStart < 0) {
+            return false;
+        }
+        final int recordTagEnd = findTagEnd(buffer, recordStart, to);
+        if (recordTagEnd < 0) {
+            throw new IllegalArgumentException("The record start tag is not terminated");
+        }
+        if (buffer.get(recordTagEnd - 2) == '/') {
+            return true;
+        }
+
+        int elementStart = findChildStartTag(buffer, recordTagEnd, to, RECORD);
+        while (elementStart >= 0) {
+            final int elementEnd;
+            if (isStartTag(buffer, elementStart, to, DATAFIELD)) {
+                elementEnd = findElementEnd(buffer, elementStart, to, DATAFIELD);
+                if (elementEnd >= 0 && accepts(buffer, elementStart, elementEnd, tagFilter)) {
+                    findAuthorityId(buffer, elementStart, elementEnd, consumer);
+                }
+            } else if (isStartTag(buffer, elementStart, to, CONTROLFIELD)) {
+                elementEnd = findElementEnd(buffer, elementStart, to, CONTROLFIELD);
+            } else if (isStartTag(buffer, elementStart, to, LEADER)) {
+                elementEnd = findElementEnd(buffer, elementStart, to, LEADER);
+            } else {
+                elementEnd = findTagEnd(buffer, elementStart, to);
+            }
+            if (elementEnd < 0) {
+                throw new IllegalArgumentException("The record content is not terminated");
+            }
+            elementStart = findChildStartTag(buffer, elementEnd, to, RECORD);
+        }
+
+        return true;
+    }
+
+    private static void findAuthorityId(ByteBuffer buffer, int start, int end, Consumer<String> consumer) {
+        final int tagEnd = findTagEnd(buffer, start, end);
+        if (buffer.get(tagEnd - 2) == '/') {
+            return;
+        }
+        boolean hasAuthorityAgency = false;
+        int authorityIdTagEnd = -1;
+        int subFieldStart = findStartTag(buffer, tagEnd, end, SUBFIELD);
+        while (subFieldStart >= 0) {
+            final int subFieldTagEnd = findTagEnd(buffer, subFieldStart, end);
+            final char code = getCode(buffer, subFieldStart, subFieldTagEnd);
+            if (code == '5') {
+                hasAuthorityAgency = true;
+            } else if (code == '6' && authorityIdTagEnd < 0) {
+                authorityIdTagEnd = subFieldTagEnd;
+            }
+            subFieldStart = findStartTag(buffer, subFieldTagEnd, end, SUBFIELD);
+        }
+        if (hasAuthorityAgency && authorityIdTagEnd >= 0) {
+            consumer.accept(buffer.get(authorityIdTagEnd - 2) == '/' ? "" : getText(buffer, authorityIdTagEnd, end));
+        }
+    }
+
+    /**
+     * Checks whether a subfield has one of the codes, without decoding the content
+     *
+     * @param buffer The content
+     * @param from   Index to start searching from
+     * @param to     Index to stop searching at (exclusive)
+     * @param codes  The subfield codes
+     * @return <code>false</code> if no subfield has one of the codes, otherwise <code>true</code>. If a subfield tag
+     * isn't terminated the answer is <code>true</code>, so the caller decodes the content and reports the error.
+     */
+    static boolean hasSubFieldCode(ByteBuffer buffer, int from, int to, String codes) {
+        int subFieldStart = findStartTag(buffer, from, to, SUBFIELD);
+        while (subFieldStart >= 0) {
+            final int subFieldTagEnd = findTagEnd(buffer, subFieldStart, to);
+            if (subFieldTagEnd < 0 || codes.indexOf(getCode(buffer, subFieldStart, subFieldTagEnd)) >= 0) {
+                return true;
+            }
+            subFieldStart = findStartTag(buffer, subFieldTagEnd, to, SUBFIELD);
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the code of a subfield, only decoding the attribute if it isn't a single ASCII character
+     */
+    private static char getCode(ByteBuffer buffer, int tagStart, int tagEnd) {
+        final int valueStart = findAttributeValue(buffer, tagStart, tagEnd, CODE);
+        if (valueStart < 0) {
+            return 0;
+        }
+        final byte quote = buffer.get(valueStart - 1);
+        final byte first = buffer.get(valueStart);
+        if (valueStart + 1 < tagEnd && first >= 0 && first != '&' && first != quote && buffer.get(valueStart + 1) == quote) {
+            return (char) first;
+        }
+        final String code = getAttribute(buffer, tagStart, tagEnd, CODE);
+
+        return code == null || code.isEmpty() ? 0 : code.charAt(0);
+    }
+
+    private static boolean accepts(ByteBuffer buffer, int start, int end, TagFilter tagFilter) {
+        final int tagEnd = findTagEnd(buffer, start, end);
+        final int numericTag = getNumericTag(buffer, start, tagEnd);
+        if (numericTag >= 0) {
+            return tagFilter.test(numericTag);
+        }
+
+        return numericTag == -1 && tagFilter.test(getAttribute(buffer, start, tagEnd, TAG));
+    }
+
+    /**
+     * Returns the unescaped text from the given index up to the next tag. The content of CDATA sections is
+     * included as is and comments are skipped.
+     *
+     * @throws IllegalArgumentException If a CDATA section isn't terminated
+     */
+    static String getText(ByteBuffer buffer, int from, int to) {
+        int end = textEnd(buffer, from, to);
+        if (!isComment(buffer, end, to) && !isCData(buffer, end, to)) {
+            return unescape(decode(buffer, from, end));
+        }
+        final StringBuilder sb = new StringBuilder();
+        int i = from;
+        while (true) {
+            sb.append(unescape(decode(buffer, i, end)));
+            if (isComment(buffer, end, to)) {
+                i = skipComment(buffer, end, to);
+            } else if (isCData(buffer, end, to)) {
+                final int cDataEnd = findCDataEnd(buffer, end, to);
+                if (cDataEnd < 0) {
+                    throw new IllegalArgumentException("CDATA section is not terminated");
+                }
+                sb.append(decode(buffer, end + CDATA_START.length, cDataEnd));
+                i = cDataEnd + 3;
+            } else {
+                return sb.toString();
+            }
+            end = textEnd(buffer, i, to);
+        }
+    }
+
+    private static int textEnd(ByteBuffer buffer, int from, int to) {
+        int end = from;
+        while (end < to && buffer.get(end) != '<') {
+            end++;
+        }
+
+        return end;
+    }
+
+    static String decode(ByteBuffer buffer, int from, int to) {
+        return StandardCharsets.UTF_8.decode(buffer.slice(from, to - from)).toString();
+    }
+
+    static String unescape(String value) {
+        int ampersand = value.indexOf('&');
+        if (ampersand < 0) {
+            return value;
+        }
+        final StringBuilder sb = new StringBuilder(value.length());
+        int last = 0;
+        while (ampersand >= 0) {
+            final int semicolon = value.indexOf(';', ampersand);
+            if (semicolon < 0) {
+                break;
+            }
+            sb.append(value, last, ampersand);
+            final String entity = value.substring(ampersand + 1, semicolon);
+            switch (entity) {
+                case "amp":
+                    sb.append('&');
+                    break;
+                case "lt":
+                    sb.append('<');
+                    break;
+                case "gt":
+                    sb.append('>');
+                    break;
+                case "quot":
+                    sb.append('"');
+                    break;
+                case "apos":
+                    sb.append('\'');
+                    break;
+                default:
+                    if (entity.startsWith("#x")) {
+                        sb.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+                    } else if (entity.startsWith("#")) {
+                        sb.appendCodePoint(Integer.parseInt(entity.substring(1)));
+                    } else {
+                        sb.append('&').append(entity).append(';');
+                    }
+            }
+            last = semicolon + 1;
+            ampersand = value.indexOf('&', last);
+        }
+        sb.append(value, last, value.length());
+
+        return sb.toString();
+    }
+
+    private static boolean equals(ByteBuffer buffer, int from, int to, byte[] value) {
+        if (to - from != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (buffer.get(from + i) != value[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean nameMatches(ByteBuffer buffer, int from, int to, byte[] localName) {
+        final int end = nameEnd(buffer, from, to);
+        if (end >= to) {
+            return false;
+        }
+
+        return equals(buffer, localNameStart(buffer, from, end), end, localName);
+    }
+
+    private static boolean isNameTerminator(byte b) {
+        return isWhitespace(b) || b == '>' || b == '/';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static boolean isComment(ByteBuffer buffer, int at, int to) {
+        return at + 3 < to && buffer.get(at + 1) == '!' && buffer.get(at + 2) == '-' && buffer.get(at + 3) == '-';
+    }
+
+    private static boolean isCData(ByteBuffer buffer, int at, int to) {
+        return at + CDATA_START.length <= to && equals(buffer, at, at + CDATA_START.length, CDATA_START);
+    }
+
+    /**
+     * Returns the index of the "]]&gt;" which ends the CDATA section starting at the given index or -1 if the
+     * section isn't terminated
+     */
+    private static int findCDataEnd(ByteBuffer buffer, int at, int to) {
+        for (int i = at + CDATA_START.length; i + 2 < to; i++) {
+            if (buffer.get(i) == ']' && buffer.get(i + 1) == ']' && buffer.get(i + 2) == '>') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the index after the comment or CDATA section starting at the given index or -1 if there is none.
+     * Markup inside them must not be mistaken for tags.
+     */
+    private static int skipCommentOrCData(ByteBuffer buffer, int at, int to) {
+        if (isComment(buffer, at, to)) {
+            return skipComment(buffer, at, to);
+        }
+        if (isCData(buffer, at, to)) {
+            final int end = findCDataEnd(buffer, at, to);
+
+            return end < 0 ? to : end + 3;
+        }
+
+        return -1;
+    }
+
+    private static int skipComment(ByteBuffer buffer, int at, int to) {
+        for (int i = at + 4; i + 2 < to; i++) {
+            if (buffer.get(i) == '-' && buffer.get(i + 1) == '-' && buffer.get(i + 2) == '>') {
+                return i + 3;
+            }
+        }
+
+        return to;
+    }
+
+}
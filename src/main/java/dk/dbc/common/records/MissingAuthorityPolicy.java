@@ -0,0 +1,16 @@
+package dk.dbc.common.records;
+
+/**
+ * What {@link ExpandCommonMarcRecord} does when an authority record referenced by a common record isn't found
+ */
+public enum MissingAuthorityPolicy {
+    /**
+     * The expansion fails with a {@link MarcRecordExpandException}
+     */
+    FAIL,
+    /**
+     * The referencing field is kept unexpanded and an e01 field with the error is added, like when an authority
+     * record doesn't match the type of the referencing field
+     */
+    ADD_ERROR_FIELD
+}
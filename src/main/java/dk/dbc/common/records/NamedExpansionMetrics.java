@@ -0,0 +1,87 @@
+package dk.dbc.common.records;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Forwards expansion measurements to named timers, counters and distributions of a metrics library.
+ * <p>
+ * With Micrometer this could be
+ * </p>
+ * <pre>
+ * ExpandCommonMarcRecord.setMetrics(new NamedExpansionMetrics(
+ *         (name, nanos) -&gt; registry.timer(name).record(nanos, TimeUnit.NANOSECONDS),
+ *         (name, count) -&gt; registry.counter(name).increment(count),
+ *         (name, value) -&gt; registry.summary(name).record(value)));
+ * </pre>
+ */
+public class NamedExpansionMetrics implements ExpansionMetrics {
+    public static final String DECODE = "expand.decode";
+    public static final String AUTHORITY_DECODE = "expand.authority.decode";
+    public static final String AUTHORITY_RESOLVE = "expand.authority.resolve";
+    public static final String EXPAND = "expand.expand";
+    public static final String SORT = "expand.sort";
+    public static final String ENCODE = "expand.encode";
+    public static final String AUTHORITY_LINKS = "expand.authority.links";
+    public static final String MISSING_AUTHORITY = "expand.authority.missing";
+    public static final String AUTHORITY_TYPE_MISMATCH = "expand.authority.type.mismatch";
+
+    private final ObjLongConsumer<String> timers;
+    private final ObjLongConsumer<String> counters;
+    private final ObjLongConsumer<String> distributions;
+
+    /**
+     * @param timers        Receives the name of a timer and a time in nanoseconds
+     * @param counters      Receives the name of a counter and the amount to increment it by
+     * @param distributions Receives the name of a distribution and a value
+     */
+    public NamedExpansionMetrics(ObjLongConsumer<String> timers, ObjLongConsumer<String> counters, ObjLongConsumer<String> distributions) {
+        this.timers = timers;
+        this.counters = counters;
+        this.distributions = distributions;
+    }
+
+    @Override
+    public void decodeTime(long nanos) {
+        timers.accept(DECODE, nanos);
+    }
+
+    @Override
+    public void authorityDecodeTime(long nanos) {
+        timers.accept(AUTHORITY_DECODE, nanos);
+    }
+
+    @Override
+    public void resolveTime(long nanos) {
+        timers.accept(AUTHORITY_RESOLVE, nanos);
+    }
+
+    @Override
+    public void expandTime(long nanos) {
+        timers.accept(EXPAND, nanos);
+    }
+
+    @Override
+    public void sortTime(long nanos) {
+        timers.accept(SORT, nanos);
+    }
+
+    @Override
+    public void encodeTime(long nanos) {
+        timers.accept(ENCODE, nanos);
+    }
+
+    @Override
+    public void authorityLinks(int count) {
+        distributions.accept(AUTHORITY_LINKS, count);
+    }
+
+    @Override
+    public void missingAuthority() {
+        counters.accept(MISSING_AUTHORITY, 1);
+    }
+
+    @Override
+    public void authorityTypeMismatch() {
+        counters.accept(AUTHORITY_TYPE_MISMATCH, 1);
+    }
+}
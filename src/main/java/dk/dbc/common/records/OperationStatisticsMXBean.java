@@ -0,0 +1,30 @@
+package dk.dbc.common.records;
+
+/**
+ * JMX view of the statistics of a single operation in an {@link InstrumentationRegistry}
+ */
+public interface OperationStatisticsMXBean {
+
+    long getCount();
+
+    long getErrorCount();
+
+    double getMeanNanos();
+
+    long getMaxNanos();
+
+    long getP50Nanos();
+
+    long getP90Nanos();
+
+    long getP99Nanos();
+
+    long getP999Nanos();
+
+    double getMeanFieldCount();
+
+    /**
+     * @return The mean content size in bytes of the operations which know it, e.g. decode and encode. 0 if none do.
+     */
+    double getMeanByteCount();
+}
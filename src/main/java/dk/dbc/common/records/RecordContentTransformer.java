@@ -6,19 +6,71 @@ import dk.dbc.marc.reader.MarcXchangeV1Reader;
 import dk.dbc.marc.writer.MarcXchangeV1Writer;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 public class RecordContentTransformer {
 
     public static MarcRecord decodeRecord(byte[] content) throws MarcReaderException {
+        final long start = Instrumentation.start();
         final ByteArrayInputStream buf = new ByteArrayInputStream(content);
         final MarcXchangeV1Reader reader = new MarcXchangeV1Reader(buf, StandardCharsets.UTF_8);
 
-        return reader.read();
+        final MarcRecord marcRecord;
+        try {
+            marcRecord = reader.read();
+        } catch (MarcReaderException e) {
+            Instrumentation.error(Instrumentation.DECODE);
+            throw e;
+        }
+        Instrumentation.stop(Instrumentation.DECODE, start, marcRecord, content.length);
+
+        return marcRecord;
+    }
+
+    /**
+     * Decodes only the fields accepted by the filter. Fields which are not accepted are skipped without being
+     * decoded, which makes this considerably cheaper than a full decode when only a few fields are needed.
+     *
+     * @param content   MarcXchange content. If the content is a collection the first record is decoded.
+     * @param tagFilter Filter deciding which fields to decode
+     * @return Record with the leader and the accepted fields in record order
+     * @throws MarcReaderException If the content doesn't contain a record or an accepted field is malformed
+     */
+    public static MarcRecord decodeRecord(byte[] content, TagFilter tagFilter) throws MarcReaderException {
+        final long start = Instrumentation.start();
+        final MarcRecord marcRecord;
+        try {
+            marcRecord = MarcXchangeScanner.decodeRecord(ByteBuffer.wrap(content), 0, content.length, tagFilter);
+        } catch (IllegalArgumentException e) {
+            Instrumentation.error(Instrumentation.DECODE);
+            throw new MarcReaderException(e.getMessage());
+        }
+        if (marcRecord == null) {
+            Instrumentation.error(Instrumentation.DECODE);
+            throw new MarcReaderException("The content doesn't contain a MarcXchange record");
+        }
+        Instrumentation.stop(Instrumentation.DECODE, start, marcRecord, content.length);
+
+        return marcRecord;
     }
 
     public static byte[] encodeRecord(MarcRecord marcRecord) {
+        final long start = Instrumentation.start();
         MarcXchangeV1Writer marcXchangeV1Writer = new MarcXchangeV1Writer();
-        return marcXchangeV1Writer.write(marcRecord, StandardCharsets.UTF_8);
+        final byte[] content;
+        try {
+            content = marcXchangeV1Writer.write(marcRecord, StandardCharsets.UTF_8);
+        } catch (RuntimeException e) {
+            Instrumentation.error(Instrumentation.ENCODE);
+            throw e;
+        }
+        Instrumentation.stop(Instrumentation.ENCODE, start, marcRecord, content.length);
+
+        return content;
+    }
+
+    public static byte[] encodeRecord(FrozenMarcRecord frozenMarcRecord) {
+        return encodeRecord(frozenMarcRecord.view());
     }
 }
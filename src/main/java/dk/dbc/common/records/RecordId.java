@@ -0,0 +1,46 @@
+package dk.dbc.common.records;
+
+import java.util.Objects;
+
+/**
+ * Identity of a record, i.e. the values of 001 *a and 001 *b
+ */
+public class RecordId {
+    private final String recordId;
+    private final int agencyId;
+
+    public RecordId(String recordId, int agencyId) {
+        this.recordId = Objects.requireNonNull(recordId);
+        this.agencyId = agencyId;
+    }
+
+    public String getRecordId() {
+        return recordId;
+    }
+
+    public int getAgencyId() {
+        return agencyId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final RecordId that = (RecordId) o;
+        return agencyId == that.agencyId && recordId.equals(that.recordId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * recordId.hashCode() + agencyId;
+    }
+
+    @Override
+    public String toString() {
+        return recordId + ":" + agencyId;
+    }
+}
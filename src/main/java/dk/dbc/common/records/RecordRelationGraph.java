@@ -0,0 +1,389 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.MarcRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Graph of the parent/child relations between records, e.g. volume/section/head structures.
+ * <p>
+ * The relations are found with {@link MarcRecordReader#getParentRecordId()} and
+ * {@link MarcRecordReader#getParentAgencyId()}, so the same rules apply as when looking up a single parent. A
+ * parent which isn't added itself is still part of the graph, but has no parent of its own.
+ * </p>
+ * <p>
+ * The graph is held in primitive arrays. Parent, root and depth lookups and checking whether a record is a
+ * descendant of another are constant time. The descendants of a record are stored next to each other, so
+ * getting them costs only the size of the result. If the relations contain a cycle the relation which closes
+ * the cycle is ignored.
+ * </p>
+ */
+public class RecordRelationGraph {
+    private static final int MAGIC = 0x52524731; // "RRG1"
+
+    private final String[] recordIds;
+    private final int[] agencyIds;
+    private final int[] parents;
+    private final int[] slots;
+    private final int[] childStarts;
+    private final int[] children;
+    private final int[] preorder;
+    private final int[] order;
+    private final int[] subtreeSizes;
+    private final int[] roots;
+    private final int[] depths;
+
+    private RecordRelationGraph(int size, String[] recordIds, int[] agencyIds, int[] parents, int[] slots) {
+        this.recordIds = Arrays.copyOf(recordIds, size);
+        this.agencyIds = Arrays.copyOf(agencyIds, size);
+        this.parents = Arrays.copyOf(parents, size);
+        this.slots = slots;
+        breakCycles();
+
+        childStarts = new int[size + 1];
+        for (int node = 0; node < size; node++) {
+            if (this.parents[node] >= 0) {
+                childStarts[this.parents[node] + 1]++;
+            }
+        }
+        for (int node = 0; node < size; node++) {
+            childStarts[node + 1] += childStarts[node];
+        }
+        children = new int[childStarts[size]];
+        final int[] next = Arrays.copyOf(childStarts, size);
+        for (int node = 0; node < size; node++) {
+            if (this.parents[node] >= 0) {
+                children[next[this.parents[node]]++] = node;
+            }
+        }
+
+        preorder = new int[size];
+        order = new int[size];
+        subtreeSizes = new int[size];
+        roots = new int[size];
+        depths = new int[size];
+        final int[] stack = new int[size];
+        int position = 0;
+        for (int root = 0; root < size; root++) {
+            if (this.parents[root] >= 0) {
+                continue;
+            }
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                final int node = stack[--top];
+                final int parent = this.parents[node];
+                preorder[node] = position;
+                order[position++] = node;
+                roots[node] = parent < 0 ? node : roots[parent];
+                depths[node] = parent < 0 ? 0 : depths[parent] + 1;
+                for (int i = childStarts[node + 1] - 1; i >= childStarts[node]; i--) {
+                    stack[top++] = children[i];
+                }
+            }
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            final int node = order[i];
+            subtreeSizes[node]++;
+            if (this.parents[node] >= 0) {
+                subtreeSizes[this.parents[node]] += subtreeSizes[node];
+            }
+        }
+    }
+
+    private void breakCycles() {
+        final int[] walks = new int[parents.length];
+        for (int start = 0; start < parents.length; start++) {
+            int node = start;
+            int previous = -1;
+            while (node >= 0 && walks[node] == 0) {
+                walks[node] = start + 1;
+                previous = node;
+                node = parents[node];
+            }
+            if (node >= 0 && walks[node] == start + 1) {
+                parents[previous] = -1;
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Number of records in the graph, including parents which weren't added themselves
+     */
+    public int size() {
+        return recordIds.length;
+    }
+
+    public boolean contains(String recordId, int agencyId) {
+        return find(slots, recordIds, agencyIds, recordId, agencyId) >= 0;
+    }
+
+    /**
+     * @return The parent of the record or <code>null</code> if the record has no parent or isn't in the graph
+     */
+    public RecordId getParent(String recordId, int agencyId) {
+        final int node = find(slots, recordIds, agencyIds, recordId, agencyId);
+        return node < 0 || parents[node] < 0 ? null : recordId(parents[node]);
+    }
+
+    /**
+     * @return The top of the hierarchy the record is part of (the record itself if it has no parent) or
+     * <code>null</code> if the record isn't in the graph
+     */
+    public RecordId getRoot(String recordId, int agencyId) {
+        final int node = find(slots, recordIds, agencyIds, recordId, agencyId);
+        return node < 0 ? null : recordId(roots[node]);
+    }
+
+    /**
+     * @return Number of levels above the record, or -1 if the record isn't in the graph
+     */
+    public int getDepth(String recordId, int agencyId) {
+        final int node = find(slots, recordIds, agencyIds, recordId, agencyId);
+        return node < 0 ? -1 : depths[node];
+    }
+
+    /**
+     * @return The ancestors of the record, nearest first
+     */
+    public List<RecordId> getAncestors(String recordId, int agencyId) {
+        final int node = find(slots, recordIds, agencyIds, recordId, agencyId);
+        if (node < 0) {
+            return Collections.emptyList();
+        }
+        final List<RecordId> result = new ArrayList<>(depths[node]);
+        for (int parent = parents[node]; parent >= 0; parent = parents[parent]) {
+            result.add(recordId(parent));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return The records which point directly to the record
+     */
+    public List<RecordId> getChildren(String recordId, int agencyId) {
+        final int node = find(slots, recordIds, agencyIds, recordId, agencyId);
+        if (node < 0) {
+            return Collections.emptyList();
+        }
+        final List<RecordId> result = new ArrayList<>(childStarts[node + 1] - childStarts[node]);
+        for (int i = childStarts[node]; i < childStarts[node + 1]; i++) {
+            result.add(recordId(children[i]));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return All records below the record in depth first order, not including the record itself
+     */
+    public List<RecordId> getDescendants(String recordId, int agencyId) {
+        final int node = find(slots, recordIds, agencyIds, recordId, agencyId);
+        if (node < 0) {
+            return Collections.emptyList();
+        }
+        final int from = preorder[node] + 1;
+        final int to = preorder[node] + subtreeSizes[node];
+        final List<RecordId> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(recordId(order[i]));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if the record is below the ancestor in the hierarchy, otherwise <code>false</code>
+     */
+    public boolean isDescendant(String recordId, int agencyId, String ancestorRecordId, int ancestorAgencyId) {
+        final int node = find(slots, recordIds, agencyIds, recordId, agencyId);
+        final int ancestor = find(slots, recordIds, agencyIds, ancestorRecordId, ancestorAgencyId);
+        if (node < 0 || ancestor < 0 || node == ancestor) {
+            return false;
+        }
+
+        return preorder[node] > preorder[ancestor] && preorder[node] < preorder[ancestor] + subtreeSizes[ancestor];
+    }
+
+    private RecordId recordId(int node) {
+        return new RecordId(recordIds[node], agencyIds[node]);
+    }
+
+    /**
+     * Writes the relations to a file which can be loaded with {@link #load(Path)}
+     *
+     * @param file The file to write
+     * @throws IOException If the file can't be written
+     */
+    public void save(Path file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(recordIds.length);
+            for (int node = 0; node < recordIds.length; node++) {
+                output.writeUTF(recordIds[node]);
+                output.writeInt(agencyIds[node]);
+                output.writeInt(parents[node]);
+            }
+        }
+    }
+
+    /**
+     * Loads a graph written by {@link #save(Path)}
+     *
+     * @param file The file to read
+     * @return The graph
+     * @throws IOException If the file can't be read or isn't a saved graph
+     */
+    public static RecordRelationGraph load(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("The file " + file + " is not a record relation graph");
+            }
+            final int size = input.readInt();
+            final String[] recordIds = new String[size];
+            final int[] agencyIds = new int[size];
+            final int[] parents = new int[size];
+            final int[] slots = new int[slotCount(size)];
+            for (int node = 0; node < size; node++) {
+                recordIds[node] = input.readUTF();
+                agencyIds[node] = input.readInt();
+                parents[node] = input.readInt();
+                if (parents[node] < -1 || parents[node] >= size) {
+                    throw new IOException("Invalid parent " + parents[node] + " in " + file);
+                }
+                insert(slots, node, recordIds[node], agencyIds[node]);
+            }
+
+            return new RecordRelationGraph(size, recordIds, agencyIds, parents, slots);
+        }
+    }
+
+    private static int slotCount(int size) {
+        return Integer.highestOneBit(Math.max(size, 8) * 2 - 1) * 2;
+    }
+
+    private static int hash(String recordId, int agencyId) {
+        final int hash = 31 * recordId.hashCode() + agencyId;
+        return hash ^ hash >>> 16;
+    }
+
+    private static int find(int[] slots, String[] recordIds, int[] agencyIds, String recordId, int agencyId) {
+        if (recordId == null) {
+            return -1;
+        }
+        final int mask = slots.length - 1;
+        for (int slot = hash(recordId, agencyId) & mask; slots[slot] != 0; slot = slot + 1 & mask) {
+            final int node = slots[slot] - 1;
+            if (agencyIds[node] == agencyId && recordIds[node].equals(recordId)) {
+                return node;
+            }
+        }
+
+        return -1;
+    }
+
+    private static void insert(int[] slots, int node, String recordId, int agencyId) {
+        final int mask = slots.length - 1;
+        int slot = hash(recordId, agencyId) & mask;
+        while (slots[slot] != 0) {
+            slot = slot + 1 & mask;
+        }
+        slots[slot] = node + 1;
+    }
+
+    /**
+     * Collects the relations of a stream of records. Each record is only read once and not kept.
+     */
+    public static class Builder {
+        private int size = 0;
+        private String[] recordIds = new String[64];
+        private int[] agencyIds = new int[64];
+        private int[] parents = new int[64];
+        private int[] slots = new int[slotCount(64)];
+
+        private Builder() {
+
+        }
+
+        /**
+         * Adds the record and the relation to its parent, if any
+         *
+         * @param marcRecord The record
+         * @return this
+         */
+        public Builder add(MarcRecord marcRecord) {
+            final MarcRecordReader reader = new MarcRecordReader(marcRecord);
+            final String recordId = reader.getRecordId();
+            if (recordId == null) {
+                throw new IllegalArgumentException("The record has no 001 *a");
+            }
+            final String parentRecordId = reader.getParentRecordId();
+
+            return add(recordId, reader.getAgencyIdAsInt(), parentRecordId,
+                    parentRecordId == null ? 0 : reader.getParentAgencyIdAsInt());
+        }
+
+        /**
+         * Adds a record and the relation to its parent. If the record was added before, the new parent replaces
+         * the old one.
+         *
+         * @param recordId       The record id
+         * @param agencyId       The agency id
+         * @param parentRecordId The record id of the parent or <code>null</code> if the record has no parent
+         * @param parentAgencyId The agency id of the parent
+         * @return this
+         */
+        public Builder add(String recordId, int agencyId, String parentRecordId, int parentAgencyId) {
+            final int node = node(recordId, agencyId);
+            parents[node] = parentRecordId == null ? -1 : node(parentRecordId, parentAgencyId);
+
+            return this;
+        }
+
+        private int node(String recordId, int agencyId) {
+            final int existing = find(slots, recordIds, agencyIds, recordId, agencyId);
+            if (existing >= 0) {
+                return existing;
+            }
+            if (size == recordIds.length) {
+                final int capacity = size * 2;
+                recordIds = Arrays.copyOf(recordIds, capacity);
+                agencyIds = Arrays.copyOf(agencyIds, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+            }
+            if ((size + 1) * 2 > slots.length) {
+                slots = new int[slots.length * 2];
+                for (int i = 0; i < size; i++) {
+                    insert(slots, i, recordIds[i], agencyIds[i]);
+                }
+            }
+            final int node = size++;
+            recordIds[node] = recordId;
+            agencyIds[node] = agencyId;
+            parents[node] = -1;
+            insert(slots, node, recordId, agencyId);
+
+            return node;
+        }
+
+        public RecordRelationGraph build() {
+            return new RecordRelationGraph(size, recordIds, agencyIds, parents, slots.clone());
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package dk.dbc.common.records;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opt-in scope for batch jobs which lets the expansion and merge functions reuse their working objects between the
+ * records handled by a thread.
+ * <p>
+ * While a scope is open on the current thread, {@link ExpandCommonMarcRecord} and {@link DanMARC2Merger} take the
+ * builders used to order the fields of the result from a pool belonging to the thread instead of allocating them for
+ * each record. The builders are released all at once when the scope is closed, so open a scope for each batch item:
+ * </p>
+ * <pre>
+ * for (MarcRecord commonRecord : batch) {
+ *     try (RecordScope scope = RecordScope.open()) {
+ *         final MarcRecord expanded = ExpandCommonMarcRecord.expandMarcRecord(commonRecord, authorityRecords, false);
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * The fields and subfields of the results are not pooled, as they are part of the returned records and may be shared
+ * with the input records. Scopes can be nested, in which case the builders are released when the outermost scope is
+ * closed. A scope must be closed by the thread which opened it.
+ * </p>
+ * <p>
+ * Only threads which open a scope get a pool, which they keep for the following scopes. Other threads, e.g. virtual
+ * threads handling a single request, allocate nothing up front. The asynchronous expansions, e.g.
+ * {@link ExpandCommonMarcRecord#expandMarcRecordAsync}, expand the record on the thread which completes the authority
+ * lookup. They use the scope of that thread, not a scope opened by the caller.
+ * </p>
+ */
+public final class RecordScope implements AutoCloseable {
+    private static final ThreadLocal<RecordScope> SCOPE = new ThreadLocal<>();
+
+    private final Pool byTag = new Pool(false);
+    private final Pool byTagAndAa = new Pool(true);
+    private int depth = 0;
+
+    private RecordScope() {
+
+    }
+
+    /**
+     * Opens a scope on the current thread
+     *
+     * @return The scope, which must be closed when the batch item is done
+     */
+    public static RecordScope open() {
+        RecordScope scope = SCOPE.get();
+        if (scope == null) {
+            scope = new RecordScope();
+            SCOPE.set(scope);
+        }
+        scope.depth++;
+
+        return scope;
+    }
+
+    /**
+     * @return <code>true</code> if a scope is open on the current thread
+     */
+    public static boolean isOpen() {
+        final RecordScope scope = SCOPE.get();
+
+        return scope != null && scope.depth > 0;
+    }
+
+    /**
+     * @param orderByAa <code>true</code> for a builder ordering by tag and *å, see {@link SortedFieldBuilder#byTagAndAa()}
+     * @return A pooled builder if a scope is open on the current thread, otherwise a new builder
+     */
+    static SortedFieldBuilder sortedFieldBuilder(boolean orderByAa) {
+        final RecordScope scope = SCOPE.get();
+        if (scope == null || scope.depth == 0) {
+            return new SortedFieldBuilder(orderByAa);
+        }
+
+        return (orderByAa ? scope.byTagAndAa : scope.byTag).acquire();
+    }
+
+    @Override
+    public void close() {
+        if (depth == 0) {
+            throw new IllegalStateException("The scope isn't open on this thread");
+        }
+        depth--;
+        if (depth == 0) {
+            byTag.releaseAll();
+            byTagAndAa.releaseAll();
+        }
+    }
+
+    private static class Pool {
+        private final boolean orderByAa;
+        private final List<SortedFieldBuilder> builders = new ArrayList<>();
+        private int used = 0;
+
+        private Pool(boolean orderByAa) {
+            this.orderByAa = orderByAa;
+        }
+
+        private SortedFieldBuilder acquire() {
+            if (used == builders.size()) {
+                builders.add(new SortedFieldBuilder(orderByAa));
+            }
+
+            return builders.get(used++);
+        }
+
+        private void releaseAll() {
+            for (int i = 0; i < used; i++) {
+                builders.get(i).clear();
+            }
+            used = 0;
+        }
+    }
+
+}
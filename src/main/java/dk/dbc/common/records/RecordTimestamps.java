@@ -0,0 +1,93 @@
+package dk.dbc.common.records;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Source of the timestamps written to 001 *c and *d by {@link MarcRecordWriter}.
+ * <p>
+ * The time is read from a {@link Clock}, so tests and replay jobs can use a fixed clock. The formatted values are
+ * cached for the current second, so writing timestamps to many records doesn't format the time for each record.
+ * An instance can be shared between threads. Use {@link #fixed()} to stamp a batch of records with the same time:
+ * </p>
+ * <pre>
+ * final RecordTimestamps batchTime = RecordTimestamps.systemDefault().fixed();
+ * for (MarcRecord marcRecord : batch) {
+ *     new MarcRecordWriter(marcRecord, batchTime).setChangedTimestamp();
+ * }
+ * </pre>
+ */
+public final class RecordTimestamps {
+    private static final DateTimeFormatter CREATION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter CHANGED_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final RecordTimestamps SYSTEM_DEFAULT = new RecordTimestamps(Clock.systemDefaultZone());
+
+    private final Clock clock;
+    private volatile Formatted formatted;
+
+    /**
+     * @param clock The clock giving the time and time zone of the timestamps
+     */
+    public RecordTimestamps(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return Timestamps using the system clock in the default time zone
+     */
+    public static RecordTimestamps systemDefault() {
+        return SYSTEM_DEFAULT;
+    }
+
+    /**
+     * @return Timestamps which all use the current time of this clock
+     */
+    public RecordTimestamps fixed() {
+        return new RecordTimestamps(Clock.fixed(clock.instant(), clock.getZone()));
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return The current date as yyyyMMdd, as used in 001 *d
+     */
+    public String creationTimestamp() {
+        return current().creation;
+    }
+
+    /**
+     * @return The current time as yyyyMMddHHmmss, as used in 001 *c
+     */
+    public String changedTimestamp() {
+        return current().changed;
+    }
+
+    private Formatted current() {
+        final long epochSecond = Math.floorDiv(clock.millis(), 1000);
+        Formatted result = formatted;
+        if (result == null || result.epochSecond != epochSecond) {
+            // Racing threads format the same second, so it doesn't matter which of them is kept
+            result = new Formatted(epochSecond, LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), clock.getZone()));
+            formatted = result;
+        }
+
+        return result;
+    }
+
+    private static class Formatted {
+        private final long epochSecond;
+        private final String creation;
+        private final String changed;
+
+        private Formatted(long epochSecond, LocalDateTime dateTime) {
+            this.epochSecond = epochSecond;
+            this.creation = dateTime.format(CREATION_FORMAT);
+            this.changed = dateTime.format(CHANGED_FORMAT);
+        }
+    }
+
+}
@@ -3,6 +3,8 @@ package dk.dbc.common.records;
 import dk.dbc.marc.binding.Field;
 
 import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
 
 /**
  * Class to sort the fields in a MarcRecord.
@@ -14,6 +16,55 @@ public class SortFieldByTag implements Comparator<Field> {
 
     @Override
     public int compare(Field o1, Field o2) {
-        return o1.getTag().compareTo(o2.getTag());
+        return TagRegistry.compare(o1.getTag(), o2.getTag());
+    }
+
+    /**
+     * Stable counting sort of the fields by tag id, which gives the same result as sorting with this comparator.
+     * Fields which are already in order are left alone.
+     *
+     * @param fields The fields to sort
+     * @return <code>false</code> if a tag has no id in the {@link TagRegistry}, in which case the fields are
+     * unchanged and must be sorted with the comparator
+     */
+    static boolean sortByTagId(List<Field> fields) {
+        final int size = fields.size();
+        final int[] ids = new int[size];
+        boolean sorted = true;
+        int previous = 0;
+        int i = 0;
+        for (Field field : fields) {
+            final int id = TagRegistry.id(field.getTag());
+            if (id < 0) {
+                return false;
+            }
+            sorted = sorted && id >= previous;
+            ids[i++] = id;
+            previous = id;
+        }
+        if (sorted) {
+            return true;
+        }
+
+        // Start position of each tag id in the result
+        final int[] positions = new int[TagRegistry.size() + 1];
+        for (int id : ids) {
+            positions[id + 1]++;
+        }
+        for (int id = 1; id < positions.length; id++) {
+            positions[id] += positions[id - 1];
+        }
+        final Field[] result = new Field[size];
+        i = 0;
+        for (Field field : fields) {
+            result[positions[ids[i++]]++] = field;
+        }
+        final ListIterator<Field> iterator = fields.listIterator();
+        for (Field field : result) {
+            iterator.next();
+            iterator.set(field);
+        }
+
+        return true;
     }
 }
@@ -0,0 +1,131 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.Field;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Collects fields and returns them in tag order, as a stable sort of the fields would.
+ * <p>
+ * Each field gets a key of the {@link TagRegistry} id of the tag, the *å key of {@link FieldSorter#aaValue(Field)}
+ * when ordering by *å, and the position the field was added at. The keys are sorted once when the fields are
+ * built, which is skipped when the fields were added in order. Fields with tags which have no id are ordered with
+ * a comparator instead.
+ * </p>
+ */
+public class SortedFieldBuilder {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int POSITION_BITS = 21;
+    private static final int AA_BITS = 32;
+    private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+    private static final long AA_MASK = (1L << AA_BITS) - 1;
+
+    private final boolean orderByAa;
+    private Field[] fields = new Field[INITIAL_CAPACITY];
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int size = 0;
+    private boolean ordered = true;
+    // false when a tag has no id or the positions don't fit in the key
+    private boolean packed = true;
+
+    SortedFieldBuilder(boolean orderByAa) {
+        this.orderByAa = orderByAa;
+    }
+
+    /**
+     * @return Builder ordering the fields by tag, keeping the order in which they were added within a tag
+     */
+    public static SortedFieldBuilder byTag() {
+        return new SortedFieldBuilder(false);
+    }
+
+    /**
+     * @return Builder ordering the fields by tag and then by subfield *å, as for expanded records
+     */
+    public static SortedFieldBuilder byTagAndAa() {
+        return new SortedFieldBuilder(true);
+    }
+
+    public SortedFieldBuilder add(Field field) {
+        if (size == fields.length) {
+            fields = Arrays.copyOf(fields, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        final int id = TagRegistry.id(field.getTag());
+        if (id < 0 || size > POSITION_MASK) {
+            packed = false;
+        }
+        // Offset by the sign, so negative values order before positive values
+        final long aaKey = orderByAa ? (long) FieldSorter.aaValue(field) - Integer.MIN_VALUE : 0;
+        final long key = (long) Math.max(id, 0) << (AA_BITS + POSITION_BITS) | aaKey << POSITION_BITS | size & POSITION_MASK;
+        if (size > 0 && keys[size - 1] > key) {
+            ordered = false;
+        }
+        fields[size] = field;
+        keys[size] = key;
+        size++;
+
+        return this;
+    }
+
+    public SortedFieldBuilder addAll(Collection<? extends Field> fields) {
+        for (Field field : fields) {
+            add(field);
+        }
+
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all fields, keeping the arrays so the builder can be reused for the next record
+     */
+    void clear() {
+        Arrays.fill(fields, 0, size, null);
+        size = 0;
+        ordered = true;
+        packed = true;
+    }
+
+    /**
+     * @return The fields in order
+     */
+    public List<Field> build() {
+        final List<Field> result = new ArrayList<>(size);
+        if (!packed) {
+            addByComparator(result);
+            return result;
+        }
+        if (!ordered) {
+            // The keys are unique, so the order is the same as for a stable sort
+            Arrays.sort(keys, 0, size);
+            ordered = true;
+        }
+        for (int i = 0; i < size; i++) {
+            result.add(fields[(int) (keys[i] & POSITION_MASK)]);
+        }
+
+        return result;
+    }
+
+    private void addByComparator(List<Field> result) {
+        final Integer[] positions = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+        }
+        // Sorting objects is stable, so fields with equal keys keep their positions
+        Arrays.sort(positions, Comparator.<Integer, String>comparing(i -> fields[i].getTag(), TagRegistry::compare)
+                .thenComparingLong(i -> keys[i] >>> POSITION_BITS & AA_MASK));
+        for (Integer position : positions) {
+            result.add(fields[position]);
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package dk.dbc.common.records;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Filter on field tags, e.g. for decoding only some of the fields of a record.
+ * <p>
+ * The filter is evaluated once for all tags in the {@link TagRegistry} when it is created, so testing such a tag
+ * is a simple array lookup. Other tags are tested with the original predicate. Create the filter once and reuse it.
+ * </p>
+ */
+public class TagFilter implements Predicate<String> {
+    private final Predicate<String> predicate;
+    private final boolean[] acceptedTags = new boolean[TagRegistry.size()];
+
+    private TagFilter(Predicate<String> predicate) {
+        this.predicate = predicate;
+        for (int i = 0; i < acceptedTags.length; i++) {
+            acceptedTags[i] = predicate.test(TagRegistry.tag(i));
+        }
+    }
+
+    /**
+     * @param tags The tags to accept
+     * @return Filter accepting the given tags only
+     */
+    public static TagFilter of(String... tags) {
+        return of(Arrays.asList(tags));
+    }
+
+    /**
+     * @param tags The tags to accept
+     * @return Filter accepting the given tags only
+     */
+    public static TagFilter of(Collection<String> tags) {
+        final Set<String> tagSet = new HashSet<>(tags);
+
+        return new TagFilter(tagSet::contains);
+    }
+
+    /**
+     * @param predicate Predicate deciding which tags to accept, e.g. based on {@link FieldRules}
+     * @return Filter accepting the tags accepted by the predicate
+     */
+    public static TagFilter of(Predicate<String> predicate) {
+        return new TagFilter(predicate);
+    }
+
+    @Override
+    public boolean test(String tag) {
+        final int id = TagRegistry.id(tag);
+        if (id >= 0) {
+            return acceptedTags[id];
+        }
+
+        return predicate.test(tag);
+    }
+
+    /**
+     * @param id The id of a tag in the {@link TagRegistry}, for a three digit tag its numeric value
+     * @return <code>true</code> if the tag is accepted, otherwise <code>false</code>
+     */
+    public boolean test(int id) {
+        return acceptedTags[id];
+    }
+
+}
@@ -0,0 +1,110 @@
+package dk.dbc.common.records;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonical instances and small int ids of field tags.
+ * <p>
+ * The three digit tags 000-999 have their numeric value as id, and the known letter tags used by DBC (e.g. e01,
+ * d08 and z99) have the ids following 999. The ids are assigned in tag order, so comparing the ids of two tags gives
+ * the same result as comparing the tags. Other tags have no id. Decoders use {@link #canonical(String)}, so all
+ * fields with the same tag share one String instance.
+ * </p>
+ */
+public final class TagRegistry {
+    public static final int NUMERIC_TAG_COUNT = 1000;
+    static final List<String> LETTER_TAGS = Arrays.asList("d08", "d09", "d70", "e01", "f06", "f07", "f21", "g40", "g50", "n51", "n55", "s10", "s11", "s12", "z98", "z99");
+
+    private static final String[] TAGS = new String[NUMERIC_TAG_COUNT + LETTER_TAGS.size()];
+    private static final Map<String, Integer> LETTER_TAG_IDS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < NUMERIC_TAG_COUNT; i++) {
+            TAGS[i] = String.format("%03d", i);
+        }
+        for (int i = 0; i < LETTER_TAGS.size(); i++) {
+            TAGS[NUMERIC_TAG_COUNT + i] = LETTER_TAGS.get(i);
+            LETTER_TAG_IDS.put(LETTER_TAGS.get(i), NUMERIC_TAG_COUNT + i);
+        }
+    }
+
+    private TagRegistry() {
+
+    }
+
+    /**
+     * @return The number of tags with an id, ids are between 0 and this value
+     */
+    public static int size() {
+        return TAGS.length;
+    }
+
+    /**
+     * @param tag The tag
+     * @return The id of the tag, or -1 if the tag has no id
+     */
+    public static int id(String tag) {
+        final int numericTag = numericTag(tag);
+        if (numericTag >= 0 || tag == null || tag.length() != 3) {
+            return numericTag;
+        }
+        final Integer id = LETTER_TAG_IDS.get(tag);
+
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id The id of a tag
+     * @return The canonical instance of the tag
+     */
+    public static String tag(int id) {
+        return TAGS[id];
+    }
+
+    /**
+     * @param tag The tag
+     * @return The canonical instance of the tag, or the tag itself if it has no id
+     */
+    public static String canonical(String tag) {
+        final int id = id(tag);
+
+        return id >= 0 ? TAGS[id] : tag;
+    }
+
+    /**
+     * Compares tags the same way as {@link String#compareTo(String)}, using the ids when both tags have one
+     */
+    public static int compare(String tag1, String tag2) {
+        final int id1 = id(tag1);
+        final int id2 = id(tag2);
+        if (id1 >= 0 && id2 >= 0) {
+            return Integer.compare(id1, id2);
+        }
+
+        return tag1.compareTo(tag2);
+    }
+
+    /**
+     * @param tag The tag
+     * @return The tag as a number between 0 and 999, or -1 if the tag isn't three digits
+     */
+    static int numericTag(String tag) {
+        if (tag == null || tag.length() != 3) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < 3; i++) {
+            final char c = tag.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+
+        return value;
+    }
+
+}
@@ -0,0 +1,52 @@
+package dk.dbc.common.records;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+
+/**
+ * Set of tags, which keeps the tags of the {@link TagRegistry} as bits of their ids, so lookups don't hash strings
+ */
+class TagSet {
+    private final BitSet ids = new BitSet(TagRegistry.size());
+    private final TreeSet<String> others = new TreeSet<>();
+
+    void add(String tag) {
+        final int id = TagRegistry.id(tag);
+        if (id >= 0) {
+            ids.set(id);
+        } else {
+            others.add(tag);
+        }
+    }
+
+    void addAll(Collection<String> tags) {
+        for (String tag : tags) {
+            add(tag);
+        }
+    }
+
+    boolean contains(String tag) {
+        final int id = TagRegistry.id(tag);
+        if (id >= 0) {
+            return ids.get(id);
+        }
+
+        return !others.isEmpty() && others.contains(tag);
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(", ", "[", "]");
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            joiner.add(TagRegistry.tag(id));
+        }
+        for (String tag : others) {
+            joiner.add(tag);
+        }
+
+        return joiner.toString();
+    }
+
+}
@@ -0,0 +1,179 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.MarcRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Changeable version of a {@link FrozenMarcRecord}, which shares the fields with the snapshot until they are changed.
+ * <p>
+ * A field is copied the first time it is returned for editing by {@link #editField(String)} or
+ * {@link #editFields(String)}, and the record keeps track of the fields it has copied or which have been added.
+ * {@link #freeze()} shares all other fields with the new snapshot without looking at them, so only the changed fields
+ * are copied. Use {@link #toMarcRecord()} for operations which take a {@link MarcRecord}.
+ * </p>
+ * <p>
+ * The object is not thread-safe.
+ * </p>
+ */
+public final class ThawedMarcRecord {
+    private final String leaderData;
+    private final String type;
+    private final String format;
+    private final List<Field> fields;
+    // The fields which are not shared with a snapshot, i.e. the edited and added fields
+    private final Set<Field> ownFields = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    ThawedMarcRecord(String leaderData, String type, String format, List<Field> fields) {
+        this.leaderData = leaderData;
+        this.type = type;
+        this.format = format;
+        this.fields = new ArrayList<>(fields);
+    }
+
+    public String getLeaderData() {
+        return leaderData;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public int size() {
+        return fields.size();
+    }
+
+    public boolean hasField(String tag) {
+        for (Field field : fields) {
+            if (tag.equals(field.getTag())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param tag  The field tag
+     * @param code The subfield code
+     * @return The value of the first subfield with the code in the fields with the tag, <code>null</code> if there
+     * is none
+     */
+    public String getValue(String tag, char code) {
+        return FrozenMarcRecord.getValue(fields, tag, code);
+    }
+
+    /**
+     * @param tag  The field tag
+     * @param code The subfield code
+     * @return All values of the subfield in the fields with the tag, in record order
+     */
+    public List<String> getValues(String tag, char code) {
+        return FrozenMarcRecord.getValues(fields, tag, code);
+    }
+
+    /**
+     * @param tag The field tag
+     * @return The first field with the tag, which can be changed, or <code>null</code> if there is no such field
+     */
+    public DataField editField(String tag) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i) instanceof DataField && tag.equals(fields.get(i).getTag())) {
+                return edit(i);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param tag The field tag
+     * @return The fields with the tag in record order, which can be changed
+     */
+    public List<DataField> editFields(String tag) {
+        final List<DataField> result = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i) instanceof DataField && tag.equals(fields.get(i).getTag())) {
+                result.add(edit(i));
+            }
+        }
+
+        return result;
+    }
+
+    private DataField edit(int index) {
+        final DataField field = (DataField) fields.get(index);
+        if (ownFields.contains(field)) {
+            return field;
+        }
+        final DataField copy = new DataField(field);
+        fields.set(index, copy);
+        ownFields.add(copy);
+
+        return copy;
+    }
+
+    /**
+     * Adds a field after the existing fields. The field is copied when the record is frozen.
+     *
+     * @param field The field
+     * @return This record
+     */
+    public ThawedMarcRecord addField(Field field) {
+        fields.add(field);
+        ownFields.add(field);
+
+        return this;
+    }
+
+    /**
+     * @param tag The tag of the fields to remove
+     * @return This record
+     */
+    public ThawedMarcRecord removeField(String tag) {
+        fields.removeIf(field -> tag.equals(field.getTag()));
+
+        return this;
+    }
+
+    /**
+     * @return Snapshot of the record, sharing the unchanged fields with the snapshot this record was thawed from
+     */
+    public FrozenMarcRecord freeze() {
+        final List<Field> frozenFields = new ArrayList<>(fields.size());
+        for (Field field : fields) {
+            frozenFields.add(ownFields.contains(field) ? FrozenMarcRecord.copy(field) : field);
+        }
+
+        return FrozenMarcRecord.of(leaderData, type, format, frozenFields);
+    }
+
+    /**
+     * @return A new record with copies of all fields, which can be changed without affecting this record or the
+     * snapshot
+     */
+    public MarcRecord toMarcRecord() {
+        final List<Field> copies = new ArrayList<>(fields.size());
+        for (Field field : fields) {
+            copies.add(FrozenMarcRecord.copy(field));
+        }
+
+        return FrozenMarcRecord.toMarcRecord(leaderData, type, format, copies);
+    }
+
+    @Override
+    public String toString() {
+        return FrozenMarcRecord.toMarcRecord(leaderData, type, format, fields).toString();
+    }
+
+}
@@ -42,6 +42,8 @@ public class UpdateOwnership {
      */
     public static MarcRecord mergeRecord(MarcRecord newRecord, MarcRecord currentRecord) {
         LOGGER.entry(newRecord, currentRecord);
+        final long start = Instrumentation.start();
+        boolean failed = false;
 
         try {
             if (newRecord == null || currentRecord == null) {
@@ -91,10 +93,19 @@ public class UpdateOwnership {
                 newRecord.getFields().add(ownerField);
             }
 
-            newRecord.getFields().sort(new SortFieldByTag());
+            if (!SortFieldByTag.sortByTagId(newRecord.getFields())) {
+                newRecord.getFields().sort(new SortFieldByTag());
+            }
 
             return newRecord;
+        } catch (RuntimeException e) {
+            failed = true;
+            Instrumentation.error(Instrumentation.UPDATE_OWNERSHIP);
+            throw e;
         } finally {
+            if (!failed) {
+                Instrumentation.stop(Instrumentation.UPDATE_OWNERSHIP, start, newRecord, 0);
+            }
             LOGGER.exit(newRecord);
         }
     }
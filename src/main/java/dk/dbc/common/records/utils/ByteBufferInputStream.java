@@ -0,0 +1,63 @@
+package dk.dbc.common.records.utils;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * InputStream view of a ByteBuffer.
+ * <p>
+ * The content is read directly from the buffer (which may be memory mapped) so nothing is copied
+ * apart from what the caller asks for.
+ * </p>
+ */
+public class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    /**
+     * @param buffer The buffer to read from. Only the content between the position and the limit of
+     *               the buffer is read and the buffer itself is not modified.
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+    }
+
+    @Override
+    public int read() {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        final int length = Math.min(len, buffer.remaining());
+        buffer.get(b, off, length);
+
+        return length;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        final int length = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + length);
+
+        return length;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+}
@@ -0,0 +1,116 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class AliasIndexTest {
+
+    private static MarcRecord createRecord(String recordId, String agencyId, DataField aliasField) {
+        final MarcRecord marcRecord = new MarcRecord();
+        marcRecord.getFields().add(new DataField("001", "00")
+                .addSubField(new SubField('a', recordId))
+                .addSubField(new SubField('b', agencyId)));
+        marcRecord.getFields().add(aliasField);
+
+        return marcRecord;
+    }
+
+    private static AliasIndex createIndex() {
+        final AliasIndex.Builder builder = AliasIndex.builder()
+                .add(createRecord("12345678", "870970", new DataField("002", "00")
+                        .addSubField(new SubField('a', "87654321"))
+                        .addSubField(new SubField('a', "11111111"))))
+                .add(createRecord("22222222", "870970", new DataField("002", "00")
+                        .addSubField(new SubField('b', "710100"))
+                        .addSubField(new SubField('c', "local1"))
+                        .addSubField(new SubField('b', "710200"))
+                        .addSubField(new SubField('c', "local2"))));
+        for (int i = 0; i < 100; i++) {
+            builder.add("alias" + i, 870971, "record" + i, 870971);
+        }
+
+        return builder.build();
+    }
+
+    private static void assertIndex(AliasIndex index) {
+        assertThat(index.size(), is(105));
+        assertThat(index.getRecordId("87654321", 870970), is(new RecordId("12345678", 870970)));
+        assertThat(index.getRecordId("11111111", 870970), is(new RecordId("12345678", 870970)));
+        assertThat(index.getRecordId("local1", 710100), is(new RecordId("22222222", 870970)));
+        assertThat(index.getRecordId("local2", 710200), is(new RecordId("22222222", 870970)));
+        assertThat(index.getRecordId("local1", 710200), is(new RecordId("22222222", 870970)));
+        assertThat(index.getRecordId("local2", 710100), nullValue());
+        assertThat(index.getRecordId("12345678", 870970), nullValue());
+        for (int i = 0; i < 100; i++) {
+            assertThat(index.getRecordId("alias" + i, 870971), is(new RecordId("record" + i, 870971)));
+        }
+        assertThat(index.contains("alias100", 870971), is(false));
+    }
+
+    @Test
+    void testBuild() {
+        assertIndex(createIndex());
+    }
+
+    @Test
+    void testSaveAndLoad(@TempDir Path tempDir) throws Exception {
+        final Path file = tempDir.resolve("aliases.idx");
+        createIndex().save(file);
+
+        assertIndex(AliasIndex.load(file));
+    }
+
+    @Test
+    void testEmpty() {
+        final AliasIndex index = AliasIndex.builder().build();
+
+        assertThat(index.size(), is(0));
+        assertThat(index.getRecordId("12345678", 870970), nullValue());
+    }
+
+    @Test
+    void testLoadInvalidHeader(@TempDir Path tempDir) throws Exception {
+        final Path file = tempDir.resolve("invalid.bin");
+        createIndex().save(file);
+        final byte[] content = Files.readAllBytes(file);
+        final int slotCount = ByteBuffer.wrap(content).getInt(8);
+
+        for (int[] header : new int[][]{{3, 2}, {0, 0}, {-slotCount, 2}, {slotCount, slotCount}, {slotCount, -1}}) {
+            final byte[] invalid = content.clone();
+            ByteBuffer.wrap(invalid).putInt(8, header[0]).putInt(12, header[1]);
+            Files.write(file, invalid);
+
+            Assertions.assertThrows(IOException.class, () -> AliasIndex.load(file));
+        }
+
+        Files.write(file, Arrays.copyOf(content, 16 + slotCount * 4 + 4));
+        Assertions.assertThrows(IOException.class, () -> AliasIndex.load(file));
+    }
+
+    @Test
+    void testLoadTooLarge(@TempDir Path tempDir) throws Exception {
+        final Path file = tempDir.resolve("large.bin");
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            // Sparse, so the file doesn't take up any space
+            randomAccessFile.setLength(Integer.MAX_VALUE + 1L);
+        }
+
+        Assertions.assertThrows(IOException.class, () -> AliasIndex.load(file));
+    }
+
+}
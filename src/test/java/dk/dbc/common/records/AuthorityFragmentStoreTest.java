@@ -0,0 +1,198 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import dk.dbc.marc.reader.DanMarc2LineFormatReader;
+import dk.dbc.marc.reader.MarcReaderException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class AuthorityFragmentStoreTest {
+
+    private static List<MarcRecord> loadMarcRecords(String prefix) throws MarcReaderException, IOException {
+        final ClassLoader classLoader = AuthorityFragmentStoreTest.class.getClassLoader();
+        final File directory = new File(Objects.requireNonNull(classLoader.getResource("authority")).getFile());
+        final List<MarcRecord> result = new ArrayList<>();
+        for (File file : Objects.requireNonNull(directory.listFiles((dir, name) -> name.startsWith(prefix)))) {
+            try (InputStream is = new FileInputStream(file)) {
+                result.add(new DanMarc2LineFormatReader(is, StandardCharsets.UTF_8).read());
+            }
+        }
+
+        return result;
+    }
+
+    private static String getRecordId(MarcRecord marcRecord) {
+        return new MarcRecordReader(marcRecord).getRecordId();
+    }
+
+    private static String expand(MarcRecord commonRecord, Map<String, MarcRecord> authorities) {
+        final Map<String, MarcRecord> collection = new HashMap<>(authorities);
+        collection.put(getRecordId(commonRecord), commonRecord);
+        try {
+            return ExpandCommonMarcRecord.expandMarcRecord(collection, getRecordId(commonRecord)).toString();
+        } catch (MarcRecordExpandException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static String expand(MarcRecord commonRecord, AuthorityFragmentStore store) {
+        try {
+            return ExpandCommonMarcRecord.expandMarcRecord(commonRecord, store, false).toString();
+        } catch (MarcRecordExpandException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Test
+    void testExpandWithStore() throws Exception {
+        final Map<String, MarcRecord> authorities = new HashMap<>();
+        final AuthorityFragmentStore.Builder builder = AuthorityFragmentStore.builder();
+        for (MarcRecord authority : loadMarcRecords("authority-")) {
+            authorities.put(getRecordId(authority), authority);
+            builder.add(authority);
+        }
+        final AuthorityFragmentStore store = builder.build();
+        assertThat(store.size(), is(authorities.size()));
+
+        for (MarcRecord raw : loadMarcRecords("raw-")) {
+            assertThat(getRecordId(raw), expand(raw, store), is(expand(raw, authorities)));
+        }
+    }
+
+    @Test
+    void testExpandRecordContentWithStore() throws Exception {
+        final MarcRecord raw = loadMarcRecords("raw-26443784").get(0);
+        final MarcRecord authority = loadMarcRecords("authority-68313686").get(0);
+        final MarcRecord expanded = loadMarcRecords("expanded-26443784").get(0);
+        final AuthorityFragmentStore store = AuthorityFragmentStore.builder().add(authority).build();
+
+        final byte[] content = ExpandCommonMarcRecord.expandRecord(RecordContentTransformer.encodeRecord(raw), store, false);
+
+        assertThat(RecordContentTransformer.decodeRecord(content), is(RecordContentTransformer.decodeRecord(RecordContentTransformer.encodeRecord(expanded))));
+    }
+
+    @Test
+    void testMissingAuthorityRecord() {
+        final MarcRecord commonRecord = new MarcRecord();
+        commonRecord.getFields().add(new DataField("001", "00")
+                .addSubField(new SubField('a', "12345678"))
+                .addSubField(new SubField('b', "870970")));
+        commonRecord.getFields().add(new DataField("100", "00")
+                .addSubField(new SubField('5', "870979"))
+                .addSubField(new SubField('6', "87654321")));
+
+        assertThat(expand(commonRecord, AuthorityFragmentStore.builder().build()),
+                is("Autoritetsposten '87654321' blev ikke fundet i forbindelse med ekspandering af fællesskabsposten"));
+    }
+
+    @Test
+    void testSaveLoadAndRebuild(@TempDir Path tempDir) throws Exception {
+        final List<MarcRecord> authorities = loadMarcRecords("authority-");
+        final AuthorityFragmentStore.Builder builder = AuthorityFragmentStore.builder();
+        for (MarcRecord authority : authorities) {
+            builder.add(authority);
+        }
+        final Path file = tempDir.resolve("fragments.bin");
+        builder.build().save(file);
+
+        final AuthorityFragmentStore loaded = AuthorityFragmentStore.load(file);
+        assertThat(loaded.size(), is(authorities.size()));
+        for (MarcRecord authority : authorities) {
+            final AuthorityFragment expected = new AuthorityRecord(authority).getFragment();
+            final AuthorityFragment actual = loaded.get(getRecordId(authority));
+            assertThat(actual.getMainFields().toString(), is(expected.getMainFields().toString()));
+            assertThat(actual.getAdditionalFields().toString(), is(expected.getAdditionalFields().toString()));
+        }
+
+        // Change one record and remove another, and replace the file which the loaded store is mapped from
+        final MarcRecord changed = authorities.get(authorities.size() - 1);
+        final String changedId = getRecordId(changed);
+        final String removedId = getRecordId(authorities.get(0));
+        final DataField field410 = new DataField("410", "00").addSubField(new SubField('a', "Nyt navn"));
+        changed.getFields().add(field410);
+        loaded.toBuilder()
+                .add(changed)
+                .remove(removedId)
+                .build()
+                .save(file);
+
+        final AuthorityFragmentStore rebuilt = AuthorityFragmentStore.load(file);
+        assertThat(rebuilt.size(), is(authorities.size() - 1));
+        assertThat(rebuilt.contains(removedId), is(false));
+        assertThat(rebuilt.get(removedId), nullValue());
+        final List<DataField> fields910 = rebuilt.get(changedId).getAdditionalFields("410");
+        assertThat(fields910.get(fields910.size() - 1).getTag(), is("910"));
+        assertThat(fields910.get(fields910.size() - 1).getSubFields().get(0).getData(), is("Nyt navn"));
+        for (int i = 1; i < authorities.size(); i++) {
+            assertThat(rebuilt.get(getRecordId(authorities.get(i))), notNullValue());
+        }
+        assertThat(loaded.get(removedId), notNullValue());
+    }
+
+    @Test
+    void testLoadInvalidFile(@TempDir Path tempDir) throws Exception {
+        final Path file = tempDir.resolve("invalid.bin");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+
+        Assertions.assertThrows(IOException.class, () -> AuthorityFragmentStore.load(file));
+    }
+
+    @Test
+    void testLoadInvalidHeader(@TempDir Path tempDir) throws Exception {
+        final AuthorityFragmentStore.Builder builder = AuthorityFragmentStore.builder();
+        for (MarcRecord authority : loadMarcRecords("authority-")) {
+            builder.add(authority);
+        }
+        final Path file = tempDir.resolve("fragments.bin");
+        builder.build().save(file);
+        final byte[] content = Files.readAllBytes(file);
+        final int slotCount = ByteBuffer.wrap(content).getInt(8);
+
+        for (int[] header : new int[][]{{3, 2}, {0, 0}, {-slotCount, 2}, {slotCount, slotCount}, {slotCount, -1}}) {
+            final byte[] invalid = content.clone();
+            ByteBuffer.wrap(invalid).putInt(8, header[0]).putInt(12, header[1]);
+            Files.write(file, invalid);
+
+            Assertions.assertThrows(IOException.class, () -> AuthorityFragmentStore.load(file));
+        }
+
+        Files.write(file, Arrays.copyOf(content, 16 + slotCount * 4 + 4));
+        Assertions.assertThrows(IOException.class, () -> AuthorityFragmentStore.load(file));
+    }
+
+    @Test
+    void testLoadTooLarge(@TempDir Path tempDir) throws Exception {
+        final Path file = tempDir.resolve("large.bin");
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            // Sparse, so the file doesn't take up any space
+            randomAccessFile.setLength(Integer.MAX_VALUE + 1L);
+        }
+
+        Assertions.assertThrows(IOException.class, () -> AuthorityFragmentStore.load(file));
+    }
+
+}
@@ -0,0 +1,104 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import dk.dbc.marc.reader.MarcReaderException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static dk.dbc.common.records.TestRecords.loadMarcRecord;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AuthorityIdExtractorTest {
+    private static final List<String> RAW_RECORDS = Arrays.asList("22642448", "22810804", "26081718", "26443784",
+            "27568602", "47625475", "48141943", "48776108", "48802362", "48867472", "52846943", "53025757", "53161510",
+            "53180485", "53213642", "53214592", "53214827", "53333338", "53356478", "53551173", "90004158", "126350333",
+            "126850298", "130955754", "61777431", "47042143");
+
+    @Test
+    void testFromRecord() throws Exception {
+        final MarcRecord marcRecord = loadMarcRecord("authority/raw-53180485.marc");
+
+        assertThat(new ArrayList<>(AuthorityIdExtractor.fromRecord(marcRecord)), is(Arrays.asList("68560985", "68839734", "68584566", "68900719")));
+        assertThat(new ArrayList<>(AuthorityIdExtractor.fromContent(RecordContentTransformer.encodeRecord(marcRecord))),
+                is(Arrays.asList("68560985", "68839734", "68584566", "68900719")));
+    }
+
+    @Test
+    void testContentAndRecordGiveSameIds() throws Exception {
+        for (String recordId : RAW_RECORDS) {
+            final MarcRecord marcRecord = loadMarcRecord("authority/raw-" + recordId + ".marc");
+            assertThat(recordId, AuthorityIdExtractor.fromContent(RecordContentTransformer.encodeRecord(marcRecord)),
+                    is(AuthorityIdExtractor.fromRecord(marcRecord)));
+        }
+    }
+
+    @Test
+    void testOnlyLinkingFields() {
+        final MarcRecord marcRecord = new MarcRecord();
+        marcRecord.getFields().add(new DataField("100", "00")
+                .addSubField(new SubField('5', "870979"))
+                .addSubField(new SubField('6', "11111111"))
+                .addSubField(new SubField('6', "22222222")));
+        // No *5
+        marcRecord.getFields().add(new DataField("700", "00")
+                .addSubField(new SubField('6', "33333333")));
+        // Not a field which is expanded
+        marcRecord.getFields().add(new DataField("245", "00")
+                .addSubField(new SubField('5', "870979"))
+                .addSubField(new SubField('6', "44444444")));
+        marcRecord.getFields().add(new DataField("845", "00")
+                .addSubField(new SubField('6', "55555555"))
+                .addSubField(new SubField('5', "870979")));
+
+        assertThat(new ArrayList<>(AuthorityIdExtractor.fromRecord(marcRecord)), is(Arrays.asList("11111111", "55555555")));
+    }
+
+    @Test
+    void testFromContentWithPrefixAndEscaping() throws Exception {
+        final String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<marcx:record xmlns:marcx=\"info:lc/xmlns/marcxchange-v1\" format=\"danMARC2\" type=\"Bibliographic\">" +
+                "<marcx:leader>00000n    2200000   4500</marcx:leader>" +
+                "<marcx:controlfield tag=\"005\">x</marcx:controlfield>" +
+                "<marcx:datafield ind1=\"0\" ind2=\"0\" tag=\"600\">" +
+                "<marcx:subfield code='5'>870979</marcx:subfield>" +
+                "<marcx:subfield code=\"&#54;\">a&amp;b</marcx:subfield>" +
+                "</marcx:datafield>" +
+                "<marcx:datafield ind1=\"0\" ind2=\"0\" tag=\"700\">" +
+                "<marcx:subfield code=\"5\">870979</marcx:subfield>" +
+                "<marcx:subfield code=\"6\"/>" +
+                "</marcx:datafield>" +
+                "<marcx:datafield ind1=\"0\" ind2=\"0\" tag=\"710\"/>" +
+                "</marcx:record>";
+
+        assertThat(new ArrayList<>(AuthorityIdExtractor.fromContent(content.getBytes(StandardCharsets.UTF_8))), is(Arrays.asList("a&b", "")));
+    }
+
+    @Test
+    void testBatch() throws Exception {
+        final List<MarcRecord> marcRecords = new ArrayList<>();
+        final List<byte[]> contents = new ArrayList<>();
+        for (String recordId : Arrays.asList("53180485", "26443784", "53161510")) {
+            final MarcRecord marcRecord = loadMarcRecord("authority/raw-" + recordId + ".marc");
+            marcRecords.add(marcRecord);
+            contents.add(RecordContentTransformer.encodeRecord(marcRecord));
+        }
+
+        assertThat(AuthorityIdExtractor.fromRecords(marcRecords).size(), is(8));
+        assertThat(AuthorityIdExtractor.fromContents(contents), is(AuthorityIdExtractor.fromRecords(marcRecords)));
+    }
+
+    @Test
+    void testInvalidContent() {
+        assertThrows(MarcReaderException.class, () -> AuthorityIdExtractor.fromContent("not a record".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(MarcReaderException.class, () -> AuthorityIdExtractor.fromContent("<record><datafield tag=\"100\">".getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
@@ -0,0 +1,81 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class AuthorityRecordTest {
+
+    private static DataField field(String tag, String... codesAndValues) {
+        final DataField dataField = new DataField(tag, "00");
+        for (int i = 0; i < codesAndValues.length; i += 2) {
+            dataField.addSubField(new SubField(codesAndValues[i].charAt(0), codesAndValues[i + 1]));
+        }
+
+        return dataField;
+    }
+
+    private static AuthorityRecord authorityRecord(DataField... fields) {
+        final MarcRecord marcRecord = new MarcRecord();
+        for (DataField dataField : fields) {
+            marcRecord.addField(dataField);
+        }
+
+        return new AuthorityRecord(marcRecord);
+    }
+
+    @Test
+    void testFieldsByTag() {
+        final DataField field100 = field("100", "a", "Fogh Rasmussen", "h", "Anders");
+        final DataField field400a = field("400", "a", "Rasmussen", "h", "Anders Fogh");
+        final DataField field400b = field("400", "a", "Fogh");
+        final AuthorityRecord authorityRecord = authorityRecord(field100, field400a, field400b);
+
+        assertThat(authorityRecord.hasField("100"), is(true));
+        assertThat(authorityRecord.hasField("500"), is(false));
+        assertThat(authorityRecord.getField("100"), is(field100));
+        assertThat(authorityRecord.getField("110"), is(nullValue()));
+        assertThat(authorityRecord.getFields("400").size(), is(2));
+        assertThat(authorityRecord.getFields("400").get(1), is(field400b));
+        assertThat(authorityRecord.getFields("433"), is(Collections.emptyList()));
+    }
+
+    @Test
+    void testHeading100() {
+        assertThat(authorityRecord(field("100", "a", "Fogh Rasmussen", "h", "Anders")).getHeading("100"), is("Fogh Rasmussen, Anders"));
+        assertThat(authorityRecord(field("100", "h", "Anders", "c", "f. 1953")).getHeading("100"), is("Anders (f. 1953)"));
+        assertThat(authorityRecord(field("100", "a", "Fogh", "a", "Rasmussen")).getHeading("100"), is("Fogh"));
+        assertThat(authorityRecord(field("100", "x", "y")).getHeading("100"), is(""));
+        assertThat(authorityRecord(field("110", "a", "DBC")).getHeading("100"), is(nullValue()));
+    }
+
+    @Test
+    void testHeading110() {
+        assertThat(authorityRecord(field("110", "a", "Danmark", "b", "Folketinget")).getHeading("110"), is("Danmark. Folketinget"));
+        assertThat(authorityRecord(field("110", "a", "Kongres", "i", "3", "j", "Aarhus", "c", "Hovedkontoret")).getHeading("110"),
+                is("Kongres (3 : Aarhus). Hovedkontoret"));
+        assertThat(authorityRecord(field("110", "a", "Kongres", "e", "2020")).getHeading("110"), is("Kongres (2020)"));
+        assertThat(authorityRecord(field("110", "e", "2020", "a", "Kongres")).getHeading("110"), is(" (2020). Kongres"));
+        assertThat(authorityRecord(field("133", "a", "Serie")).getHeading("133"), is(nullValue()));
+    }
+
+    @Test
+    void testFragmentCopiesFields() {
+        final DataField field100 = field("100", "a", "Fogh Rasmussen", "h", "Anders");
+        final DataField field400 = field("400", "a", "Rasmussen", "h", "Anders Fogh");
+        final AuthorityFragment fragment = authorityRecord(field100, field400).getFragment();
+        field100.getSubFields().get(0).setData("Jensen");
+        field400.getSubFields().get(0).setData("Jensen");
+
+        assertThat(fragment.getMainField("100"), is(field("100", "a", "Fogh Rasmussen", "h", "Anders")));
+        assertThat(fragment.getAdditionalFields("400").get(0).getSubFields().get(0).getData(), is("Rasmussen"));
+    }
+
+}
@@ -0,0 +1,66 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BatchPredicateEvaluatorTest {
+
+    private static MarcRecord createRecord(String owner, String status, String catalogCode) {
+        final MarcRecord marcRecord = new MarcRecord();
+        marcRecord.getFields().add(new DataField("004", "00").addSubField(new SubField('r', status)));
+        if (catalogCode != null) {
+            marcRecord.getFields().add(new DataField("032", "00").addSubField(new SubField('x', catalogCode)));
+        }
+        marcRecord.getFields().add(new DataField("996", "00").addSubField(new SubField('a', owner)));
+
+        return marcRecord;
+    }
+
+    @Test
+    void testEvaluate() {
+        final List<MarcRecord> records = Arrays.asList(
+                createRecord("DBC", "n", "DBF202101"),
+                createRecord("710100", "d", null),
+                createRecord("RET", "d", "ACC202101"),
+                createRecord("710100", "c", "DBF999999"));
+        final BatchPredicateEvaluator evaluator = BatchPredicateEvaluator.builder()
+                .add("deleted", "004 *r = d")
+                .add("dbf", "032 *a|*x ~ ^DBF\\d{6}")
+                .add("dbc", marcRecord -> new MarcRecordReader(marcRecord).isDBCRecord())
+                .add("owner", "996a")
+                .build();
+
+        final Map<String, BitSet> result = evaluator.evaluate(records);
+
+        assertThat(result.keySet().toArray(), is(new Object[]{"deleted", "dbf", "dbc", "owner"}));
+        for (int i = 0; i < records.size(); i++) {
+            final MarcRecordReader reader = new MarcRecordReader(records.get(i));
+            assertThat(result.get("deleted").get(i), is(reader.markedForDeletion()));
+            assertThat(result.get("dbc").get(i), is(reader.isDBCRecord()));
+            assertThat(result.get("owner").get(i), is(true));
+        }
+        assertThat(result.get("dbf").get(0), is(true));
+        assertThat(result.get("dbf").get(1), is(false));
+        assertThat(result.get("dbf").get(2), is(false));
+        assertThat(result.get("dbf").get(3), is(true));
+    }
+
+    @Test
+    void testDuplicateName() {
+        final BatchPredicateEvaluator.Builder builder = BatchPredicateEvaluator.builder().add("deleted", "004 *r = d");
+
+        assertThrows(IllegalArgumentException.class, () -> builder.add("deleted", marcRecord -> true));
+    }
+
+}
@@ -1,26 +1,25 @@
 package dk.dbc.common.records;
 
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Leader;
 import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import dk.dbc.marc.reader.DanMarc2LineFormatReader;
 import dk.dbc.marc.reader.MarcReaderException;
-import dk.dbc.marc.reader.MarcXchangeV1Reader;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 
+import static dk.dbc.common.records.TestRecords.loadMarcXchangeRecord;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -49,9 +48,9 @@ public class DanMARC2MergerTest {
                 overwriteCollectionsInit(overwriteString), collectionInit(invalidString), valid_regex);
         final boolean isFinal = Boolean.parseBoolean(isFinalString);
 
-        final MarcRecord common = loadMarcRecord("dk.dbc.marcxmerger/" + base + "/common.xml");
-        final MarcRecord local = loadMarcRecord("dk.dbc.marcxmerger/" +base + "/local.xml");
-        final MarcRecord result = loadMarcRecord("dk.dbc.marcxmerger/" +base + "/result.xml");
+        final MarcRecord common = loadMarcXchangeRecord("dk.dbc.marcxmerger/" + base + "/common.xml");
+        final MarcRecord local = loadMarcXchangeRecord("dk.dbc.marcxmerger/" +base + "/local.xml");
+        final MarcRecord result = loadMarcXchangeRecord("dk.dbc.marcxmerger/" +base + "/result.xml");
         final DanMARC2Merger marcxMerger = new DanMARC2Merger(fieldRulesIntermediate, "custom");
         final MarcRecord merge = marcxMerger.merge(common, local, isFinal);
 
@@ -60,15 +59,42 @@ public class DanMARC2MergerTest {
 
     @Test
     void testMergeDefaultRules() throws Exception {
-        final MarcRecord common = loadMarcRecord("dk.dbc.marcxmerger/defaultRules/common.xml");
-        final MarcRecord local = loadMarcRecord("dk.dbc.marcxmerger/defaultRules/local.xml");
-        final MarcRecord result = loadMarcRecord("dk.dbc.marcxmerger/defaultRules/result.xml");
+        final MarcRecord common = loadMarcXchangeRecord("dk.dbc.marcxmerger/defaultRules/common.xml");
+        final MarcRecord local = loadMarcXchangeRecord("dk.dbc.marcxmerger/defaultRules/local.xml");
+        final MarcRecord result = loadMarcXchangeRecord("dk.dbc.marcxmerger/defaultRules/result.xml");
         final DanMARC2Merger marcxMerger = new DanMARC2Merger();
         final MarcRecord merge = marcxMerger.merge(common, local, true);
 
         assertThat(merge, is(result));
     }
 
+    @Test
+    void testMergeUnsortedRecords() {
+        final MarcRecord common = new MarcRecord()
+                .setLeader(new Leader().setData(DanMarc2LineFormatReader.DEFAULT_LEADER))
+                .addField(new DataField("001", "00").addSubField(new SubField('a', "common")))
+                .addField(new DataField("245", "00").addSubField(new SubField('a', "common 1")))
+                .addField(new DataField("100", "00").addSubField(new SubField('a', "common")))
+                .addField(new DataField("245", "00").addSubField(new SubField('a', "common 2")))
+                .addField(new DataField("652", "00").addSubField(new SubField('a', "common")));
+        final MarcRecord local = new MarcRecord()
+                .addField(new DataField("990", "00").addSubField(new SubField('a', "local")))
+                .addField(new DataField("245", "00").addSubField(new SubField('a', "local")));
+        final DanMARC2Merger marcxMerger = new DanMARC2Merger(new FieldRules(collectionInit(""),
+                overwriteCollectionsInit(""), collectionInit(""), ".*"), "custom");
+
+        final MarcRecord merge = marcxMerger.merge(common, local, false);
+
+        assertThat(merge.getFields(), is(Arrays.asList(
+                common.getFields().get(0),
+                common.getFields().get(2),
+                common.getFields().get(1),
+                common.getFields().get(3),
+                local.getFields().get(1),
+                common.getFields().get(4),
+                local.getFields().get(0))));
+    }
+
     private static Map<String, Set<String>> overwriteCollectionsInit(String init) {
         Map<String, Set<String>> map = new HashMap<>();
         String[] groups = init.split(";");
@@ -91,14 +117,4 @@ public class DanMARC2MergerTest {
         Collections.addAll(set, init.split(";"));
         return set;
     }
-
-    private static MarcRecord loadMarcRecord(String filename) throws MarcReaderException, IOException {
-        final ClassLoader classLoader = DanMARC2MergerTest.class.getClassLoader();
-        final File file = new File(Objects.requireNonNull(classLoader.getResource(filename)).getFile());
-        final InputStream is = new FileInputStream(file);
-
-        final MarcXchangeV1Reader reader = new MarcXchangeV1Reader(is, StandardCharsets.UTF_8);
-
-        return reader.read();
-    }
 }
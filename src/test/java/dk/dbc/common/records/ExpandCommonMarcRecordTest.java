@@ -3,22 +3,25 @@ package dk.dbc.common.records;
 import dk.dbc.marc.binding.DataField;
 import dk.dbc.marc.binding.MarcRecord;
 import dk.dbc.marc.binding.SubField;
-import dk.dbc.marc.reader.DanMarc2LineFormatReader;
 import dk.dbc.marc.reader.MarcReaderException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeoutException;
 
+import static dk.dbc.common.records.TestRecords.loadMarcRecord;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 class ExpandCommonMarcRecordTest {
@@ -145,16 +148,6 @@ class ExpandCommonMarcRecordTest {
 
     private static final String COMMON_SINGLE_RECORD_RESOURCE = "authority/common_enrichment.marc";
 
-    private static MarcRecord loadMarcRecord(String filename) throws MarcReaderException, IOException {
-        final ClassLoader classLoader = ExpandCommonMarcRecordTest.class.getClassLoader();
-        final File file = new File(Objects.requireNonNull(classLoader.getResource(filename)).getFile());
-        final InputStream is = new FileInputStream(file);
-
-        final DanMarc2LineFormatReader lineFormatReader = new DanMarc2LineFormatReader(is, StandardCharsets.UTF_8);
-
-        return lineFormatReader.read();
-    }
-
     @Test
     void expandCommonRecordOk_52846943() throws Exception {
         MarcRecord raw = loadMarcRecord(AUT_RAW_52846943);
@@ -342,6 +335,52 @@ class ExpandCommonMarcRecordTest {
         Assertions.assertThrows(MarcRecordExpandException.class, () -> ExpandCommonMarcRecord.expandMarcRecord(collection, "90004158"));
     }
 
+    @Test
+    void expansionMetrics() throws Exception {
+        final Map<String, Long> timers = new HashMap<>();
+        final Map<String, Long> counters = new HashMap<>();
+        final Map<String, Long> distributions = new HashMap<>();
+        ExpandCommonMarcRecord.setMetrics(new NamedExpansionMetrics(
+                (name, nanos) -> timers.merge(name, 1L, Long::sum),
+                (name, count) -> counters.merge(name, count, Long::sum),
+                (name, value) -> distributions.merge(name, value, Long::sum)));
+        try {
+            final MarcRecord raw = loadMarcRecord(AUT_RAW_90004158);
+            final Map<String, byte[]> authorities = new HashMap<>();
+            authorities.put("68712742", RecordContentTransformer.encodeRecord(loadMarcRecord(AUTHORITY_68712742)));
+            authorities.put("69294685", RecordContentTransformer.encodeRecord(loadMarcRecord(AUTHORITY_69294685)));
+            authorities.put("48872247", RecordContentTransformer.encodeRecord(loadMarcRecord(AUTHORITY_48872247)));
+            ExpandCommonMarcRecord.expandRecord(RecordContentTransformer.encodeRecord(raw), authorities, false);
+
+            final long links = raw.getFields(DataField.class).stream()
+                    .filter(field -> ExpandCommonMarcRecord.AUTHORITY_FIELD_LIST.contains(field.getTag()))
+                    .filter(field -> field.hasSubField(DataField.hasSubFieldCode('5')) && field.hasSubField(DataField.hasSubFieldCode('6')))
+                    .count();
+            assertThat(timers.get(NamedExpansionMetrics.DECODE), is(1L));
+            assertThat(timers.get(NamedExpansionMetrics.AUTHORITY_DECODE), is(3L));
+            assertThat(timers.get(NamedExpansionMetrics.EXPAND), is(1L));
+            assertThat(timers.get(NamedExpansionMetrics.SORT), is(1L));
+            assertThat(timers.get(NamedExpansionMetrics.ENCODE), is(1L));
+            assertThat(distributions.get(NamedExpansionMetrics.AUTHORITY_LINKS), is(links));
+
+            final Map<String, MarcRecord> collection = new HashMap<>();
+            collection.put("22642448", loadMarcRecord(AUT_RAW_22642448_ERROR));
+            collection.put("48872212", loadMarcRecord(AUTHORITY_48872212));
+            collection.put("48872239", loadMarcRecord(AUTHORITY_48872239));
+            collection.put("48872123", loadMarcRecord(AUTHORITY_48872123));
+            collection.put("48872336", loadMarcRecord(AUTHORITY_48872336));
+            collection.put("48872247", loadMarcRecord(AUTHORITY_48872247));
+            final MarcRecord expanded = ExpandCommonMarcRecord.expandMarcRecord(collection, "22642448");
+            assertThat(counters.get(NamedExpansionMetrics.AUTHORITY_TYPE_MISMATCH), is((long) expanded.getFields(DataField.class, MarcRecord.hasTag("e01")).size()));
+
+            collection.remove("48872212");
+            Assertions.assertThrows(MarcRecordExpandException.class, () -> ExpandCommonMarcRecord.expandMarcRecord(collection, "22642448"));
+            assertThat(counters.get(NamedExpansionMetrics.MISSING_AUTHORITY), is(1L));
+        } finally {
+            ExpandCommonMarcRecord.setMetrics(null);
+        }
+    }
+
     @Test
     void expandCommonRecordWithoutAuthorityFields() throws Exception {
         MarcRecord record = loadMarcRecord(COMMON_SINGLE_RECORD_RESOURCE);
@@ -365,6 +404,173 @@ class ExpandCommonMarcRecordTest {
         assertThat(ExpandCommonMarcRecord.expandMarcRecord(collection, "26443784"), is(expanded));
     }
 
+    private static AuthorityResolver createResolver(List<Set<String>> requests, String... filenames) throws Exception {
+        final Map<String, AuthorityRecord> authorities = new HashMap<>();
+        for (String filename : filenames) {
+            final MarcRecord authority = loadMarcRecord(filename);
+            authorities.put(authority.getSubFieldValue("001", 'a').orElseThrow(), new AuthorityRecord(authority));
+        }
+
+        return authorityIds -> {
+            requests.add(authorityIds);
+            final Map<String, AuthorityRecord> result = new HashMap<>();
+            for (String authorityId : authorityIds) {
+                if (authorities.containsKey(authorityId)) {
+                    result.put(authorityId, authorities.get(authorityId));
+                }
+            }
+            return CompletableFuture.completedFuture(result);
+        };
+    }
+
+    @Test
+    void expandMarcRecordWithResolver() throws Exception {
+        MarcRecord raw = loadMarcRecord(AUT_RAW_53180485);
+        MarcRecord expanded = loadMarcRecord(AUT_EXPANDED_53180485);
+        List<Set<String>> requests = new ArrayList<>();
+        AuthorityResolver resolver = createResolver(requests, AUTHORITY_68839734, AUTHORITY_68584566, AUTHORITY_68900719, AUTHORITY_68560985);
+
+        assertThat(ExpandCommonMarcRecord.expandMarcRecord(raw, resolver, Duration.ofSeconds(10), MissingAuthorityPolicy.FAIL, false), is(expanded));
+        assertThat(ExpandCommonMarcRecord.expandMarcRecordAsync(raw, resolver, null, MissingAuthorityPolicy.FAIL, false).get(), is(expanded));
+        // All authority records are fetched in a single call per expansion
+        assertThat(requests.size(), is(2));
+        assertThat(requests.get(0), is(Set.of("68839734", "68584566", "68900719", "68560985")));
+    }
+
+    @Test
+    void expandRecordWithBlockingResolver() throws Exception {
+        MarcRecord raw = loadMarcRecord(AUT_RAW_26443784);
+        MarcRecord expanded = loadMarcRecord(AUT_EXPANDED_26443784);
+        AuthorityResolver resolver = AuthorityResolver.ofBlocking(
+                authorityIds -> Map.of("68313686", new AuthorityRecord(loadAuthority(AUTHORITY_68313686))), ForkJoinPool.commonPool());
+
+        byte[] content = ExpandCommonMarcRecord.expandRecord(RecordContentTransformer.encodeRecord(raw), resolver, Duration.ofSeconds(10), MissingAuthorityPolicy.FAIL, false);
+
+        assertThat(RecordContentTransformer.decodeRecord(content), is(RecordContentTransformer.decodeRecord(RecordContentTransformer.encodeRecord(expanded))));
+    }
+
+    private static MarcRecord loadAuthority(String filename) {
+        try {
+            return loadMarcRecord(filename);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void expandMarcRecordWithResolverWithoutAuthorityReferences() throws Exception {
+        MarcRecord record = loadMarcRecord(COMMON_SINGLE_RECORD_RESOURCE);
+        List<Set<String>> requests = new ArrayList<>();
+
+        assertThat(ExpandCommonMarcRecord.expandMarcRecord(record, createResolver(requests), null, MissingAuthorityPolicy.FAIL, false), is(record));
+        assertThat(requests.size(), is(0));
+    }
+
+    @Test
+    void expandMarcRecordWithResolverMissingAuthority() throws Exception {
+        MarcRecord raw = loadMarcRecord(AUT_RAW_26443784);
+        AuthorityResolver resolver = createResolver(new ArrayList<>());
+
+        MarcRecordExpandException exception = Assertions.assertThrows(MarcRecordExpandException.class,
+                () -> ExpandCommonMarcRecord.expandMarcRecord(raw, resolver, null, MissingAuthorityPolicy.FAIL, false));
+        assertThat(exception.getMessage(), is("Autoritetsposten '68313686' blev ikke fundet i forbindelse med ekspandering af fællesskabsposten"));
+
+        MarcRecord result = ExpandCommonMarcRecord.expandMarcRecord(raw, resolver, null, MissingAuthorityPolicy.ADD_ERROR_FIELD, false);
+        assertThat(result.getFields(DataField.class, MarcRecord.hasTag("e01")).size(), is(2));
+        assertThat(result.getSubFieldValue("e01", 'a'), is(Optional.of("Autoritetsposten '68313686' blev ikke fundet i forbindelse med ekspandering af fællesskabsposten")));
+        for (DataField field : raw.getFields(DataField.class)) {
+            assertThat(field.getTag(), result.getFields().contains(field), is(true));
+        }
+    }
+
+    @Test
+    void expandMarcRecordWithFailingResolver() throws Exception {
+        MarcRecord raw = loadMarcRecord(AUT_RAW_26443784);
+
+        MarcRecordExpandException timeout = Assertions.assertThrows(MarcRecordExpandException.class,
+                () -> ExpandCommonMarcRecord.expandMarcRecord(raw, authorityIds -> new CompletableFuture<>(), Duration.ofMillis(10), MissingAuthorityPolicy.ADD_ERROR_FIELD, false));
+        assertThat(timeout.getCause() instanceof TimeoutException, is(true));
+
+        MarcRecordExpandException failure = Assertions.assertThrows(MarcRecordExpandException.class,
+                () -> ExpandCommonMarcRecord.expandMarcRecord(raw, authorityIds -> CompletableFuture.failedFuture(new IllegalStateException("unavailable")), null, MissingAuthorityPolicy.ADD_ERROR_FIELD, false));
+        assertThat(failure.getMessage(), is("The authority records [68313686] couldn't be resolved: unavailable"));
+    }
+
+    @Test
+    void expandMarcRecordWithPreparedAuthorityRecords() throws Exception {
+        MarcRecord expanded = loadMarcRecord(AUT_EXPANDED_26443784);
+        Map<String, AuthorityRecord> authorities = Map.of("68313686", new AuthorityRecord(loadMarcRecord(AUTHORITY_68313686)));
+
+        // The prepared authority record is reused, so the second expansion must give the same result
+        assertThat(ExpandCommonMarcRecord.expandMarcRecord(loadMarcRecord(AUT_RAW_26443784), authorities, false), is(expanded));
+        assertThat(ExpandCommonMarcRecord.expandMarcRecord(loadMarcRecord(AUT_RAW_26443784), authorities, false), is(expanded));
+        assertThat(authorities.get("68313686").getMarcRecord(), is(loadMarcRecord(AUTHORITY_68313686)));
+    }
+
+    @Test
+    void expandRecordContentWithoutAuthorityLinks() throws Exception {
+        byte[] content = RecordContentTransformer.encodeRecord(loadMarcRecord(COMMON_SINGLE_RECORD_RESOURCE));
+        // The authority content is never decoded, so it doesn't have to be valid
+        Map<String, byte[]> authorities = Map.of("68313686", "not a record".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(ExpandCommonMarcRecord.expandRecord(content, authorities, false), sameInstance(content));
+        assertThat(ExpandCommonMarcRecord.expandRecord(content, AuthorityFragmentStore.builder().build(), false), sameInstance(content));
+        assertThat(ExpandCommonMarcRecord.expandRecordAsync(content, authorityIds -> {
+            throw new IllegalStateException("The resolver shouldn't be called");
+        }, null, MissingAuthorityPolicy.FAIL, false).get(), sameInstance(content));
+    }
+
+    @Test
+    void expandRecordContentWithOnlyAuthorityAgency() throws Exception {
+        MarcRecord record = loadMarcRecord(COMMON_SINGLE_RECORD_RESOURCE);
+        record.getFields().add(new DataField("100", "00").addSubField(new SubField('5', "870979")));
+        byte[] content = RecordContentTransformer.encodeRecord(record);
+
+        byte[] expanded = ExpandCommonMarcRecord.expandRecord(content, Map.of(), false);
+
+        // The content has a *5, so it is expanded as usual
+        assertThat(RecordContentTransformer.decodeRecord(expanded).getFields(),
+                is(ExpandCommonMarcRecord.expandMarcRecord(Map.of("20611529", RecordContentTransformer.decodeRecord(content)), "20611529").getFields()));
+    }
+
+    @Test
+    void expandRecordInvalidContent() {
+        Assertions.assertThrows(MarcReaderException.class,
+                () -> ExpandCommonMarcRecord.expandRecord("not a record".getBytes(StandardCharsets.UTF_8), Map.of(), false));
+    }
+
+    @Test
+    void expandRecordContentWithTwoReferencesToSameAuthorityRecord() throws Exception {
+        MarcRecord raw = loadMarcRecord(AUT_RAW_26443784);
+        MarcRecord expanded = loadMarcRecord(AUT_EXPANDED_26443784);
+        Map<String, byte[]> authorities = Map.of("68313686", RecordContentTransformer.encodeRecord(loadMarcRecord(AUTHORITY_68313686)));
+
+        byte[] content = ExpandCommonMarcRecord.expandRecord(RecordContentTransformer.encodeRecord(raw), authorities, false);
+
+        assertThat(RecordContentTransformer.decodeRecord(content), is(RecordContentTransformer.decodeRecord(RecordContentTransformer.encodeRecord(expanded))));
+    }
+
+    @Test
+    void expandMarcRecordDoesNotShareFields() throws Exception {
+        MarcRecord raw = loadMarcRecord(AUT_RAW_26443784);
+        MarcRecord authority = loadMarcRecord(AUTHORITY_68313686);
+        MarcRecord rawCopy = loadMarcRecord(AUT_RAW_26443784);
+        MarcRecord authorityCopy = loadMarcRecord(AUTHORITY_68313686);
+
+        Map<String, MarcRecord> collection = new HashMap<>();
+        collection.put("26443784", raw);
+        collection.put("68313686", authority);
+        MarcRecord result = ExpandCommonMarcRecord.expandMarcRecord(collection, "26443784");
+        for (DataField field : result.getFields(DataField.class)) {
+            for (SubField subField : field.getSubFields()) {
+                subField.setData("changed");
+            }
+        }
+
+        assertThat(raw, is(rawCopy));
+        assertThat(authority, is(authorityCopy));
+    }
+
     @Test
     void expandLittolkRecordWithDoubleA() throws Exception {
         MarcRecord raw = loadMarcRecord(AUT_RAW_126350333);
@@ -0,0 +1,72 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FieldQueryTest {
+
+    private static MarcRecord createRecord() {
+        final MarcRecord marcRecord = new MarcRecord();
+        marcRecord.getFields().add(new DataField("001", "00")
+                .addSubField(new SubField('a', "12345678"))
+                .addSubField(new SubField('b', "870970")));
+        marcRecord.getFields().add(new DataField("004", "00")
+                .addSubField(new SubField('r', "n"))
+                .addSubField(new SubField('a', "e")));
+        marcRecord.getFields().add(new DataField("032", "00")
+                .addSubField(new SubField('a', "DBF202104"))
+                .addSubField(new SubField('x', "ACC202101"))
+                .addSubField(new SubField('x', "DBF202105")));
+
+        return marcRecord;
+    }
+
+    @Test
+    void testQueries() {
+        final MarcRecord marcRecord = createRecord();
+        final MarcRecordReader reader = new MarcRecordReader(marcRecord);
+
+        assertThat(FieldQuery.compile("001a").getValues(marcRecord), is(Collections.singletonList(reader.getRecordId())));
+        assertThat(FieldQuery.compile("001 *b").getValues(marcRecord), is(Collections.singletonList(reader.getAgencyId())));
+        assertThat(FieldQuery.compile("032 *a|*x ~ ^DBF\\d{6}").getValues(marcRecord), is(Arrays.asList("DBF202104", "DBF202105")));
+        assertThat(FieldQuery.compile("032 x ~ ^DBF").getValues(marcRecord), is(Collections.singletonList("DBF202105")));
+        assertThat(FieldQuery.compile("004").getValues(marcRecord), is(Arrays.asList("n", "e")));
+        assertThat(FieldQuery.compile("004 *r = d").matches(marcRecord), is(reader.markedForDeletion()));
+        assertThat(FieldQuery.compile("004 *r = n").matches(marcRecord), is(true));
+        assertThat(FieldQuery.compile("245a").matches(marcRecord), is(false));
+    }
+
+    @Test
+    void testInvalidQueries() {
+        assertThrows(IllegalArgumentException.class, () -> FieldQuery.compile("00"));
+        assertThrows(IllegalArgumentException.class, () -> FieldQuery.compile("032 *a *x"));
+        assertThrows(IllegalArgumentException.class, () -> FieldQuery.compile("032 *a ~ [DBF"));
+        assertThrows(IllegalArgumentException.class, () -> FieldQuery.compile("032 *"));
+    }
+
+    @Test
+    void testQuerySet() {
+        final MarcRecord marcRecord = createRecord();
+        final FieldQuerySet querySet = FieldQuerySet.compile("001a", "032 *a|*x ~ ^DBF\\d{6}", "004 *r = d", "001b", "032x");
+        final FieldQuerySet.Result result = querySet.evaluate(marcRecord);
+
+        for (int i = 0; i < querySet.size(); i++) {
+            assertThat(result.getValues(i), is(querySet.get(i).getValues(marcRecord)));
+            assertThat(result.matches(i), is(querySet.get(i).matches(marcRecord)));
+        }
+        assertThat(result.getValue(0), is("12345678"));
+        assertThat(result.getValue(2), nullValue());
+        assertThat(result.getValues(4), is(Arrays.asList("ACC202101", "DBF202105")));
+    }
+
+}
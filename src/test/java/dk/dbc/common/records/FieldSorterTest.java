@@ -0,0 +1,40 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.ControlField;
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.SubField;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class FieldSorterTest {
+
+    @Test
+    void testParseIntOrZero() {
+        for (String value : Arrays.asList("0", "12", "-7", "+7", "2147483647", "-2147483648")) {
+            assertThat(FieldSorter.parseIntOrZero(value), is(Integer.parseInt(value)));
+            assertThat(FieldSorter.isInt(value), is(true));
+        }
+        for (String value : Arrays.asList("", "-", "+", "1a", "2147483648", "-2147483649", "99999999999999999999", " 1")) {
+            assertThat(FieldSorter.parseIntOrZero(value), is(0));
+            assertThat(FieldSorter.isInt(value), is(false));
+        }
+    }
+
+    @Test
+    void testAaValue() {
+        assertThat(FieldSorter.aaValue(new DataField("900", "00")
+                .addSubField(new SubField('a', "x"))
+                .addSubField(new SubField('å', "3"))
+                .addSubField(new SubField('å', "5"))), is(3));
+        assertThat(FieldSorter.aaValue(new DataField("900", "00")
+                .addSubField(new SubField('å', "x"))), is(0));
+        assertThat(FieldSorter.aaValue(new DataField("900", "00")
+                .addSubField(new SubField('a', "3"))), is(0));
+        assertThat(FieldSorter.aaValue(new ControlField().setTag("001").setData("3")), is(0));
+    }
+
+}
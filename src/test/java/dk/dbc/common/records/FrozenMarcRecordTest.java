@@ -0,0 +1,136 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import static dk.dbc.common.records.TestRecords.loadMarcRecord;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class FrozenMarcRecordTest {
+    private static final String COMMON_RECORD = "authority/raw-22642448.marc";
+
+    @Test
+    void testFreezeIsIndependentOfSource() throws Exception {
+        final MarcRecord marcRecord = loadMarcRecord(COMMON_RECORD);
+        final MarcRecord expected = loadMarcRecord(COMMON_RECORD);
+        final FrozenMarcRecord frozenMarcRecord = FrozenMarcRecord.freeze(marcRecord);
+
+        new MarcRecordWriter(marcRecord).addOrReplaceSubField("001", 'a', "99999999");
+        new MarcRecordWriter(marcRecord).removeField("245");
+
+        assertThat(frozenMarcRecord.thaw().toMarcRecord(), is(expected));
+        assertThat(frozenMarcRecord.size(), is(expected.getFields().size()));
+        assertThat(frozenMarcRecord.getValue("001", 'a'), is(new MarcRecordReader(expected).getRecordId()));
+        assertThat(frozenMarcRecord.hasField("245"), is(true));
+        assertThat(frozenMarcRecord.getValue("245", '?'), nullValue());
+        assertThat(frozenMarcRecord.getLeaderData(), is(expected.getLeader() == null ? null : expected.getLeader().getData()));
+    }
+
+    @Test
+    void testThawIsIndependentOfSnapshot() throws Exception {
+        final MarcRecord expected = loadMarcRecord(COMMON_RECORD);
+        final FrozenMarcRecord frozenMarcRecord = FrozenMarcRecord.freeze(expected);
+
+        final ThawedMarcRecord thawed = frozenMarcRecord.thaw();
+        assertThat(thawed.toMarcRecord(), is(expected));
+        thawed.editField("001").addOrReplaceFirstSubField(new SubField('a', "99999999"));
+        for (DataField dataField : thawed.editFields("770")) {
+            dataField.getSubFields().add(new SubField('x', "changed"));
+        }
+        thawed.removeField("245");
+        thawed.addField(new DataField("999", "00").addSubField(new SubField('a', "added")));
+
+        assertThat(thawed.getValue("001", 'a'), is("99999999"));
+        assertThat(thawed.getValues("770", 'x').isEmpty(), is(false));
+        assertThat(thawed.hasField("245"), is(false));
+        assertThat(thawed.getValue("999", 'a'), is("added"));
+        assertThat(frozenMarcRecord.thaw().toMarcRecord(), is(expected));
+        assertThat(thawed.freeze(), not(frozenMarcRecord));
+        assertThat(FrozenMarcRecord.freeze(expected), is(frozenMarcRecord));
+
+        final MarcRecord marcRecord = thawed.toMarcRecord();
+        new MarcRecordWriter(marcRecord).addOrReplaceSubField("001", 'a', "11111111");
+        assertThat(thawed.getValue("001", 'a'), is("99999999"));
+    }
+
+    @Test
+    void testFreezeThawedSharesUnchangedFields() throws Exception {
+        final FrozenMarcRecord frozenMarcRecord = FrozenMarcRecord.freeze(loadMarcRecord(COMMON_RECORD));
+        final ThawedMarcRecord thawed = frozenMarcRecord.thaw();
+        final DataField field001 = thawed.editField("001");
+        field001.addOrReplaceFirstSubField(new SubField('a', "99999999"));
+        assertThat(thawed.editField("001"), sameInstance(field001));
+
+        final FrozenMarcRecord refrozen = thawed.freeze();
+        field001.addOrReplaceFirstSubField(new SubField('a', "11111111"));
+        assertThat(refrozen.getValue("001", 'a'), is("99999999"));
+        assertThat(frozenMarcRecord.getValue("001", 'a'), not("99999999"));
+
+        final List<Field> fields = frozenMarcRecord.view().getFields();
+        final List<Field> refrozenFields = refrozen.view().getFields();
+        for (int i = 0; i < fields.size(); i++) {
+            if ("001".equals(fields.get(i).getTag())) {
+                assertThat(refrozenFields.get(i), not(sameInstance(fields.get(i))));
+            } else {
+                assertThat(refrozenFields.get(i), sameInstance(fields.get(i)));
+            }
+        }
+    }
+
+    @Test
+    void testReadOnlyOperations() throws Exception {
+        final MarcRecord marcRecord = loadMarcRecord(COMMON_RECORD);
+        final FrozenMarcRecord frozenMarcRecord = FrozenMarcRecord.freeze(marcRecord);
+        final MarcRecordReader expected = new MarcRecordReader(marcRecord);
+        final MarcRecordReader reader = new MarcRecordReader(frozenMarcRecord);
+
+        assertThat(reader.getRecordId(), is(expected.getRecordId()));
+        assertThat(reader.getAgencyId(), is(expected.getAgencyId()));
+        assertThat(reader.getFieldAll("770"), is(expected.getFieldAll("770")));
+        reader.getField("001").getSubFields().clear();
+        reader.getFieldAll("770").get(0).getSubFields().clear();
+        assertThat(frozenMarcRecord.getValue("001", 'a'), is(expected.getRecordId()));
+        assertThat(frozenMarcRecord.getValues("770", '6'), is(expected.getValues("770", '6')));
+        assertThat(CatalogExtractionCode.isPublished(frozenMarcRecord), is(CatalogExtractionCode.isPublished(marcRecord)));
+        assertThat(CatalogExtractionCode.isUnderProduction(frozenMarcRecord), is(CatalogExtractionCode.isUnderProduction(marcRecord)));
+        assertThat(CatalogExtractionCode.isPublishedIgnoreCatalogCodes(frozenMarcRecord), is(CatalogExtractionCode.isPublishedIgnoreCatalogCodes(marcRecord)));
+        assertThat(AuthorityIdExtractor.fromRecord(frozenMarcRecord), is(AuthorityIdExtractor.fromRecord(marcRecord)));
+        assertThat(RecordContentTransformer.encodeRecord(frozenMarcRecord), is(RecordContentTransformer.encodeRecord(marcRecord)));
+        assertThat(MarcRecordBinaryFormat.encode(frozenMarcRecord), is(MarcRecordBinaryFormat.encode(marcRecord)));
+
+        final FieldQuery query = FieldQuery.compile("770 *6");
+        assertThat(query.getValues(frozenMarcRecord), is(query.getValues(marcRecord)));
+        assertThat(query.matches(frozenMarcRecord), is(query.matches(marcRecord)));
+        assertThat(frozenMarcRecord.getValues("770", '6'), is(query.getValues(marcRecord)));
+        final FieldQuerySet querySet = FieldQuerySet.compile("001a", "770 *6");
+        assertThat(querySet.evaluate(frozenMarcRecord).getValues(1), is(querySet.evaluate(marcRecord).getValues(1)));
+    }
+
+    @Test
+    void testConcurrentReads() throws Exception {
+        final MarcRecord marcRecord = loadMarcRecord(COMMON_RECORD);
+        final FrozenMarcRecord frozenMarcRecord = FrozenMarcRecord.freeze(marcRecord);
+        final byte[] expected = RecordContentTransformer.encodeRecord(marcRecord);
+
+        final List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> RecordContentTransformer.encodeRecord(frozenMarcRecord), ForkJoinPool.commonPool()));
+        }
+        for (CompletableFuture<byte[]> future : futures) {
+            assertThat(future.join(), is(expected));
+        }
+    }
+
+}
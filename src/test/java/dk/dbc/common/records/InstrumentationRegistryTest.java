@@ -0,0 +1,108 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.reader.MarcReaderException;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import javax.management.ObjectName;
+
+import static dk.dbc.common.records.TestRecords.loadMarcRecord;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InstrumentationRegistryTest {
+
+    @Test
+    void testHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertThat(histogram.getCount(), is(1000L));
+        assertThat(histogram.getMax(), is(1000000L));
+        assertThat(histogram.getMean(), is(500500.0));
+        assertThat(Math.abs(histogram.getValueAtPercentile(50) - 500000) <= 500000 / 32, is(true));
+        assertThat(Math.abs(histogram.getValueAtPercentile(99) - 990000) <= 990000 / 32, is(true));
+        assertThat(histogram.getValueAtPercentile(100), is(1000000L));
+        for (long value : new long[]{0, 1, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE}) {
+            final int bucket = LatencyHistogram.bucket(value);
+            assertThat(LatencyHistogram.highestValueInBucket(bucket) >= value, is(true));
+            assertThat(bucket == 0 || LatencyHistogram.highestValueInBucket(bucket - 1) < value, is(true));
+        }
+    }
+
+    @Test
+    void testRecording() throws Exception {
+        final InstrumentationRegistry registry = new InstrumentationRegistry();
+        assertThat(Instrumentation.start(), is(0L));
+        Instrumentation.setRecorder(registry);
+        try {
+            registry.registerMBeans();
+            final MarcRecord marcRecord = loadMarcRecord("authority/expanded-53161510.marc");
+            final byte[] content = RecordContentTransformer.encodeRecord(marcRecord);
+            RecordContentTransformer.decodeRecord(content);
+            assertThrows(MarcReaderException.class, () -> RecordContentTransformer.decodeRecord("<x".getBytes(StandardCharsets.UTF_8)));
+            CatalogExtractionCode.isPublished(marcRecord);
+
+            final OperationStatisticsMXBean decode = registry.getStatistics(Instrumentation.DECODE);
+            assertThat(decode.getCount(), is(1L));
+            assertThat(decode.getErrorCount(), is(1L));
+            assertThat(decode.getMeanByteCount(), is((double) content.length));
+            assertThat(decode.getMeanFieldCount(), is((double) marcRecord.getFields().size()));
+            assertThat(registry.getStatistics(Instrumentation.ENCODE).getCount(), is(1L));
+            assertThat(registry.getStatistics(Instrumentation.PUBLISHED).getCount(), is(1L));
+            assertThat(registry.getStatistics(Instrumentation.MERGE), nullValue());
+            assertThat(registry.toText().contains(Instrumentation.DECODE + " count=1 errors=1"), is(true));
+
+            final ObjectName objectName = new ObjectName(InstrumentationRegistry.JMX_DOMAIN + ":type=Instrumentation,name=" + ObjectName.quote(Instrumentation.DECODE));
+            assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "Count"), is(1L));
+            for (String operation : new String[]{Instrumentation.DECODE, Instrumentation.ENCODE, Instrumentation.PUBLISHED}) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(InstrumentationRegistry.JMX_DOMAIN + ":type=Instrumentation,name=" + ObjectName.quote(operation)));
+            }
+        } finally {
+            Instrumentation.setRecorder(null);
+        }
+    }
+
+    @Test
+    void testRecordingErrors() throws Exception {
+        final InstrumentationRegistry registry = new InstrumentationRegistry();
+        Instrumentation.setRecorder(registry);
+        try {
+            final MarcRecord marcRecord = loadMarcRecord("authority/expanded-53161510.marc");
+            final DanMARC2Merger merger = new DanMARC2Merger();
+            merger.merge(marcRecord, new MarcRecord(), true);
+            assertThrows(NullPointerException.class, () -> merger.merge(new MarcRecord(), marcRecord, true));
+            final MarcRecord invalid = new MarcRecord();
+            invalid.getFields().add(null);
+            assertThrows(RuntimeException.class, () -> RecordContentTransformer.encodeRecord(invalid));
+
+            final OperationStatisticsMXBean merge = registry.getStatistics(Instrumentation.MERGE);
+            assertThat(merge.getCount(), is(1L));
+            assertThat(merge.getErrorCount(), is(1L));
+            assertThat(merge.getMeanByteCount(), is(0.0));
+            assertThat(registry.getStatistics(Instrumentation.ENCODE).getCount(), is(0L));
+            assertThat(registry.getStatistics(Instrumentation.ENCODE).getErrorCount(), is(1L));
+        } finally {
+            Instrumentation.setRecorder(null);
+        }
+    }
+
+    @Test
+    void testMeanByteCountIgnoresUnknownSizes() {
+        final InstrumentationRegistry registry = new InstrumentationRegistry();
+        registry.record(Instrumentation.DECODE, 1000, 10, 0);
+        registry.record(Instrumentation.DECODE, 1000, 20, 300);
+        registry.record(Instrumentation.DECODE, 1000, 30, 100);
+
+        assertThat(registry.getStatistics(Instrumentation.DECODE).getMeanByteCount(), is(200.0));
+        assertThat(registry.getStatistics(Instrumentation.DECODE).getMeanFieldCount(), is(20.0));
+    }
+
+}
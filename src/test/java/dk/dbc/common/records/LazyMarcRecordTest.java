@@ -0,0 +1,78 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.MarcRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static dk.dbc.common.records.TestRecords.loadMarcRecord;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class LazyMarcRecordTest {
+
+    private static byte[] loadResource(String filename) throws IOException {
+        try (InputStream is = Objects.requireNonNull(LazyMarcRecordTest.class.getClassLoader().getResourceAsStream(filename))) {
+            return is.readAllBytes();
+        }
+    }
+
+    @Test
+    void testToMarcRecord() throws Exception {
+        final byte[] content = RecordContentTransformer.encodeRecord(loadMarcRecord("authority/expanded-53161510.marc"));
+        final MarcRecord expected = RecordContentTransformer.decodeRecord(content);
+        final LazyMarcRecord lazyMarcRecord = new LazyMarcRecord(content);
+
+        assertThat(lazyMarcRecord.size(), is(expected.getFields().size()));
+        assertThat(lazyMarcRecord.getLeader(), is(expected.getLeader()));
+        assertThat(lazyMarcRecord.toMarcRecord(), is(expected));
+    }
+
+    @Test
+    void testSelectedFields() throws Exception {
+        final MarcRecord marcRecord = loadMarcRecord("authority/expanded-53161510.marc");
+        final LazyMarcRecord lazyMarcRecord = new LazyMarcRecord(RecordContentTransformer.encodeRecord(marcRecord));
+        final MarcRecordReader expected = new MarcRecordReader(marcRecord);
+        final MarcRecordReader reader = new MarcRecordReader(lazyMarcRecord.toMarcRecord("001", "004", "996"));
+
+        assertThat(reader.getRecordId(), is(expected.getRecordId()));
+        assertThat(reader.getAgencyId(), is(expected.getAgencyId()));
+        assertThat(reader.markedForDeletion(), is(expected.markedForDeletion()));
+        assertThat(reader.isDBCRecord(), is(expected.isDBCRecord()));
+        assertThat(lazyMarcRecord.getValue("001", 'a'), is(expected.getRecordId()));
+        assertThat(lazyMarcRecord.getValue("001", 'x'), nullValue());
+        assertThat(lazyMarcRecord.getFields("900"), is(new MarcRecordReader(marcRecord).getFieldAll("900")));
+        assertThat(lazyMarcRecord.hasField("900"), is(true));
+        assertThat(lazyMarcRecord.hasField("999"), is(false));
+        assertThat(lazyMarcRecord.getField("999"), nullValue());
+    }
+
+    @Test
+    void testCollection() throws Exception {
+        final LazyMarcRecord lazyMarcRecord = new LazyMarcRecord(loadResource("dk/dbc/common/records/providers/collection.xml"));
+
+        assertThat(lazyMarcRecord.getTags(), is(Arrays.asList("001", "004")));
+        assertThat(lazyMarcRecord.getValue("001", 'a'), is("1 234 567 8"));
+        assertThat(lazyMarcRecord.getField("004").getInd1(), is('1'));
+    }
+
+    @Test
+    void testTruncatedContent() throws Exception {
+        final byte[] content = RecordContentTransformer.encodeRecord(loadMarcRecord("authority/expanded-53161510.marc"));
+        final String text = new String(content, StandardCharsets.UTF_8);
+        final int recordStart = text.indexOf("record");
+        for (int length : new int[]{recordStart + 10, text.indexOf("<marcx:datafield") + 5, content.length / 2}) {
+            final LazyMarcRecord lazyMarcRecord = new LazyMarcRecord(Arrays.copyOf(content, length));
+
+            Assertions.assertThrows(IllegalArgumentException.class, lazyMarcRecord::size);
+            Assertions.assertThrows(IllegalArgumentException.class, lazyMarcRecord::getTags);
+        }
+    }
+
+}
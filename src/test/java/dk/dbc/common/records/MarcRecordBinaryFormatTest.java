@@ -0,0 +1,71 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import dk.dbc.marc.reader.MarcReaderException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static dk.dbc.common.records.TestRecords.loadMarcRecord;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class MarcRecordBinaryFormatTest {
+
+    @Test
+    void testRoundTrip() throws Exception {
+        for (String filename : Arrays.asList("authority/raw-53161510.marc", "authority/expanded-53161510.marc", "authority/authority-68098203.marc")) {
+            final MarcRecord marcRecord = loadMarcRecord(filename);
+
+            assertThat(MarcRecordBinaryFormat.decode(MarcRecordBinaryFormat.encode(marcRecord)), is(marcRecord));
+        }
+    }
+
+    @Test
+    void testRoundTripMatchesMarcXchange() throws Exception {
+        final MarcRecord marcRecord = loadMarcRecord("authority/expanded-53161510.marc");
+        final byte[] marcXchange = RecordContentTransformer.encodeRecord(marcRecord);
+        final MarcRecord fromMarcXchange = RecordContentTransformer.decodeRecord(marcXchange);
+
+        assertThat(MarcRecordBinaryFormat.decode(MarcRecordBinaryFormat.encode(fromMarcXchange)), is(fromMarcXchange));
+        assertThat(RecordContentTransformer.encodeRecord(MarcRecordBinaryFormat.decode(MarcRecordBinaryFormat.encode(fromMarcXchange))), is(marcXchange));
+    }
+
+    @Test
+    void testNonNumericTagsAndSpecialCharacters() throws Exception {
+        final MarcRecord marcRecord = new MarcRecord();
+        marcRecord.getFields().add(new DataField("001", "00")
+                .addSubField(new SubField('a', "12345678"))
+                .addSubField(new SubField('b', "870970")));
+        marcRecord.getFields().add(new DataField("e01", "00")
+                .addSubField(new SubField('å', "Ærø & <Østersøen> €"))
+                .addSubField(new SubField('b', ""))
+                .addSubField(new SubField('c', null)));
+        marcRecord.getFields().add(new DataField("z98", "  "));
+
+        assertThat(MarcRecordBinaryFormat.isBinaryRecord(MarcRecordBinaryFormat.encode(marcRecord)), is(true));
+        assertThat(MarcRecordBinaryFormat.decode(MarcRecordBinaryFormat.encode(marcRecord)), is(marcRecord));
+    }
+
+    @Test
+    void testInvalidContent() throws Exception {
+        final byte[] content = MarcRecordBinaryFormat.encode(loadMarcRecord("authority/raw-53161510.marc"));
+
+        Assertions.assertThrows(MarcReaderException.class, () -> MarcRecordBinaryFormat.decode(Arrays.copyOf(content, content.length - 3)));
+        Assertions.assertThrows(MarcReaderException.class, () -> MarcRecordBinaryFormat.decode(RecordContentTransformer.encodeRecord(new MarcRecord())));
+
+        content[2] = 99;
+        Assertions.assertThrows(MarcReaderException.class, () -> MarcRecordBinaryFormat.decode(content));
+    }
+
+    @Test
+    void testNegativeLength() {
+        final byte[] content = {'M', 'R', 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 0, 0, 0};
+
+        Assertions.assertThrows(MarcReaderException.class, () -> MarcRecordBinaryFormat.decode(content));
+    }
+
+}
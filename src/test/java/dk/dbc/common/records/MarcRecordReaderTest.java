@@ -169,6 +169,84 @@ class MarcRecordReaderTest {
         assertThat(instance.getDecentralAliasIds(), is(expectedList));
     }
 
+    private static HashMap<Character, String> decentralAliasId(String bValue, String cValue) {
+        final HashMap<Character, String> result = new HashMap<>();
+        result.put('b', bValue);
+        result.put('c', cValue);
+
+        return result;
+    }
+
+    @Test
+    void testDecentralAliasIdPairing() {
+        MarcRecord record = new MarcRecord();
+
+        MarcRecordReader instance = new MarcRecordReader(record);
+
+        DataField field = new DataField("002", "00");
+        field.getSubFields().add(new SubField('b', "710100"));
+        field.getSubFields().add(new SubField('c', "xxx"));
+        field.getSubFields().add(new SubField('c', "yyy"));
+        record.getFields().add(field);
+
+        assertThat(instance.getDecentralAliasIds(), is(Arrays.asList(decentralAliasId("710100", "xxx"), decentralAliasId("710100", "yyy"))));
+        assertThat(instance.getDecentralAliases(), is(Arrays.asList(new RecordId("xxx", 710100), new RecordId("yyy", 710100))));
+
+        field.getSubFields().remove(2);
+        field.getSubFields().add(new SubField('b', "710200"));
+
+        assertThat(instance.getDecentralAliasIds(), is(Arrays.asList(decentralAliasId("710100", "xxx"), decentralAliasId("710200", "xxx"))));
+        assertThat(instance.getDecentralAliases(), is(Arrays.asList(new RecordId("xxx", 710100), new RecordId("xxx", 710200))));
+    }
+
+    @Test
+    void testDecentralAliasesOnlyOnce() {
+        MarcRecord record = new MarcRecord();
+
+        MarcRecordReader instance = new MarcRecordReader(record);
+
+        DataField field = new DataField("002", "00");
+        field.getSubFields().add(new SubField('b', "710100"));
+        field.getSubFields().add(new SubField('c', "xxx"));
+        field.getSubFields().add(new SubField('x', "yyy"));
+        record.getFields().add(field);
+
+        assertThat(instance.getDecentralAliasIds().size(), is(2));
+        assertThat(instance.getDecentralAliases(), is(Arrays.asList(new RecordId("xxx", 710100))));
+    }
+
+    @Test
+    void testDecentralAliasesNonNumericAgency() {
+        MarcRecord record = new MarcRecord();
+
+        MarcRecordReader instance = new MarcRecordReader(record);
+
+        DataField field = new DataField("002", "00");
+        field.getSubFields().add(new SubField('b', "yyy"));
+        field.getSubFields().add(new SubField('c', "xxx"));
+        record.getFields().add(field);
+        field = new DataField("002", "00");
+        field.getSubFields().add(new SubField('b', "710100"));
+        field.getSubFields().add(new SubField('c', "zzz"));
+        record.getFields().add(field);
+
+        assertThat(instance.getDecentralAliasIds().size(), is(2));
+        assertThat(instance.getDecentralAliases(), is(Arrays.asList(new RecordId("zzz", 710100))));
+    }
+
+    @Test
+    void testCentralAliases() {
+        MarcRecord record = new MarcRecord();
+
+        MarcRecordWriter writer = new MarcRecordWriter(record);
+        MarcRecordReader instance = new MarcRecordReader(record);
+
+        writer.addOrReplaceSubField("001", 'b', "870970");
+        assertThat(instance.getCentralAliases().isEmpty(), is(true));
+        writer.addFieldSubfield("002", 'a', "xxx");
+        assertThat(instance.getCentralAliases(), is(Arrays.asList(new RecordId("xxx", 870970))));
+    }
+
     @Test
     void testIsDBCRecord() {
         MarcRecord record = new MarcRecord();
@@ -9,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static dk.dbc.marc.reader.DanMarc2LineFormatReader.DEFAULT_LEADER;
 import static org.hamcrest.CoreMatchers.is;
@@ -185,4 +186,135 @@ class MarcRecordWriterTest {
         assertThat(record, equalTo(expected));
     }
 
+    private MarcRecord getUnsortedRecord(String... tags) {
+        MarcRecord record = new MarcRecord();
+        for (int i = 0; i < tags.length; i++) {
+            record.getFields().add(new DataField(tags[i], "00").addSubField(new SubField('a', Integer.toString(i))));
+        }
+
+        return record;
+    }
+
+    @Test
+    void testSortNumericTags() {
+        MarcRecord record = getUnsortedRecord("245", "001", "z99", "245", "004", "100", "e01", "001", "996", "245");
+        MarcRecord expected = new MarcRecord(record);
+        expected.getFields().sort((f1, f2) -> f1.getTag().compareTo(f2.getTag()));
+
+        new MarcRecordWriter(record).sort();
+        assertThat(record, equalTo(expected));
+
+        new MarcRecordWriter(record).sort();
+        assertThat(record, equalTo(expected));
+    }
+
+    @Test
+    void testSortOtherTags() {
+        MarcRecord record = getUnsortedRecord("245", "xyz", "001", "a", "245", "0010", "z99");
+        MarcRecord expected = new MarcRecord(record);
+        expected.getFields().sort((f1, f2) -> f1.getTag().compareTo(f2.getTag()));
+
+        new MarcRecordWriter(record).sort();
+        assertThat(record, equalTo(expected));
+    }
+
+    private MarcRecord getBatchRecord() {
+        MarcRecord record = new MarcRecord();
+        record.getFields().add(new DataField("001", "00")
+                .addSubField(new SubField('a', "12345678"))
+                .addSubField(new SubField('b', "870970"))
+                .addSubField(new SubField('f', "a")));
+        record.getFields().add(new DataField("004", "00")
+                .addSubField(new SubField('r', "n"))
+                .addSubField(new SubField('a', "e")));
+        record.getFields().add(new DataField("245", "00").addSubField(new SubField('a', "title")));
+        record.getFields().add(new DataField("d08", "00").addSubField(new SubField('a', "note")));
+        record.getFields().add(new DataField("245", "00").addSubField(new SubField('f', "second")));
+        record.getFields().add(new DataField("s10", "00").addSubField(new SubField('a', "DBC")));
+
+        return record;
+    }
+
+    private MarcRecord getSourceRecord() {
+        MarcRecord record = new MarcRecord();
+        record.getFields().add(new DataField("245", "00").addSubField(new SubField('a', "source title")));
+        record.getFields().add(new DataField("996", "00").addSubField(new SubField('a', "DBC")));
+        record.getFields().add(new DataField("s12", "00").addSubField(new SubField('t', "TEST")));
+        record.getFields().add(new DataField("996", "00").addSubField(new SubField('a', "710100")));
+
+        return record;
+    }
+
+    @Test
+    void testBatch() {
+        MarcRecord expected = getBatchRecord();
+        MarcRecord expectedSource = getSourceRecord();
+        MarcRecordWriter writer = new MarcRecordWriter(expected);
+        writer.removeFields(Arrays.asList("d08", "s10"));
+        writer.removeSubfield("001", 'f');
+        writer.addOrReplaceSubField("004", 'r', "c");
+        writer.copyFieldsFromRecord(Arrays.asList("996", "s12"), expectedSource);
+        writer.addFieldSubfield("d08", 'a', "new note");
+
+        MarcRecord record = getBatchRecord();
+        MarcRecordWriter.Batch batch = new MarcRecordWriter(record).batch()
+                .removeFields(Arrays.asList("d08", "s10"))
+                .removeSubfield("001", 'f')
+                .addOrReplaceSubField("004", 'r', "c")
+                .copyFieldsFromRecord(Arrays.asList("996", "s12"), getSourceRecord())
+                .addFieldSubfield("d08", 'a', "new note");
+        assertThat(batch.size(), is(7));
+        assertThat(record, equalTo(getBatchRecord()));
+
+        batch.apply();
+        assertThat(record, equalTo(expected));
+        assertThat(batch.size(), is(0));
+    }
+
+    @Test
+    void testBatchIsSameAsSequentialChanges() {
+        List<String> tags = Arrays.asList("001", "004", "245", "996", "d08", "s12");
+        List<Character> codes = Arrays.asList('a', 'b', 'f', 'r');
+        Random random = new Random(42);
+        for (int run = 0; run < 500; run++) {
+            MarcRecord expected = getBatchRecord();
+            MarcRecord expectedSource = getSourceRecord();
+            MarcRecordWriter writer = new MarcRecordWriter(expected);
+            MarcRecord record = getBatchRecord();
+            MarcRecord source = getSourceRecord();
+            MarcRecordWriter.Batch batch = new MarcRecordWriter(record).batch();
+            for (int i = 0; i < 8; i++) {
+                String tag = tags.get(random.nextInt(tags.size()));
+                char code = codes.get(random.nextInt(codes.size()));
+                String value = Integer.toString(i);
+                switch (random.nextInt(6)) {
+                    case 0:
+                        writer.addFieldSubfield(tag, code, value);
+                        batch.addFieldSubfield(tag, code, value);
+                        break;
+                    case 1:
+                        writer.copyFieldFromRecord(tag, expectedSource);
+                        batch.copyFieldFromRecord(tag, source);
+                        break;
+                    case 2:
+                        writer.removeField(tag);
+                        batch.removeField(tag);
+                        break;
+                    case 3:
+                        writer.removeSubfield(tag, code);
+                        batch.removeSubfield(tag, code);
+                        break;
+                    default:
+                        writer.addOrReplaceSubField(tag, code, value);
+                        batch.addOrReplaceSubField(tag, code, value);
+                        break;
+                }
+            }
+            batch.apply();
+
+            assertThat(record, equalTo(expected));
+            assertThat(source, equalTo(expectedSource));
+        }
+    }
+
 }
@@ -0,0 +1,93 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.MarcRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class MarcXchangeCollectionReaderTest {
+    private static final String COLLECTION = "dk/dbc/common/records/providers/collection.xml";
+    private static final String EMPTY_COLLECTION = "dk/dbc/common/records/providers/empty_collection.xml";
+    private static final String SINGLE_RECORD = "dk/dbc/common/records/providers/record.xml";
+
+    private static Path getPath(String filename) {
+        final ClassLoader classLoader = MarcXchangeCollectionReaderTest.class.getClassLoader();
+
+        return new File(Objects.requireNonNull(classLoader.getResource(filename)).getFile()).toPath();
+    }
+
+    private static List<String> getRecordIds(List<MarcRecord> records) {
+        return records.stream()
+                .map(marcRecord -> new MarcRecordReader(marcRecord).getRecordId())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void testReadCollection() throws Exception {
+        final MarcXchangeCollectionReader reader = MarcXchangeCollectionReader.open(getPath(COLLECTION));
+        final List<MarcRecord> records = reader.stream().collect(Collectors.toList());
+
+        assertThat(reader.getSplits().size(), is(1));
+        assertThat(getRecordIds(records), is(Arrays.asList("1 234 567 8", "2 234 567 8", "3 234 567 8")));
+        assertThat(records.get(0).getLeader().getData(), is("00000nabcd1234567efg980k"));
+    }
+
+    @Test
+    void testReadCollectionInSplits() throws Exception {
+        final MarcXchangeCollectionReader reader = MarcXchangeCollectionReader.open(getPath(COLLECTION), 1);
+        final List<MarcXchangeCollectionReader.Split> splits = reader.getSplits();
+
+        assertThat(splits.size(), is(3));
+        assertThat(splits.get(0).getEnd(), is(splits.get(1).getStart()));
+        assertThat(splits.get(1).getEnd(), is(splits.get(2).getStart()));
+        assertThat(reader.parallelStream().collect(Collectors.toList()),
+                is(MarcXchangeCollectionReader.open(getPath(COLLECTION)).stream().collect(Collectors.toList())));
+    }
+
+    @Test
+    void testReadEmptyCollection() throws Exception {
+        final MarcXchangeCollectionReader reader = MarcXchangeCollectionReader.open(getPath(EMPTY_COLLECTION));
+
+        assertThat(reader.getSplits().isEmpty(), is(true));
+        assertThat(reader.stream().count(), is(0L));
+    }
+
+    @Test
+    void testReadSingleRecord() throws Exception {
+        final MarcXchangeCollectionReader reader = MarcXchangeCollectionReader.open(getPath(SINGLE_RECORD));
+
+        assertThat(getRecordIds(reader.stream().collect(Collectors.toList())), is(List.of("1 234 567 8")));
+    }
+
+    @Test
+    void testReadDirectory() throws IOException {
+        final Path directory = Files.createTempDirectory("collections");
+        try {
+            Files.copy(getPath(SINGLE_RECORD), directory.resolve("a.xml"));
+            Files.copy(getPath(EMPTY_COLLECTION), directory.resolve("b.xml"));
+            Files.copy(getPath(COLLECTION), directory.resolve("c.xml"));
+
+            final MarcXchangeCollectionReader reader = MarcXchangeCollectionReader.open(directory, 1);
+
+            assertThat(reader.getFiles().size(), is(3));
+            assertThat(getRecordIds(reader.parallelStream().collect(Collectors.toList())),
+                    is(Arrays.asList("1 234 567 8", "1 234 567 8", "2 234 567 8", "3 234 567 8")));
+        } finally {
+            for (String name : Arrays.asList("a.xml", "b.xml", "c.xml")) {
+                Files.deleteIfExists(directory.resolve(name));
+            }
+            Files.delete(directory);
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Leader;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import dk.dbc.marc.reader.MarcReaderException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static dk.dbc.marc.reader.DanMarc2LineFormatReader.DEFAULT_LEADER;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class MarcXchangeCollectionWriterTest {
+
+    private static MarcRecord createRecord(int number) {
+        return new MarcRecord()
+                .setLeader(new Leader().setData(DEFAULT_LEADER))
+                .addField(new DataField("001", "00")
+                        .addSubField(new SubField('a', Integer.toString(10000000 + number)))
+                        .addSubField(new SubField('b', "870970")))
+                .addField(new DataField("245", "00")
+                        .addSubField(new SubField('a', "Titel & <nummer> " + number)));
+    }
+
+    private static List<MarcRecord> createRecords(int count) {
+        final List<MarcRecord> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(createRecord(i));
+        }
+
+        return result;
+    }
+
+    private static List<MarcRecord> decodedRecords(List<MarcRecord> records) throws MarcReaderException {
+        final List<MarcRecord> result = new ArrayList<>();
+        for (MarcRecord marcRecord : records) {
+            result.add(RecordContentTransformer.decodeRecord(RecordContentTransformer.encodeRecord(marcRecord)));
+        }
+
+        return result;
+    }
+
+    private static void deleteAll(Path... paths) throws IOException {
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testWriteCollection() throws Exception {
+        final Path file = Files.createTempFile("collection", ".xml");
+        final Path indexFile = Files.createTempFile("collection", ".idx");
+        try {
+            final List<MarcRecord> records = decodedRecords(createRecords(25));
+            try (MarcXchangeCollectionWriter writer = MarcXchangeCollectionWriter.open(file)
+                    .setBufferSize(1024)
+                    .setFlushInterval(10)
+                    .setIndex(Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8))) {
+                for (MarcRecord marcRecord : records) {
+                    writer.write(marcRecord);
+                }
+            }
+
+            assertThat(MarcXchangeCollectionReader.open(file).stream().collect(Collectors.toList()), is(records));
+
+            final MarcXchangeCollectionIndex index = MarcXchangeCollectionIndex.load(indexFile);
+            assertThat(index.size(), is(25));
+            assertThat(index.readRecord(file, "10000017", "870970"), is(records.get(17)));
+            assertThat(index.readRecord(file, "10000017", "191919"), nullValue());
+        } finally {
+            deleteAll(file, indexFile);
+        }
+    }
+
+    @Test
+    void testWriteCompressedCollection() throws Exception {
+        final Path file = Files.createTempFile("collection", ".xml.gz");
+        final Path indexFile = Files.createTempFile("collection", ".idx");
+        final Path uncompressedFile = Files.createTempFile("collection", ".xml");
+        try {
+            final List<MarcRecord> records = decodedRecords(createRecords(25));
+            try (MarcXchangeCollectionWriter writer = MarcXchangeCollectionWriter.open(file)
+                    .setCompression(MarcXchangeCollectionWriter.Compression.GZIP)
+                    .setBufferSize(1024)
+                    .setIndex(Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8))) {
+                for (MarcRecord marcRecord : records) {
+                    writer.write(RecordContentTransformer.encodeRecord(marcRecord));
+                }
+            }
+
+            try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(file))) {
+                Files.write(uncompressedFile, inputStream.readAllBytes());
+            }
+            assertThat(MarcXchangeCollectionReader.open(uncompressedFile).stream().collect(Collectors.toList()), is(records));
+
+            final MarcXchangeCollectionIndex index = MarcXchangeCollectionIndex.load(indexFile);
+            assertThat(index.getCompression(), is(MarcXchangeCollectionWriter.Compression.GZIP));
+            assertThat(index.size(), is(25));
+            for (int i = 0; i < records.size(); i++) {
+                assertThat(index.readRecord(file, Integer.toString(10000000 + i), "870970"), is(records.get(i)));
+            }
+        } finally {
+            deleteAll(file, indexFile, uncompressedFile);
+        }
+    }
+
+    @Test
+    void testWriteEmptyCollection() throws Exception {
+        final Path file = Files.createTempFile("collection", ".xml");
+        try {
+            new MarcXchangeCollectionWriter(Files.newByteChannel(file, StandardOpenOption.WRITE)).close();
+
+            assertThat(MarcXchangeCollectionReader.open(file).stream().count(), is(0L));
+        } finally {
+            deleteAll(file);
+        }
+    }
+
+    @Test
+    void testSetBufferSizeTooSmall() throws Exception {
+        final Path file = Files.createTempFile("collection", ".xml");
+        try (MarcXchangeCollectionWriter writer = new MarcXchangeCollectionWriter(Files.newByteChannel(file, StandardOpenOption.WRITE))) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> writer.setBufferSize(0));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> writer.setBufferSize(16));
+            writer.setBufferSize(1024);
+        } finally {
+            deleteAll(file);
+        }
+    }
+
+    @Test
+    void testWriteRecordsLargerThanBuffer() throws Exception {
+        final Path file = Files.createTempFile("collection", ".xml");
+        final Path indexFile = Files.createTempFile("collection", ".idx");
+        try {
+            final List<MarcRecord> records = createRecords(6);
+            final StringBuilder title = new StringBuilder();
+            for (int i = 0; i < 100; i++) {
+                title.append("Lang titel æøå & <").append(i).append("> \uD83D\uDCD6 ");
+            }
+            records.get(2).getField(DataField.class, MarcRecord.hasTag("245")).orElseThrow()
+                    .addSubField(new SubField('b', title.toString()));
+            final List<MarcRecord> expected = decodedRecords(records);
+            for (boolean encoded : new boolean[]{false, true}) {
+                try (MarcXchangeCollectionWriter writer = MarcXchangeCollectionWriter.open(file)
+                        .setBufferSize(512)
+                        .setIndex(Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8))) {
+                    for (MarcRecord marcRecord : records) {
+                        if (encoded) {
+                            writer.write(RecordContentTransformer.encodeRecord(marcRecord));
+                        } else {
+                            writer.write(marcRecord);
+                        }
+                    }
+                }
+
+                assertThat(MarcXchangeCollectionReader.open(file).stream().collect(Collectors.toList()), is(expected));
+                assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("</marcx:record>\n", -1).length, is(records.size() + 1));
+                final MarcXchangeCollectionIndex index = MarcXchangeCollectionIndex.load(indexFile);
+                for (int i = 0; i < records.size(); i++) {
+                    assertThat(index.readRecord(file, Integer.toString(10000000 + i), "870970"), is(expected.get(i)));
+                }
+            }
+        } finally {
+            deleteAll(file, indexFile);
+        }
+    }
+
+    @Test
+    void testIndexRequiresRecordId() throws Exception {
+        final Path file = Files.createTempFile("collection", ".xml");
+        final Path indexFile = Files.createTempFile("collection", ".idx");
+        try (MarcXchangeCollectionWriter writer = MarcXchangeCollectionWriter.open(file)
+                .setIndex(Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8))) {
+            final MarcRecord marcRecord = createRecord(1);
+            marcRecord.removeField("001");
+
+            Assertions.assertThrows(IllegalArgumentException.class, () -> writer.write(marcRecord));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> writer.write(RecordContentTransformer.encodeRecord(marcRecord)));
+            writer.write(createRecord(2));
+        } finally {
+            deleteAll(file, indexFile);
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.reader.MarcReaderException;
+import org.junit.jupiter.api.Test;
+
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static dk.dbc.common.records.TestRecords.loadMarcRecord;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RecordContentTransformerTest {
+
+    private static MarcRecord filter(MarcRecord marcRecord, TagFilter tagFilter) {
+        final MarcRecord result = new MarcRecord();
+        result.setLeader(marcRecord.getLeader());
+        result.setType(marcRecord.getType());
+        result.setFormat(marcRecord.getFormat());
+        for (Field field : marcRecord.getFields()) {
+            if (tagFilter.test(field.getTag())) {
+                result.getFields().add(field);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the MarcXchange content of the test resources, i.e. the XML files and the encoded line format files
+     */
+    private static List<byte[]> loadContents() throws Exception {
+        final Path root = resourceRoot();
+        final List<Path> paths;
+        try (Stream<Path> files = Files.walk(root)) {
+            paths = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        final List<byte[]> result = new ArrayList<>();
+        for (Path path : paths) {
+            final String name = path.getFileName().toString();
+            if (name.endsWith(".xml")) {
+                result.add(Files.readAllBytes(path));
+            } else if (name.endsWith(".marc")) {
+                result.add(RecordContentTransformer.encodeRecord(loadMarcRecord(root.relativize(path).toString())));
+            }
+        }
+
+        return result;
+    }
+
+    private static Path resourceRoot() throws URISyntaxException {
+        return Path.of(Objects.requireNonNull(RecordContentTransformerTest.class.getClassLoader().getResource("authority")).toURI()).getParent();
+    }
+
+    @Test
+    void testDecodeRecordWithTagFilterMatchesFullDecode() throws Exception {
+        final List<TagFilter> tagFilters = List.of(TagFilter.of("001", "004", "245", "s10"),
+                TagFilter.of(tag -> tag.startsWith("9")),
+                TagFilter.of(tag -> true));
+        int decoded = 0;
+        for (byte[] content : loadContents()) {
+            final MarcRecord marcRecord;
+            try {
+                marcRecord = RecordContentTransformer.decodeRecord(content);
+            } catch (MarcReaderException e) {
+                // Invalid content is covered by the tests of the malformed cases
+                continue;
+            }
+            if (marcRecord == null) {
+                continue;
+            }
+            for (TagFilter tagFilter : tagFilters) {
+                assertThat(RecordContentTransformer.decodeRecord(content, tagFilter), is(filter(marcRecord, tagFilter)));
+            }
+            decoded++;
+        }
+
+        assertThat(decoded > 100, is(true));
+    }
+
+    @Test
+    void testDecodeRecordWithTagSet() throws Exception {
+        final byte[] content = RecordContentTransformer.encodeRecord(loadMarcRecord("authority/expanded-53161510.marc"));
+        final MarcRecord marcRecord = RecordContentTransformer.decodeRecord(content);
+        final TagFilter tagFilter = TagFilter.of("001", "004", "900");
+
+        assertThat(RecordContentTransformer.decodeRecord(content, tagFilter), is(filter(marcRecord, tagFilter)));
+    }
+
+    @Test
+    void testDecodeRecordWithPredicate() throws Exception {
+        final byte[] content = RecordContentTransformer.encodeRecord(loadMarcRecord("authority/expanded-53161510.marc"));
+        final MarcRecord marcRecord = RecordContentTransformer.decodeRecord(content);
+        final TagFilter tagFilter = TagFilter.of(tag -> tag.startsWith("9"));
+
+        assertThat(RecordContentTransformer.decodeRecord(content, tagFilter), is(filter(marcRecord, tagFilter)));
+        assertThat(RecordContentTransformer.decodeRecord(content, TagFilter.of(tag -> true)), is(marcRecord));
+    }
+
+    @Test
+    void testTagFilter() {
+        final TagFilter tagFilter = TagFilter.of(Set.of("001", "s10", "a"));
+
+        assertThat(tagFilter.test("001"), is(true));
+        assertThat(tagFilter.test(1), is(true));
+        assertThat(tagFilter.test("s10"), is(true));
+        assertThat(tagFilter.test("a"), is(true));
+        assertThat(tagFilter.test("002"), is(false));
+        assertThat(tagFilter.test(2), is(false));
+        assertThat(tagFilter.test("s11"), is(false));
+    }
+
+    @Test
+    void testDecodeRecordNoRecord() {
+        final byte[] content = "<marcx:collection xmlns:marcx=\"info:lc/xmlns/marcxchange-v1\"/>".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(MarcReaderException.class, () -> RecordContentTransformer.decodeRecord(content, TagFilter.of("001")));
+    }
+
+    @Test
+    void testDecodeRecordMalformedSubField() throws Exception {
+        final byte[] content = ("<marcx:record xmlns:marcx=\"info:lc/xmlns/marcxchange-v1\" format=\"danMARC2\" type=\"Bibliographic\">" +
+                "<marcx:datafield tag=\"001\" ind1=\"0\" ind2=\"0\"><marcx:subfield>12345678</marcx:subfield></marcx:datafield>" +
+                "<marcx:datafield tag=\"245\" ind1=\"0\" ind2=\"0\"><marcx:subfield code=\"a\">Titel</marcx:subfield></marcx:datafield>" +
+                "</marcx:record>").getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(MarcReaderException.class, () -> RecordContentTransformer.decodeRecord(content, TagFilter.of("001")));
+        assertThat(RecordContentTransformer.decodeRecord(content, TagFilter.of("245")).getFields().size(), is(1));
+    }
+
+    @Test
+    void testDecodeRecordCDataAndComments() throws Exception {
+        final byte[] content = ("<marcx:record xmlns:marcx=\"info:lc/xmlns/marcxchange-v1\" format=\"danMARC2\" type=\"Bibliographic\">" +
+                "<!-- <marcx:datafield tag=\"245\"> -->" +
+                "<marcx:datafield tag=\"245\" ind1=\"0\" ind2=\"0\">" +
+                "<marcx:subfield code=\"a\">A &amp; <![CDATA[<b> & </marcx:subfield>]]><!-- c -->d</marcx:subfield>" +
+                "<marcx:subfield code=\"b\"><![CDATA[]]></marcx:subfield>" +
+                "</marcx:datafield>" +
+                "</marcx:record>").getBytes(StandardCharsets.UTF_8);
+        final MarcRecord marcRecord = RecordContentTransformer.decodeRecord(content, TagFilter.of("245"));
+
+        assertThat(marcRecord.getFields().size(), is(1));
+        final MarcRecordReader reader = new MarcRecordReader(marcRecord);
+        assertThat(reader.getValue("245", 'a'), is("A & <b> & </marcx:subfield>d"));
+        assertThat(reader.getValue("245", 'b'), is(""));
+    }
+
+    @Test
+    void testDecodeRecordUnterminatedCData() {
+        final byte[] content = ("<marcx:record xmlns:marcx=\"info:lc/xmlns/marcxchange-v1\" format=\"danMARC2\" type=\"Bibliographic\">" +
+                "<marcx:datafield tag=\"245\" ind1=\"0\" ind2=\"0\">" +
+                "<marcx:subfield code=\"a\"><![CDATA[Titel</marcx:subfield></marcx:datafield>" +
+                "</marcx:record>").getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(MarcReaderException.class, () -> RecordContentTransformer.decodeRecord(content, TagFilter.of("245")));
+    }
+
+}
@@ -0,0 +1,102 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class RecordRelationGraphTest {
+
+    private static MarcRecord createRecord(String recordId, String agencyId, DataField... fields) {
+        final MarcRecord marcRecord = new MarcRecord();
+        marcRecord.getFields().add(new DataField("001", "00")
+                .addSubField(new SubField('a', recordId))
+                .addSubField(new SubField('b', agencyId)));
+        marcRecord.getFields().addAll(Arrays.asList(fields));
+
+        return marcRecord;
+    }
+
+    private static DataField field(String tag, char code, String value) {
+        return new DataField(tag, "00").addSubField(new SubField(code, value));
+    }
+
+    private static RecordRelationGraph createGraph() {
+        return RecordRelationGraph.builder()
+                .add(createRecord("head", "870970"))
+                .add(createRecord("section", "870970", field("014", 'a', "head")))
+                .add(createRecord("volume1", "870970", field("014", 'a', "section")))
+                .add(createRecord("volume2", "870970", field("014", 'a', "section")))
+                .add(createRecord("review", "870976", new DataField("014", "00")
+                        .addSubField(new SubField('a', "volume1"))
+                        .addSubField(new SubField('x', "ANM"))))
+                .add(createRecord("article", "870971", field("014", 'a', "journal")))
+                .add(createRecord("other", "870974", field("016", 'a', "volume2")
+                        .addSubField(new SubField('5', "870970"))))
+                .build();
+    }
+
+    private static void assertGraph(RecordRelationGraph graph) {
+        assertThat(graph.size(), is(8));
+        assertThat(graph.contains("journal", 870971), is(true));
+        assertThat(graph.contains("journal", 870970), is(false));
+
+        assertThat(graph.getParent("volume1", 870970), is(new RecordId("section", 870970)));
+        assertThat(graph.getParent("review", 870976), is(new RecordId("volume1", 870970)));
+        assertThat(graph.getParent("head", 870970), nullValue());
+        assertThat(graph.getParent("unknown", 870970), nullValue());
+
+        assertThat(graph.getRoot("review", 870976), is(new RecordId("head", 870970)));
+        assertThat(graph.getRoot("head", 870970), is(new RecordId("head", 870970)));
+        assertThat(graph.getRoot("article", 870971), is(new RecordId("journal", 870971)));
+        assertThat(graph.getDepth("review", 870976), is(3));
+
+        assertThat(graph.getAncestors("review", 870976), is(Arrays.asList(
+                new RecordId("volume1", 870970), new RecordId("section", 870970), new RecordId("head", 870970))));
+        assertThat(graph.getChildren("section", 870970), is(Arrays.asList(
+                new RecordId("volume1", 870970), new RecordId("volume2", 870970))));
+        assertThat(graph.getDescendants("section", 870970), is(Arrays.asList(
+                new RecordId("volume1", 870970), new RecordId("review", 870976),
+                new RecordId("volume2", 870970), new RecordId("other", 870974))));
+        assertThat(graph.getDescendants("other", 870974), is(Collections.emptyList()));
+
+        assertThat(graph.isDescendant("other", 870974, "head", 870970), is(true));
+        assertThat(graph.isDescendant("head", 870970, "other", 870974), is(false));
+        assertThat(graph.isDescendant("review", 870976, "volume2", 870970), is(false));
+    }
+
+    @Test
+    void testBuild() {
+        assertGraph(createGraph());
+    }
+
+    @Test
+    void testSaveAndLoad(@TempDir Path tempDir) throws Exception {
+        final Path file = tempDir.resolve("relations.bin");
+        createGraph().save(file);
+
+        assertGraph(RecordRelationGraph.load(file));
+    }
+
+    @Test
+    void testCycle() {
+        final RecordRelationGraph graph = RecordRelationGraph.builder()
+                .add("a", 870970, "b", 870970)
+                .add("b", 870970, "c", 870970)
+                .add("c", 870970, "a", 870970)
+                .build();
+
+        assertThat(graph.getDescendants(graph.getRoot("a", 870970).getRecordId(), 870970).size(), is(2));
+        assertThat(graph.getAncestors("a", 870970).size() <= 2, is(true));
+    }
+
+}
@@ -0,0 +1,101 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.binding.SubField;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static dk.dbc.common.records.TestRecords.loadMarcRecord;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RecordScopeTest {
+
+    private static DataField createField(String tag, String value) {
+        return new DataField(tag, "00").addSubField(new SubField('a', value));
+    }
+
+    @Test
+    void testBuildersArePooledWithinScope() {
+        assertThat(RecordScope.isOpen(), is(false));
+        assertThat(RecordScope.sortedFieldBuilder(false), not(sameInstance(RecordScope.sortedFieldBuilder(false))));
+
+        final SortedFieldBuilder first;
+        final SortedFieldBuilder second;
+        try (RecordScope scope = RecordScope.open()) {
+            assertThat(RecordScope.isOpen(), is(true));
+            first = RecordScope.sortedFieldBuilder(false);
+            second = RecordScope.sortedFieldBuilder(false);
+            assertThat(second, not(sameInstance(first)));
+            first.add(createField("245", "b")).add(createField("001", "a")).add(createField("e01", "c"));
+            second.add(createField("100", "d"));
+        }
+        assertThat(RecordScope.isOpen(), is(false));
+
+        try (RecordScope scope = RecordScope.open()) {
+            final SortedFieldBuilder reused = RecordScope.sortedFieldBuilder(false);
+            assertThat(reused, sameInstance(first));
+            assertThat(reused.size(), is(0));
+            final List<Field> fields = reused.add(createField("100", "x")).add(createField("001", "y")).build();
+            assertThat(fields, is(Arrays.asList(createField("001", "y"), createField("100", "x"))));
+            assertThat(RecordScope.sortedFieldBuilder(false), sameInstance(second));
+            assertThat(RecordScope.sortedFieldBuilder(true), not(sameInstance(first)));
+        }
+    }
+
+    @Test
+    void testNestedScopes() {
+        final SortedFieldBuilder builder;
+        try (RecordScope outer = RecordScope.open()) {
+            try (RecordScope inner = RecordScope.open()) {
+                builder = RecordScope.sortedFieldBuilder(true).add(createField("001", "a"));
+            }
+            assertThat(RecordScope.isOpen(), is(true));
+            assertThat(builder.size(), is(1));
+        }
+        assertThat(builder.size(), is(0));
+        final RecordScope scope = RecordScope.open();
+        scope.close();
+        assertThrows(IllegalStateException.class, scope::close);
+    }
+
+    @Test
+    void testThreadWithoutScope() throws Exception {
+        final Thread thread = new Thread(() -> {
+            assertThat(RecordScope.isOpen(), is(false));
+            assertThat(RecordScope.sortedFieldBuilder(false), not(sameInstance(RecordScope.sortedFieldBuilder(false))));
+            assertThat(RecordScope.isOpen(), is(false));
+        });
+        final List<Throwable> failures = new ArrayList<>();
+        thread.setUncaughtExceptionHandler((t, e) -> failures.add(e));
+        thread.start();
+        thread.join();
+
+        assertThat(failures, is(Collections.emptyList()));
+    }
+
+    @Test
+    void testExpandWithinScope() throws Exception {
+        final MarcRecord expanded = loadMarcRecord("authority/expanded-26443784.marc");
+        final Map<String, AuthorityRecord> authorities = Map.of("68313686", new AuthorityRecord(loadMarcRecord("authority/authority-68313686.marc")));
+
+        for (int i = 0; i < 3; i++) {
+            final MarcRecord result;
+            try (RecordScope scope = RecordScope.open()) {
+                result = ExpandCommonMarcRecord.expandMarcRecord(loadMarcRecord("authority/raw-26443784.marc"), authorities, false);
+            }
+            assertThat(result, is(expanded));
+        }
+    }
+
+}
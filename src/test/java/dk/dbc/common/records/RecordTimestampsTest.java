@@ -0,0 +1,84 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.MarcRecord;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class RecordTimestampsTest {
+    private static final ZoneId ZONE = ZoneId.of("Europe/Copenhagen");
+
+    private static class TestClock extends Clock {
+        private Instant instant;
+
+        private TestClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZONE;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    @Test
+    void testTimestamps() {
+        final TestClock clock = new TestClock(Instant.parse("2021-06-17T06:46:50.100Z"));
+        final RecordTimestamps timestamps = new RecordTimestamps(clock);
+
+        assertThat(timestamps.creationTimestamp(), is("20210617"));
+        assertThat(timestamps.changedTimestamp(), is("20210617084650"));
+
+        // The value is cached within the second
+        final String changed = timestamps.changedTimestamp();
+        clock.instant = Instant.parse("2021-06-17T06:46:50.900Z");
+        assertThat(timestamps.changedTimestamp(), sameInstance(changed));
+
+        clock.instant = Instant.parse("2021-06-17T22:00:00Z");
+        assertThat(timestamps.creationTimestamp(), is("20210618"));
+        assertThat(timestamps.changedTimestamp(), is("20210618000000"));
+    }
+
+    @Test
+    void testFixed() {
+        final TestClock clock = new TestClock(Instant.parse("2021-06-17T06:46:50Z"));
+        final RecordTimestamps batchTime = new RecordTimestamps(clock).fixed();
+
+        clock.instant = Instant.parse("2021-06-17T06:47:10Z");
+        assertThat(batchTime.changedTimestamp(), is("20210617084650"));
+        assertThat(batchTime.getClock().getZone(), is(ZONE));
+    }
+
+    @Test
+    void testWriter() {
+        final RecordTimestamps timestamps = new RecordTimestamps(Clock.fixed(Instant.parse("2021-12-31T23:30:00Z"), ZONE));
+        final MarcRecord marcRecord = new MarcRecord();
+        marcRecord.getFields().add(new DataField("001", "00"));
+        final MarcRecordWriter writer = new MarcRecordWriter(marcRecord, timestamps);
+
+        writer.setCreationTimestamp();
+        writer.setChangedTimestamp();
+
+        final MarcRecordReader reader = new MarcRecordReader(marcRecord);
+        assertThat(reader.getValue("001", 'd'), is("20220101"));
+        assertThat(reader.getValue("001", 'c'), is("20220101003000"));
+    }
+
+}
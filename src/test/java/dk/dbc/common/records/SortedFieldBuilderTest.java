@@ -0,0 +1,113 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import dk.dbc.marc.binding.SubField;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class SortedFieldBuilderTest {
+
+    private static final DataField F245 = field("245", null, "1");
+    private static final DataField F900_2 = field("900", "2", "2");
+    private static final DataField Fz99 = field("z99", null, "3");
+    private static final DataField F001 = field("001", null, "4");
+    private static final DataField F900_X = field("900", "x", "5");
+    private static final DataField Fa = field("a", null, "6");
+    private static final DataField Fd08 = field("d08", null, "7");
+    private static final DataField F900_1 = field("900", "1", "8");
+    private static final DataField F0010 = field("0010", null, "9");
+    private static final DataField F900 = field("900", null, "10");
+    private static final DataField F245_B = field("245", null, "11");
+
+    private static final List<Field> FIELDS = Arrays.asList(F245, F900_2, Fz99, F001, F900_X, Fa, Fd08, F900_1, F0010, F900, F245_B);
+
+    private static DataField field(String tag, String aa, String id) {
+        final DataField field = new DataField(tag, "00");
+        if (aa != null) {
+            field.addSubField(new SubField('å', aa));
+        }
+        field.addSubField(new SubField('a', id));
+
+        return field;
+    }
+
+    @Test
+    void testByTag() {
+        assertThat(SortedFieldBuilder.byTag().addAll(FIELDS).build(),
+                is(Arrays.asList(F001, F0010, F245, F245_B, F900_2, F900_X, F900_1, F900, Fa, Fd08, Fz99)));
+    }
+
+    @Test
+    void testByTagAndAa() {
+        final SortedFieldBuilder builder = SortedFieldBuilder.byTagAndAa().addAll(FIELDS);
+
+        assertThat(builder.size(), is(FIELDS.size()));
+        assertThat(builder.build(),
+                is(Arrays.asList(F001, F0010, F245, F245_B, F900_X, F900, F900_1, F900_2, Fa, Fd08, Fz99)));
+    }
+
+    @Test
+    void testRegisteredTags() {
+        final DataField f900Negative = field("900", "-5", "12");
+        final SortedFieldBuilder builder = SortedFieldBuilder.byTagAndAa()
+                .addAll(Arrays.asList(F245, F900_2, Fz99, F001, F900_X, Fd08, F900_1, F900, f900Negative, F245_B));
+
+        assertThat(builder.build(), is(Arrays.asList(F001, F245, F245_B, f900Negative, F900_X, F900, F900_1, F900_2, Fd08, Fz99)));
+        // Building again gives the same fields
+        assertThat(builder.build(), is(Arrays.asList(F001, F245, F245_B, f900Negative, F900_X, F900, F900_1, F900_2, Fd08, Fz99)));
+    }
+
+    @Test
+    void testFieldsInOrder() {
+        final List<Field> fields = Arrays.asList(F001, F245, F245_B, F900_X, F900, F900_1, F900_2, Fd08, Fz99);
+
+        assertThat(SortedFieldBuilder.byTagAndAa().addAll(fields).build(), is(fields));
+        assertThat(SortedFieldBuilder.byTag().addAll(fields).build(), is(fields));
+    }
+
+    @Test
+    void testClear() {
+        final SortedFieldBuilder builder = SortedFieldBuilder.byTag().addAll(FIELDS);
+        builder.build();
+        builder.clear();
+
+        assertThat(builder.size(), is(0));
+        assertThat(builder.addAll(Arrays.asList(F900, F245, F001)).build(), is(Arrays.asList(F001, F245, F900)));
+    }
+
+    @Test
+    void testSameAsStableSort() {
+        final String[] tags = {"001", "004", "245", "520", "652", "900", "910", "d08", "s10", "z99"};
+        final Random random = new Random(42);
+        final List<Field> fields = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final String aa = random.nextInt(4) == 0 ? null : Integer.toString(random.nextInt(21) - 10);
+            fields.add(field(tags[random.nextInt(tags.length)], aa, Integer.toString(i)));
+        }
+        final Comparator<Field> byTag = new SortFieldByTag();
+        final List<Field> sortedByTag = new ArrayList<>(fields);
+        sortedByTag.sort(byTag);
+        final List<Field> sortedByTagAndAa = new ArrayList<>(fields);
+        sortedByTagAndAa.sort(byTag.thenComparingInt(FieldSorter::aaValue));
+
+        assertThat(SortedFieldBuilder.byTag().addAll(fields).build(), is(sortedByTag));
+        assertThat(SortedFieldBuilder.byTagAndAa().addAll(fields).build(), is(sortedByTagAndAa));
+
+        // The same with a tag which has no id
+        fields.add(field("a", "1", "a"));
+        sortedByTagAndAa.add(fields.get(fields.size() - 1));
+        sortedByTagAndAa.sort(byTag.thenComparingInt(FieldSorter::aaValue));
+
+        assertThat(SortedFieldBuilder.byTagAndAa().addAll(fields).build(), is(sortedByTagAndAa));
+    }
+
+}
@@ -0,0 +1,71 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.DataField;
+import dk.dbc.marc.binding.Field;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class TagRegistryTest {
+
+    @Test
+    void testIds() {
+        assertThat(TagRegistry.id("000"), is(0));
+        assertThat(TagRegistry.id("245"), is(245));
+        assertThat(TagRegistry.id("999"), is(999));
+        assertThat(TagRegistry.id("d08"), is(TagRegistry.NUMERIC_TAG_COUNT));
+        assertThat(TagRegistry.id("z99"), is(TagRegistry.size() - 1));
+        for (String tag : Arrays.asList("a", "0010", "xyz", "24a", "", null)) {
+            assertThat(TagRegistry.id(tag), is(-1));
+        }
+        for (int id = 0; id < TagRegistry.size(); id++) {
+            assertThat(TagRegistry.id(TagRegistry.tag(id)), is(id));
+        }
+    }
+
+    @Test
+    void testCanonical() {
+        final String tag = new String("e01".toCharArray());
+
+        assertThat(TagRegistry.canonical(tag), sameInstance(TagRegistry.tag(TagRegistry.id("e01"))));
+        assertThat(TagRegistry.canonical(new String("245".toCharArray())), sameInstance(TagRegistry.tag(245)));
+        assertThat(TagRegistry.canonical("xyz"), is("xyz"));
+    }
+
+    @Test
+    void testCompareIsStringOrder() {
+        final List<String> tags = new ArrayList<>();
+        for (int id = 0; id < TagRegistry.size(); id += 7) {
+            tags.add(TagRegistry.tag(id));
+        }
+        tags.addAll(Arrays.asList("a", "0010", "xyz", "z99", "d08", "A01", "001"));
+        for (String tag1 : tags) {
+            for (String tag2 : tags) {
+                assertThat(tag1 + " " + tag2, Integer.signum(TagRegistry.compare(tag1, tag2)), is(Integer.signum(tag1.compareTo(tag2))));
+            }
+        }
+        final Field field1 = new DataField("z99", "00");
+        final Field field2 = new DataField("xyz", "00");
+        assertThat(new SortFieldByTag().compare(field1, field2) > 0, is(true));
+    }
+
+    @Test
+    void testTagSet() {
+        final TagSet tagSet = new TagSet();
+        tagSet.addAll(Arrays.asList("996", "010", "xyz", "e01"));
+
+        assertThat(tagSet.contains("010"), is(true));
+        assertThat(tagSet.contains("e01"), is(true));
+        assertThat(tagSet.contains("xyz"), is(true));
+        assertThat(tagSet.contains("011"), is(false));
+        assertThat(tagSet.contains("abc"), is(false));
+        assertThat(tagSet.toString(), is("[010, 996, e01, xyz]"));
+    }
+
+}
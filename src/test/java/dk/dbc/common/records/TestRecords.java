@@ -0,0 +1,50 @@
+package dk.dbc.common.records;
+
+import dk.dbc.marc.binding.MarcRecord;
+import dk.dbc.marc.reader.DanMarc2LineFormatReader;
+import dk.dbc.marc.reader.MarcReaderException;
+import dk.dbc.marc.reader.MarcXchangeV1Reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Loads the test records from the test resources
+ */
+final class TestRecords {
+
+    private TestRecords() {
+
+    }
+
+    private static InputStream open(String filename) {
+        return Objects.requireNonNull(TestRecords.class.getClassLoader().getResourceAsStream(filename), filename);
+    }
+
+    /**
+     * Reads a record in danMARC2 line format
+     *
+     * @param filename The name of the resource
+     * @return The record
+     */
+    static MarcRecord loadMarcRecord(String filename) throws MarcReaderException, IOException {
+        try (InputStream is = open(filename)) {
+            return new DanMarc2LineFormatReader(is, StandardCharsets.UTF_8).read();
+        }
+    }
+
+    /**
+     * Reads a record in MarcXchange format
+     *
+     * @param filename The name of the resource
+     * @return The record
+     */
+    static MarcRecord loadMarcXchangeRecord(String filename) throws MarcReaderException, IOException {
+        try (InputStream is = open(filename)) {
+            return new MarcXchangeV1Reader(is, StandardCharsets.UTF_8).read();
+        }
+    }
+
+}